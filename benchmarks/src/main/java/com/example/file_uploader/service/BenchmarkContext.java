@@ -0,0 +1,55 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.FileUploaderApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Контекст приложения для бенчмарков: H2 в памяти (режим PostgreSQL) вместо PostgreSQL
+ * и FakeStorageService (без задержек и сбоев) вместо MinIO. Веб-сервер не запускается, диспетчер очереди
+ * не забирает задачи, чтобы измерялся только прием файла.
+ */
+final class BenchmarkContext {
+
+	private BenchmarkContext() {
+	}
+
+	@Configuration
+	static class StorageConfig {
+
+		@Bean
+		@Primary
+		StorageService inMemoryStorageService() {
+			return new FakeStorageService(Duration.ZERO, Duration.ZERO, 0);
+		}
+	}
+
+	// Аргументы командной строки перекрывают application.yaml из jar приложения.
+	static ConfigurableApplicationContext start(Path stagingDir) {
+		return new SpringApplicationBuilder(FileUploaderApplication.class, StorageConfig.class)
+				.web(WebApplicationType.NONE)
+				.run(
+						"--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+						"--spring.datasource.driver-class-name=org.h2.Driver",
+						"--spring.datasource.username=sa",
+						"--spring.datasource.password=",
+						"--spring.jpa.hibernate.ddl-auto=create-drop",
+						"--spring.jpa.show-sql=false",
+						"--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+						"--spring.jpa.properties.hibernate.format_sql=false",
+						"--upload-jobs.staging-dir=" + stagingDir,
+						"--upload-jobs.poll-interval-ms=86400000",
+						"--upload-admission.enabled=false",
+						"--logging.level.root=WARN",
+						"--logging.level.com.example.file_uploader=WARN",
+						"--logging.level.org.springframework.web=WARN"
+				);
+	}
+}
@@ -0,0 +1,77 @@
+package com.example.file_uploader.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Контрольная сумма загружаемого файла: алгоритм и размер буфера чтения.
+ *
+ * calculateChecksum повторяет MinioStorageService.calculateChecksum (ChecksumInputStream поверх
+ * потока MultipartFile), но читает буфером bufferSize вместо фиксированного буфера transferTo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumBenchmark {
+
+	@Param({"MD5", "SHA256", "CRC32C"})
+	private ChecksumAlgorithm algorithm;
+
+	@Param({"8192", "65536", "1048576"})
+	private int bufferSize;
+
+	@Param({"16MB"})
+	private String fileSize;
+
+	private MockMultipartFile file;
+	private byte[] buffer;
+
+	@Setup
+	public void setUp() {
+		byte[] content = new byte[Math.toIntExact(DataSize.parse(fileSize).toBytes())];
+		new Random(42).nextBytes(content);
+		file = new MockMultipartFile("file", "benchmark.bin", "application/octet-stream", content);
+		buffer = new byte[bufferSize];
+	}
+
+	@Benchmark
+	public String calculateChecksum() throws Exception {
+		try (ChecksumInputStream in = new ChecksumInputStream(file.getInputStream(), algorithm.newChecksummer())) {
+			while (in.read(buffer, 0, buffer.length) != -1) {
+				// байты уже учтены в контрольной сумме
+			}
+			return in.getChecksum();
+		}
+	}
+
+	// Чтение без контрольной суммы - нижняя граница для сравнения алгоритмов.
+	@Benchmark
+	public long readOnly() throws Exception {
+		long total = 0;
+		try (InputStream in = file.getInputStream()) {
+			int read;
+			while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+				total += read;
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,94 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.dto.FileUploadResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сквозной прием файла: FileUploadService.initiateUpload с H2 и хранилищем в памяти.
+ *
+ * Измеряется то, что происходит в HTTP-потоке до ответа 202: проверка идемпотентности,
+ * вставка записи, запись staging-файла и постановка задачи в очередь. Воркер загрузки
+ * в бенчмарке не работает. Многопоточный прогон: java -jar benchmarks.jar InitiateUpload -t 8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InitiateUploadBenchmark {
+
+	// Небольшие файлы: staging-файлы накапливаются до конца итерации
+	@Param({"4KB", "64KB"})
+	private String fileSize;
+
+	private final AtomicLong keySequence = new AtomicLong();
+	private Path stagingDir;
+	private ConfigurableApplicationContext context;
+	private FileUploadService fileUploadService;
+	private MockMultipartFile file;
+	private String existingKey;
+
+	@Setup
+	public void setUp() throws Exception {
+		stagingDir = Files.createTempDirectory("initiate-benchmark-");
+		context = BenchmarkContext.start(stagingDir);
+		fileUploadService = context.getBean(FileUploadService.class);
+
+		byte[] content = new byte[Math.toIntExact(DataSize.parse(fileSize).toBytes())];
+		new Random(42).nextBytes(content);
+		file = new MockMultipartFile("file", "benchmark.bin", "application/octet-stream", content);
+
+		existingKey = "benchmark-existing-" + fileSize;
+		fileUploadService.initiateUpload(file, existingKey);
+	}
+
+	@TearDown(Level.Iteration)
+	public void cleanStagingDir() throws Exception {
+		try (var entries = Files.list(stagingDir)) {
+			for (Path entry : entries.toList()) {
+				FileSystemUtils.deleteRecursively(entry);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		context.close();
+		FileSystemUtils.deleteRecursively(stagingDir);
+	}
+
+	// Новый ключ идемпотентности на каждый вызов.
+	@Benchmark
+	public FileUploadResponse newUpload() {
+		return fileUploadService.initiateUpload(file, "benchmark-" + fileSize + "-" + keySequence.incrementAndGet());
+	}
+
+	// Повтор запроса с уже использованным ключом: ответ из БД без записи файла.
+	@Benchmark
+	public FileUploadResponse repeatedKey() {
+		return fileUploadService.initiateUpload(file, existingKey);
+	}
+}
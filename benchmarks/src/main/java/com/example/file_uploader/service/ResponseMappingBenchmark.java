@@ -0,0 +1,73 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.dto.FileUploadResponse;
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.entity.FileStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение ответа (buildResponse) и сериализация FileUploadResponse в JSON.
+ * ObjectMapper настроен так же, как в Spring MVC (Jackson2ObjectMapperBuilder).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseMappingBenchmark {
+
+	private FileMetadata metadata;
+	private FileUploadResponse response;
+	private ObjectMapper objectMapper;
+
+	@Setup
+	public void setUp() {
+		LocalDateTime now = LocalDateTime.now();
+		metadata = FileMetadata.builder()
+				.id(UUID.randomUUID().toString())
+				.idempotencyKey("benchmark-" + UUID.randomUUID())
+				.originalFileName("quarterly-report-2024.pdf")
+				.storedFileName(UUID.randomUUID() + ".pdf")
+				.contentType("application/pdf")
+				.fileSize(1_234_567L)
+				.bucketName("files")
+				.status(FileStatus.COMPLETED)
+				.checksum("d41d8cd98f00b204e9800998ecf8427e")
+				.createdAt(now.minusSeconds(3))
+				.completedAt(now)
+				.build();
+		response = FileUploadService.buildResponse(metadata, "Файл успешно загружен");
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+	}
+
+	@Benchmark
+	public FileUploadResponse buildResponse() {
+		return FileUploadService.buildResponse(metadata, "Файл успешно загружен");
+	}
+
+	@Benchmark
+	public byte[] serialize() throws Exception {
+		return objectMapper.writeValueAsBytes(response);
+	}
+
+	@Benchmark
+	public byte[] buildAndSerialize() throws Exception {
+		return objectMapper.writeValueAsBytes(FileUploadService.buildResponse(metadata, "Файл успешно загружен"));
+	}
+}
@@ -0,0 +1,125 @@
+package com.example.file_uploader.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись тела загрузки во staging-директорию (saveTempFile) против альтернатив.
+ *
+ * MockMultipartFile держит содержимое в памяти, поэтому transferTo здесь - копирование,
+ * а не переименование временного файла Tomcat (как у больших файлов в реальном запросе).
+ * streamToStorage - потоковая загрузка без staging-файла (POST /api/files/upload/stream);
+ * хранилище в памяти, как и MinIO, считает MD5 тела для ETag.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StagingWriteBenchmark {
+
+	@Param({"64KB", "4MB", "32MB"})
+	private String fileSize;
+
+	private Path stagingDir;
+	private ConfigurableApplicationContext context;
+	private FileUploadService fileUploadService;
+	private FakeStorageService storage;
+	private MockMultipartFile file;
+
+	@Setup
+	public void setUp() throws Exception {
+		stagingDir = Files.createTempDirectory("staging-benchmark-");
+		context = BenchmarkContext.start(stagingDir);
+		// saveTempFile - package-private метод, вызывается на целевом объекте, а не на прокси
+		fileUploadService = AopTestUtils.getUltimateTargetObject(context.getBean(FileUploadService.class));
+		storage = new FakeStorageService(Duration.ZERO, Duration.ZERO, 0);
+
+		byte[] content = new byte[Math.toIntExact(DataSize.parse(fileSize).toBytes())];
+		new Random(42).nextBytes(content);
+		file = new MockMultipartFile("file", "benchmark.bin", "application/octet-stream", content);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		context.close();
+		FileSystemUtils.deleteRecursively(stagingDir);
+	}
+
+	// Текущая реализация: отдельная директория на файл и MultipartFile.transferTo.
+	@Benchmark
+	public long saveTempFile() throws Exception {
+		Path tempFile = fileUploadService.saveTempFile(file);
+		return deleteWithParent(tempFile);
+	}
+
+	@Benchmark
+	public long filesCopy() throws Exception {
+		Path tempFile = stagingDir.resolve(UUID.randomUUID().toString());
+		try (InputStream in = file.getInputStream()) {
+			Files.copy(in, tempFile);
+		}
+		return delete(tempFile);
+	}
+
+	@Benchmark
+	public long channelTransfer() throws Exception {
+		Path tempFile = stagingDir.resolve(UUID.randomUUID().toString());
+		try (ReadableByteChannel in = Channels.newChannel(file.getInputStream());
+			 FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			long position = 0;
+			long transferred;
+			while ((transferred = out.transferFrom(in, position, Long.MAX_VALUE)) > 0) {
+				position += transferred;
+			}
+		}
+		return delete(tempFile);
+	}
+
+	@Benchmark
+	public String streamToStorage() throws Exception {
+		try (InputStream in = file.getInputStream()) {
+			return storage.uploadStream(in, file.getSize(), file.getContentType(), UUID.randomUUID().toString());
+		}
+	}
+
+	private static long delete(Path tempFile) throws Exception {
+		long size = Files.size(tempFile);
+		Files.delete(tempFile);
+		return size;
+	}
+
+	private static long deleteWithParent(Path tempFile) throws Exception {
+		long size = delete(tempFile);
+		Files.delete(tempFile.getParent());
+		return size;
+	}
+}
@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -15,6 +16,11 @@ import java.util.concurrent.Executor;
  * Использует ThreadPoolTaskExecutor для управления пулом потоков,
  * что обеспечивает эффективную обработку асинхронных задач загрузки файлов.
  * 
+ * При spring.threads.virtual.enabled=true воркеры загрузки и части multipart-загрузки
+ * выполняются на виртуальных потоках (как и обработчики Tomcat): загрузка - это почти
+ * только блокирующий I/O, и поток на задачу ничего не стоит. Параллелизм в этом режиме
+ * ограничивают upload-jobs.max-in-flight и лимиты зависимостей (DownstreamLimiter).
+ * 
  * Применение принципа Single Responsibility (SOLID):
  * Этот класс отвечает только за конфигурацию асинхронного выполнения.
  */
@@ -32,6 +38,9 @@ public class AsyncConfig {
     @Value("${async.queue-capacity:100}")
     private int queueCapacity;
 
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     /**
      * Создает executor для асинхронных задач загрузки файлов.
      * 
@@ -39,6 +48,11 @@ public class AsyncConfig {
      */
     @Bean(name = "fileUploadExecutor")
     public Executor fileUploadExecutor() {
+        if (virtualThreads) {
+            log.info("Воркеры загрузки выполняются на виртуальных потоках");
+            return virtualThreadExecutor("FileUpload-");
+        }
+
         log.info("Инициализация ThreadPoolTaskExecutor для загрузки файлов");
         
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -55,4 +69,139 @@ public class AsyncConfig {
         
         return executor;
     }
+
+    /**
+     * Создает executor для параллельной загрузки частей больших файлов в MinIO.
+     * Размер пула равен числу одновременно загружаемых частей на узле.
+     *
+     * @return настроенный ThreadPoolTaskExecutor
+     */
+    @Bean(name = "multipartUploadExecutor")
+    public Executor multipartUploadExecutor(@Value("${minio.multipart.parallelism:4}") int parallelism) {
+        // Число одновременно загружаемых частей ограничивает семафор MultipartUploadEngine
+        if (virtualThreads) {
+            return virtualThreadExecutor("MultipartUpload-");
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("MultipartUpload-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+
+        log.info("ThreadPoolTaskExecutor для multipart-загрузки инициализирован: parallelism={}", parallelism);
+
+        return executor;
+    }
+
+    /**
+     * Создает executor для параллельной загрузки элементов архива в MinIO.
+     * Число одновременно загружаемых элементов ограничивает семафор ArchiveExtractionService.
+     *
+     * @return настроенный ThreadPoolTaskExecutor
+     */
+    @Bean(name = "archiveEntryExecutor")
+    public Executor archiveEntryExecutor(@Value("${upload.archive.parallelism:4}") int parallelism) {
+        if (virtualThreads) {
+            return virtualThreadExecutor("ArchiveEntry-");
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("ArchiveEntry-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Создает executor для копирования объектов с локального уровня хранилища в MinIO (TieredStorageService).
+     * Число одновременно копируемых объектов ограничивает семафор TieredStorageService.
+     *
+     * @return настроенный ThreadPoolTaskExecutor
+     */
+    @Bean(name = "tierWriteBackExecutor")
+    public Executor tierWriteBackExecutor(@Value("${storage.tiered.write-back.parallelism:4}") int parallelism) {
+        if (virtualThreads) {
+            return virtualThreadExecutor("TierWriteBack-");
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("TierWriteBack-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Создает executor для фоновой загрузки популярных объектов в локальный кэш.
+     * Очередь небольшая: если она заполнена, объект просто не кэшируется в этот раз.
+     *
+     * @return настроенный ThreadPoolTaskExecutor
+     */
+    @Bean(name = "objectCacheExecutor")
+    public Executor objectCacheExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("ObjectCache-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Создает executor для отправки событий загрузки подписчикам (SSE, long-polling).
+     * Запись в сокет медленного клиента блокирует поток, поэтому с виртуальными потоками
+     * каждая отправка идет в своем потоке. При переполнении очереди подписка закрывается.
+     *
+     * @return настроенный executor
+     */
+    @Bean(name = "uploadEventExecutor")
+    public Executor uploadEventExecutor(@Value("${upload-events.pool-size:8}") int poolSize,
+                                        @Value("${upload-events.queue-capacity:10000}") int eventQueueCapacity) {
+        if (virtualThreads) {
+            return virtualThreadExecutor("UploadEvent-");
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(eventQueueCapacity);
+        executor.setThreadNamePrefix("UploadEvent-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Создает executor для фоновой уборки (StorageJanitor).
+     * Один поток без очереди: пока идет обход, следующий запуск по расписанию пропускается.
+     *
+     * @return настроенный ThreadPoolTaskExecutor
+     */
+    @Bean(name = "storageJanitorExecutor")
+    public Executor storageJanitorExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("StorageJanitor-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Executor, запускающий каждую задачу в новом виртуальном потоке.
+    private static SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setTaskTerminationTimeout(60_000);
+        return executor;
+    }
 }
@@ -0,0 +1,66 @@
+package com.example.file_uploader.config;
+
+import com.example.file_uploader.entity.FileStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/// Приводит CHECK-ограничение file_metadata.status в PostgreSQL к текущему набору FileStatus.
+/// Hibernate (ddl-auto: update) создает ограничение вместе с таблицей и не дополняет его новыми
+/// статусами, поэтому в существующей БД запись COMPLETED_LOCAL отклонялась бы.
+/// Ограничение пересоздается, только если в нем не хватает статусов; на других СУБД ничего не делает.
+@Slf4j
+public class FileStatusConstraintInitializer implements InitializingBean {
+
+    static final String CONSTRAINT = "file_metadata_status_check";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // Менеджер транзакций JPA создается после EntityManagerFactory, то есть после обновления схемы Hibernate.
+    public FileStatusConstraintInitializer(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+
+
+
+    // Проверка и пересоздание идут в одной транзакции: DDL в PostgreSQL транзакционный.
+    @Override
+    public void afterPropertiesSet() {
+        String database = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            List<String> definitions = jdbcTemplate.queryForList(
+                    "SELECT pg_get_constraintdef(c.oid) FROM pg_constraint c "
+                            + "WHERE c.conrelid = 'file_metadata'::regclass AND c.conname = ?",
+                    String.class, CONSTRAINT);
+            List<String> missing = Arrays.stream(FileStatus.values())
+                    .map(Enum::name)
+                    .filter(name -> definitions.isEmpty() || !definitions.get(0).contains("'" + name + "'"))
+                    .toList();
+            if (missing.isEmpty()) {
+                return;
+            }
+            String allowed = Arrays.stream(FileStatus.values())
+                    .map(value -> "'" + value.name() + "'")
+                    .collect(Collectors.joining(", "));
+            jdbcTemplate.execute("ALTER TABLE file_metadata DROP CONSTRAINT IF EXISTS " + CONSTRAINT);
+            jdbcTemplate.execute("ALTER TABLE file_metadata ADD CONSTRAINT " + CONSTRAINT
+                    + " CHECK (status IN (" + allowed + "))");
+            log.info("Ограничение {} пересоздано, добавлены статусы: {}", CONSTRAINT, missing);
+        });
+    }
+}
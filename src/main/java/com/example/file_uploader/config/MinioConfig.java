@@ -1,13 +1,15 @@
 package com.example.file_uploader.config;
 
-import io.minio.BucketExistsArgs;
-import io.minio.MakeBucketArgs;
+import com.example.file_uploader.service.MultipartMinioClient;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
-import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
 
 /// Конфигурация для MinIO клиента.
 @Configuration
@@ -23,40 +25,60 @@ public class MinioConfig {
     @Value("${minio.secret-key}")
     private String secretKey;
 
-    @Value("${minio.bucket-name}")
-    private String bucketName;
+    // Адрес MinIO, доступный клиентам снаружи. Подпись URL включает хост, поэтому
+    // presigned URL нужно подписывать тем адресом, по которому клиент будет обращаться.
+    @Value("${minio.public-endpoint:${minio.endpoint}}")
+    private String publicEndpoint;
+
+    @Value("${minio.region:us-east-1}")
+    private String region;
+
+    // Таймауты HTTP-клиента (по умолчанию у MinIO SDK - 5 минут). Срок операции целиком
+    // задает ResilientStorageService, эти таймауты ловят зависшее соединение.
+    @Value("${minio.timeouts.connect:5s}")
+    private Duration connectTimeout;
+
+    @Value("${minio.timeouts.read:60s}")
+    private Duration readTimeout;
+
+    @Value("${minio.timeouts.write:60s}")
+    private Duration writeTimeout;
 
     // Создание MinIO клиента как Spring Bean
     @Bean
+    @Primary
     public MinioClient minioClient() {
         log.info("Создание MinIO клиента с endpoint: {}", endpoint);
         
-        return MinioClient.builder()
+        MinioClient client = MinioClient.builder()
                 .endpoint(endpoint)
                 .credentials(accessKey, secretKey)
                 .build();
+        client.setTimeout(connectTimeout.toMillis(), writeTimeout.toMillis(), readTimeout.toMillis());
+        return client;
     }
 
-    // Инициализация bucket при старте приложения
-    @PostConstruct
-    public void initBucket() {
-        try {
-            MinioClient client = minioClient();
-            boolean bucketExists = client.bucketExists(
-                    BucketExistsArgs.builder().bucket(bucketName).build()
-            );
-            
-            if (!bucketExists) {
-                client.makeBucket(
-                        MakeBucketArgs.builder().bucket(bucketName).build()
-                );
-                log.info("Bucket '{}' успешно создан", bucketName);
-            } else {
-                log.info("Bucket '{}' уже существует", bucketName);
-            }
-        } catch (Exception e) {
-            log.warn("Не удалось инициализировать bucket при старте: {}. " +
-                    "Bucket будет создан при первой загрузке файла.", e.getMessage());
-        }
+    // Клиент для подписи presigned URL. Регион задан явно, чтобы подпись не требовала
+    // запроса к хранилищу (публичный адрес может быть недоступен изнутри сети).
+    @Bean
+    public MinioClient presignMinioClient() {
+        log.info("Создание MinIO клиента для presigned URL с endpoint: {}", publicEndpoint);
+
+        return MinioClient.builder()
+                .endpoint(publicEndpoint)
+                .region(region)
+                .credentials(accessKey, secretKey)
+                .build();
+    }
+
+    // Клиент с доступом к multipart API для параллельной загрузки частей
+    @Bean
+    public MultipartMinioClient multipartMinioClient() {
+        MinioAsyncClient client = MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .build();
+        client.setTimeout(connectTimeout.toMillis(), writeTimeout.toMillis(), readTimeout.toMillis());
+        return new MultipartMinioClient(client);
     }
 }
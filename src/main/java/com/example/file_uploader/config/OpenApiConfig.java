@@ -33,7 +33,7 @@ public class OpenApiConfig {
                                 **Архитектурные решения:**
                                 - Использование MinIO как S3-совместимого хранилища
                                 - PostgreSQL для хранения метаданных файлов
-                                - Асинхронная обработка через @Async
+                                - Асинхронная обработка через очередь задач в PostgreSQL (FOR UPDATE SKIP LOCKED)
                                 """)
                         .contact(new Contact()
                                 .name("Developer")
@@ -0,0 +1,52 @@
+package com.example.file_uploader.config;
+
+import com.example.file_uploader.service.ResilientStorageService;
+import com.example.file_uploader.service.StorageService;
+import com.example.file_uploader.service.TieredStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/// Оборачивает все бины StorageService в ResilientStorageService (сроки, повторы, circuit breaker).
+/// TieredStorageService не оборачивается: он работает с локальным диском, а в MinIO обращается
+/// через уже обернутый бин.
+@Configuration
+public class StorageResilienceConfig {
+
+    @Bean
+    public ResilientStorageService.Policy storageResiliencePolicy(
+            @Value("${storage.resilience.metadata-timeout:10s}") Duration metadataTimeout,
+            @Value("${storage.resilience.transfer-timeout:30s}") Duration transferTimeout,
+            @Value("${storage.resilience.min-throughput:1MB}") DataSize minThroughput,
+            @Value("${storage.resilience.max-transfer-timeout:2h}") Duration maxTransferTimeout,
+            @Value("${storage.resilience.retry.max-attempts:3}") int maxAttempts,
+            @Value("${storage.resilience.retry.initial-backoff:200ms}") Duration initialBackoff,
+            @Value("${storage.resilience.retry.max-backoff:5s}") Duration maxBackoff,
+            @Value("${storage.resilience.circuit-breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${storage.resilience.circuit-breaker.open-duration:30s}") Duration openDuration) {
+        return new ResilientStorageService.Policy(metadataTimeout, transferTimeout, minThroughput,
+                maxTransferTimeout, maxAttempts, initialBackoff, maxBackoff, failureThreshold, openDuration);
+    }
+
+    // static - BeanPostProcessor должен создаваться раньше остальных бинов конфигурации
+    @Bean
+    public static BeanPostProcessor resilientStoragePostProcessor(ObjectProvider<ResilientStorageService.Policy> policy,
+                                                                  ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof StorageService storage && !(bean instanceof ResilientStorageService)
+                        && !(bean instanceof TieredStorageService)) {
+                    return new ResilientStorageService(storage, beanName, policy.getObject(), meterRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.file_uploader.config;
+
+import com.example.file_uploader.repository.TierObjectRepository;
+import com.example.file_uploader.service.StorageService;
+import com.example.file_uploader.service.TieredStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/// Локальный уровень хранилища с write-back в MinIO (storage.tiered.enabled=true).
+/// TieredStorageService становится основным StorageService, MinIO - его вторым уровнем.
+@Configuration
+@ConditionalOnProperty(name = "storage.tiered.enabled", havingValue = "true")
+public class TieredStorageConfig {
+
+    // Каталог и идентификатор узла не имеют значений по умолчанию: временный каталог и HOSTNAME
+    // (в Docker - id контейнера) меняются при пересоздании узла, и подтвержденные, но еще не скопированные
+    // в MinIO объекты потеряли бы запись индекса.
+    @Bean
+    public TieredStorageService.Settings tieredStorageSettings(
+            @Value("${storage.tiered.dir:}") String directory,
+            @Value("${storage.tiered.node-id:}") String nodeId,
+            @Value("${storage.tiered.capacity:10GB}") DataSize capacity,
+            @Value("${storage.tiered.unknown-size-reserve:64MB}") DataSize unknownSizeReserve,
+            @Value("${storage.tiered.write-back.parallelism:4}") int parallelism,
+            @Value("${storage.tiered.write-back.batch-size:20}") int batchSize,
+            @Value("${storage.tiered.write-back.lease:10m}") Duration lease,
+            @Value("${storage.tiered.write-back.initial-backoff:1s}") Duration initialBackoff,
+            @Value("${storage.tiered.write-back.max-backoff:5m}") Duration maxBackoff) {
+        if (!StringUtils.hasText(directory) || !StringUtils.hasText(nodeId)) {
+            throw new IllegalArgumentException("При storage.tiered.enabled=true нужно задать storage.tiered.dir "
+                    + "(постоянный диск) и storage.tiered.node-id (постоянный идентификатор узла)");
+        }
+        return new TieredStorageService.Settings(Path.of(directory), nodeId, capacity, unknownSizeReserve,
+                parallelism, batchSize, lease, initialBackoff, maxBackoff);
+    }
+
+    // Без статуса COMPLETED_LOCAL в ограничении file_metadata_status_check локальный уровень неработоспособен
+    @Bean
+    public FileStatusConstraintInitializer fileStatusConstraintInitializer(DataSource dataSource,
+                                                                           PlatformTransactionManager transactionManager) {
+        return new FileStatusConstraintInitializer(dataSource, transactionManager);
+    }
+
+    // MinIO внедряется по имени бина: основной StorageService теперь этот
+    @Bean
+    @Primary
+    @DependsOn("fileStatusConstraintInitializer")
+    public TieredStorageService tieredStorageService(@Qualifier("minioStorageService") StorageService remote,
+                                                     TierObjectRepository tierObjectRepository,
+                                                     ApplicationEventPublisher eventPublisher,
+                                                     @Qualifier("tierWriteBackExecutor") Executor writeBackExecutor,
+                                                     TieredStorageService.Settings settings,
+                                                     MeterRegistry meterRegistry) {
+        return new TieredStorageService(remote, tierObjectRepository, eventPublisher, writeBackExecutor,
+                settings, meterRegistry);
+    }
+}
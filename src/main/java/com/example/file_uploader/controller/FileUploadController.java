@@ -1,8 +1,21 @@
 package com.example.file_uploader.controller;
 
+import com.example.file_uploader.dto.BatchUploadResponse;
 import com.example.file_uploader.dto.ErrorResponse;
+import com.example.file_uploader.dto.FilePageResponse;
 import com.example.file_uploader.dto.FileUploadResponse;
+import com.example.file_uploader.dto.PresignedUrlResponse;
+import com.example.file_uploader.dto.UploadEvent;
+import com.example.file_uploader.dto.UploadSessionResponse;
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.service.ArchiveExtractionService;
+import com.example.file_uploader.service.FileDownloadService;
+import com.example.file_uploader.service.FileListingService;
+import com.example.file_uploader.service.FileStatusCache;
 import com.example.file_uploader.service.FileUploadService;
+import com.example.file_uploader.service.PresignedUploadService;
+import com.example.file_uploader.service.ResumableUploadService;
+import com.example.file_uploader.service.UploadEventBus;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -10,21 +23,48 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 
 /**
  *      (POST /api/files/upload)
+ *      (POST /api/files/upload/batch)
+ *      (POST /api/files/upload/stream)
+ *      (POST /api/files/upload/archive)
+ *      (POST/HEAD/PATCH/DELETE /api/files/uploads/{sessionId})
  *      (GET /api/files/{id})
+ *      (GET /api/files/{id}/events - SSE, GET /api/files/{id}/events/poll - long-polling)
+ *      (GET /api/files/{id}/content)
+ *      (POST /api/files/presigned, POST /api/files/{id}/complete, GET /api/files/{id}/download-url)
+ *      (DELETE /api/files/{id})
  *      (GET /api/files/status/{idempotencyKey})
- *      (GET /api/files)
+ *      (GET /api/files - постранично или потоком NDJSON)
  */
 @RestController
 @RequestMapping("/api/files")
@@ -34,6 +74,26 @@ import java.util.List;
 public class FileUploadController {
 
     private final FileUploadService fileUploadService;
+    private final ResumableUploadService resumableUploadService;
+    private final FileDownloadService fileDownloadService;
+    private final PresignedUploadService presignedUploadService;
+    private final FileListingService fileListingService;
+    private final ArchiveExtractionService archiveExtractionService;
+    private final UploadEventBus uploadEventBus;
+
+    // Сколько клиент может кэшировать ответ о файле в конечном статусе.
+    @Value("${file-status-cache.terminal-max-age:60s}")
+    private Duration terminalStatusMaxAge;
+
+    // Максимум файлов в одном запросе пакетной загрузки.
+    @Value("${upload.batch.max-files:100}")
+    private int batchMaxFiles;
+
+    // Атрибуты запроса, через которые Tomcat отдает файл с диска системным вызовом sendfile.
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
@@ -106,6 +166,402 @@ public class FileUploadController {
 
 
 
+    @PostMapping(value = "/upload/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+            summary = "Загрузить несколько файлов",
+            description = """
+                    Принимает несколько файлов одним запросом multipart/form-data и ставит их загрузку в очередь.
+                    
+                    **Особенности:**
+                    - Части files и idempotencyKeys передаются в одном порядке: ключ i относится к файлу i
+                    - Ключи в пределах запроса должны быть уникальны
+                    - Существующие ключи проверяются одним запросом, новые записи создаются одним пакетом
+                    - Уже использованный ключ возвращает существующую запись (outcome = EXISTING)
+                    - Пустой файл не принимается (outcome = REJECTED), остальные файлы загружаются
+                    
+                    **Статус ответа 202 Accepted**, результат по каждому файлу - в items.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Пакет обработан, результат по каждому файлу в items",
+                    content = @Content(schema = @Schema(implementation = BatchUploadResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Некорректный запрос (число ключей не совпадает с числом файлов, "
+                            + "повторяющиеся ключи, слишком много файлов)",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Внутренняя ошибка сервера",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<BatchUploadResponse> uploadFiles(
+            @Parameter(description = "Файлы для загрузки", required = true)
+            @RequestParam("files") List<MultipartFile> files,
+            
+            @Parameter(description = "Ключи идемпотентности в порядке файлов", required = true,
+                       example = "batch-42:report.pdf")
+            @RequestParam("idempotencyKeys") List<String> idempotencyKeys) {
+        
+        log.info("HTTP POST /api/files/upload/batch, файлов: {}", files.size());
+
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Не передано ни одного файла");
+        }
+
+        if (files.size() > batchMaxFiles) {
+            throw new IllegalArgumentException("Не больше " + batchMaxFiles + " файлов в одном запросе");
+        }
+
+        if (idempotencyKeys.size() != files.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "Число ключей идемпотентности (%d) не совпадает с числом файлов (%d)",
+                    idempotencyKeys.size(), files.size()));
+        }
+
+        if (idempotencyKeys.stream().anyMatch(String::isBlank)) {
+            throw new IllegalArgumentException("Ключ идемпотентности не может быть пустым");
+        }
+
+        if (new HashSet<>(idempotencyKeys).size() != idempotencyKeys.size()) {
+            throw new IllegalArgumentException("Ключи идемпотентности в запросе должны быть уникальны");
+        }
+
+        BatchUploadResponse response = fileUploadService.initiateBatchUpload(files, idempotencyKeys);
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+
+
+
+
+    @PostMapping("/upload/stream")
+    @Operation(
+            summary = "Загрузить файл потоком",
+            description = """
+                    Передает тело запроса напрямую в MinIO, без буферизации на диск.
+                    
+                    **Особенности:**
+                    - Тело запроса - содержимое файла (не multipart), Content-Type тела сохраняется как тип файла
+                    - Имя файла передается в заголовке X-File-Name
+                    - Ограничения multipart (max-file-size) не применяются
+                    - Контрольная сумма (MD5) вычисляется на том же проходе
+                    
+                    **Статус ответа 201 Created** означает, что файл уже сохранен в хранилище.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "201",
+                    description = "Файл загружен",
+                    content = @Content(schema = @Schema(implementation = FileUploadResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Некорректный запрос (отсутствует имя файла или ключ идемпотентности)",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Внутренняя ошибка сервера",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<FileUploadResponse> uploadFileStream(
+            @Parameter(hidden = true) InputStream body,
+            
+            @Parameter(hidden = true) HttpServletRequest request,
+            
+            @Parameter(description = "Имя файла", required = true, example = "report.csv")
+            @RequestHeader("X-File-Name") String fileName,
+            
+            @Parameter(description = "Уникальный ключ идемпотентности для предотвращения дублирования",
+                       required = true, example = "test-upload-12345")
+            @RequestHeader("X-Idempotency-Key") String idempotencyKey) {
+        
+        long size = request.getContentLengthLong();
+        log.info("HTTP POST /api/files/upload/stream, файл: '{}', Content-Length: {}", fileName, size);
+
+        if (fileName.isBlank()) {
+            throw new IllegalArgumentException("Заголовок X-File-Name не может быть пустым");
+        }
+
+        if (idempotencyKey.isBlank()) {
+            throw new IllegalArgumentException("Заголовок X-Idempotency-Key обязателен");
+        }
+
+        if (size == 0) {
+            throw new IllegalArgumentException("Файл не может быть пустым");
+        }
+
+        FileUploadResponse response = fileUploadService.uploadStreaming(
+                body, size, fileName, request.getContentType(), idempotencyKey);
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+
+
+
+
+    @PostMapping("/upload/archive")
+    @Operation(
+            summary = "Загрузить архив с распаковкой",
+            description = """
+                    Распаковывает архив ZIP, TAR или TAR.GZ из тела запроса: каждый файл архива
+                    сохраняется как отдельный файл со своей записью и объектом в MinIO.
+                    
+                    **Особенности:**
+                    - Тело запроса - содержимое архива (не multipart), архив читается потоком и не пишется на диск
+                    - Формат определяется по параметру format, иначе по расширению X-File-Name или Content-Type
+                    - Ключ идемпотентности файла - X-Idempotency-Key + "/" + путь в архиве;
+                      повторная отправка архива возвращает уже загруженные файлы (outcome = EXISTING)
+                    - Каталоги и ссылки пропускаются
+                    - Лимиты на число файлов, распакованный объем и степень сжатия защищают от zip-бомб
+                    
+                    **Статус ответа 200 OK**: распаковка завершена, результат по каждому файлу - в items.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Архив распакован, результат по каждому файлу в items",
+                    content = @Content(schema = @Schema(implementation = BatchUploadResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Некорректный запрос (неизвестный формат, поврежденный архив)",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "413",
+                    description = "Превышен лимит распаковки; файлы, загруженные до этого, сохранены",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<BatchUploadResponse> uploadArchive(
+            @Parameter(hidden = true) InputStream body,
+            
+            @Parameter(hidden = true) HttpServletRequest request,
+            
+            @Parameter(description = "Имя файла архива", required = true, example = "photos.zip")
+            @RequestHeader("X-File-Name") String fileName,
+            
+            @Parameter(description = "Ключ идемпотентности архива, префикс ключей его файлов",
+                       required = true, example = "archive-12345")
+            @RequestHeader("X-Idempotency-Key") String idempotencyKey,
+            
+            @Parameter(description = "Формат архива (по умолчанию - по имени файла или Content-Type)")
+            @RequestParam(required = false) ArchiveExtractionService.Format format) throws Exception {
+        
+        log.info("HTTP POST /api/files/upload/archive, архив: '{}', Content-Length: {}",
+                fileName, request.getContentLengthLong());
+
+        if (fileName.isBlank() || idempotencyKey.isBlank()) {
+            throw new IllegalArgumentException("Заголовки X-File-Name и X-Idempotency-Key обязательны");
+        }
+
+        ArchiveExtractionService.Format archiveFormat = format != null ? format
+                : ArchiveExtractionService.Format.detect(fileName, request.getContentType())
+                        .orElseThrow(() -> new IllegalArgumentException(
+                                "Не удалось определить формат архива, укажите параметр format (ZIP, TAR, TAR_GZ)"));
+
+        try {
+            return ResponseEntity.ok(archiveExtractionService.extract(body, archiveFormat, fileName, idempotencyKey));
+        } catch (IOException e) {
+            // Поврежденный архив или обрыв тела запроса
+            throw new IllegalArgumentException("Не удалось прочитать архив: " + e.getMessage(), e);
+        }
+    }
+
+
+
+
+    @PostMapping("/uploads")
+    @Operation(
+            summary = "Создать сессию возобновляемой загрузки",
+            description = """
+                    Создает сессию загрузки по частям (в стиле протокола tus).
+                    
+                    **Протокол:**
+                    1. POST /api/files/uploads - создать сессию (Upload-Length, X-File-Name, X-Idempotency-Key)
+                    2. PATCH /api/files/uploads/{sessionId} - отправить часть по смещению Upload-Offset
+                    3. HEAD /api/files/uploads/{sessionId} - узнать текущее смещение после обрыва связи
+                    4. POST /api/files/uploads/{sessionId}/complete - собрать файл
+                    
+                    Повторный запрос с тем же X-Idempotency-Key возвращает существующую сессию.
+                    Все части, кроме последней, должны иметь размер chunkSize из ответа.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "201",
+                    description = "Сессия создана",
+                    content = @Content(schema = @Schema(implementation = UploadSessionResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Ключ идемпотентности уже использован обычной загрузкой",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<UploadSessionResponse> createUploadSession(
+            @Parameter(description = "Полный размер файла в байтах", required = true, example = "104857600")
+            @RequestHeader("Upload-Length") long uploadLength,
+            
+            @Parameter(description = "Имя файла", required = true, example = "video.mp4")
+            @RequestHeader("X-File-Name") String fileName,
+            
+            @Parameter(description = "MIME тип файла", example = "video/mp4")
+            @RequestHeader(value = "X-File-Content-Type", required = false) String fileContentType,
+            
+            @Parameter(description = "Уникальный ключ идемпотентности, идентифицирует сессию", 
+                       required = true, example = "test-upload-12345")
+            @RequestHeader("X-Idempotency-Key") String idempotencyKey) throws Exception {
+        
+        log.info("HTTP POST /api/files/uploads, файл: '{}', Upload-Length: {}", fileName, uploadLength);
+
+        if (uploadLength <= 0) {
+            throw new IllegalArgumentException("Upload-Length должен быть больше нуля");
+        }
+
+        if (fileName.isBlank() || idempotencyKey.isBlank()) {
+            throw new IllegalArgumentException("Заголовки X-File-Name и X-Idempotency-Key обязательны");
+        }
+
+        UploadSessionResponse session = resumableUploadService.createSession(
+                idempotencyKey, fileName, fileContentType, uploadLength);
+
+        return ResponseEntity.created(URI.create("/api/files/uploads/" + session.getSessionId()))
+                .header("Upload-Offset", String.valueOf(session.getOffset()))
+                .body(session);
+    }
+
+
+
+
+    @RequestMapping(value = "/uploads/{sessionId}", method = RequestMethod.HEAD)
+    @Operation(
+            summary = "Получить смещение сессии",
+            description = "Возвращает в заголовке Upload-Offset количество уже принятых байт"
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Смещение в заголовках Upload-Offset и Upload-Length"),
+            @ApiResponse(responseCode = "404", description = "Сессия не найдена")
+    })
+    public ResponseEntity<Void> getUploadOffset(
+            @Parameter(description = "ID сессии", required = true)
+            @PathVariable String sessionId) {
+        
+        return resumableUploadService.getSession(sessionId)
+                .map(session -> ResponseEntity.ok()
+                        .header("Upload-Offset", String.valueOf(session.getOffset()))
+                        .header("Upload-Length", String.valueOf(session.getTotalSize()))
+                        .cacheControl(CacheControl.noStore())
+                        .<Void>build())
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+
+
+
+    @PatchMapping("/uploads/{sessionId}")
+    @Operation(
+            summary = "Отправить часть файла",
+            description = """
+                    Принимает часть файла (тело запроса) по смещению из заголовка Upload-Offset.
+                    Смещение должно совпадать с текущим смещением сессии, иначе возвращается 409.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "204", description = "Часть принята, новое смещение в заголовке Upload-Offset"),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Смещение не совпадает с текущим",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<Void> uploadChunk(
+            @Parameter(description = "ID сессии", required = true)
+            @PathVariable String sessionId,
+            
+            @Parameter(description = "Смещение части в файле", required = true, example = "0")
+            @RequestHeader("Upload-Offset") long uploadOffset,
+            
+            @Parameter(hidden = true) InputStream body,
+            
+            @Parameter(hidden = true) HttpServletRequest request) throws Exception {
+        
+        long length = request.getContentLengthLong();
+        log.debug("HTTP PATCH /api/files/uploads/{}, Upload-Offset: {}, Content-Length: {}", sessionId, uploadOffset, length);
+
+        if (length < 0) {
+            throw new IllegalArgumentException("Заголовок Content-Length обязателен");
+        }
+
+        UploadSessionResponse session = resumableUploadService.appendChunk(sessionId, uploadOffset, body, length);
+
+        return ResponseEntity.noContent()
+                .header("Upload-Offset", String.valueOf(session.getOffset()))
+                .build();
+    }
+
+
+
+
+    @PostMapping("/uploads/{sessionId}/complete")
+    @Operation(
+            summary = "Завершить сессию загрузки",
+            description = "Собирает файл из принятых частей. Все байты файла должны быть загружены."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Файл собран",
+                    content = @Content(schema = @Schema(implementation = FileUploadResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Загружены не все части или сессия уже завершена",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<FileUploadResponse> completeUploadSession(
+            @Parameter(description = "ID сессии", required = true)
+            @PathVariable String sessionId) throws Exception {
+        
+        log.info("HTTP POST /api/files/uploads/{}/complete", sessionId);
+        return ResponseEntity.ok(resumableUploadService.complete(sessionId));
+    }
+
+
+
+
+    @DeleteMapping("/uploads/{sessionId}")
+    @Operation(
+            summary = "Отменить сессию загрузки",
+            description = "Удаляет принятые части из хранилища и помечает файл как FAILED"
+    )
+    @ApiResponse(responseCode = "204", description = "Сессия отменена")
+    public ResponseEntity<Void> abortUploadSession(
+            @Parameter(description = "ID сессии", required = true)
+            @PathVariable String sessionId) throws Exception {
+        
+        log.info("HTTP DELETE /api/files/uploads/{}", sessionId);
+        resumableUploadService.abort(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+
+
+
+
+
     @GetMapping("/{id}")
     @Operation(
             summary = "Получить информацию о файле",
@@ -117,6 +573,7 @@ public class FileUploadController {
                     description = "Информация о файле",
                     content = @Content(schema = @Schema(implementation = FileUploadResponse.class))
             ),
+            @ApiResponse(responseCode = "304", description = "Статус не изменился (If-None-Match)"),
             @ApiResponse(
                     responseCode = "404",
                     description = "Файл не найден",
@@ -125,11 +582,304 @@ public class FileUploadController {
     })
     public ResponseEntity<FileUploadResponse> getFileById(
             @Parameter(description = "ID файла", required = true)
-            @PathVariable String id) {
+            @PathVariable String id,
+            
+            @Parameter(hidden = true) WebRequest webRequest) {
         
-        log.info("HTTP GET /api/files/{}", id);
+        log.debug("HTTP GET /api/files/{}", id);
         
         return fileUploadService.getFileById(id)
+                .map(response -> statusResponse(response, webRequest))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+
+
+
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Подписаться на события загрузки (SSE)",
+            description = """
+                    Открывает поток Server-Sent Events вместо опроса GET /api/files/{id}.
+                    
+                    **События:**
+                    - `status` - смена статуса файла (первое событие - текущий статус)
+                    - `progress` - сколько байт передано в хранилище
+                    
+                    Поток закрывается сервером после статуса COMPLETED или FAILED.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Поток событий",
+                    content = @Content(schema = @Schema(implementation = UploadEvent.class))
+            ),
+            @ApiResponse(responseCode = "404", description = "Файл не найден")
+    })
+    public ResponseEntity<SseEmitter> streamEvents(
+            @Parameter(description = "ID файла", required = true)
+            @PathVariable String id) {
+        
+        log.debug("HTTP GET /api/files/{}/events", id);
+        
+        return uploadEventBus.openStream(id, () -> fileUploadService.getFileById(id))
+                .map(emitter -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.noStore())
+                        .header("X-Accel-Buffering", "no")
+                        .body(emitter))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+
+
+
+    @GetMapping("/{id}/events/poll")
+    @Operation(
+            summary = "Дождаться события загрузки (long-polling)",
+            description = """
+                    Отвечает сразу, если статус файла отличается от lastStatus (или lastStatus не передан).
+                    Иначе держит запрос до следующего события (смена статуса или прогресс), но не дольше timeout.
+                    Клиент повторяет запрос, передавая последний полученный статус.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Событие загрузки",
+                    content = @Content(schema = @Schema(implementation = UploadEvent.class))
+            ),
+            @ApiResponse(responseCode = "204", description = "За время ожидания событий не было"),
+            @ApiResponse(responseCode = "404", description = "Файл не найден")
+    })
+    public DeferredResult<ResponseEntity<UploadEvent>> pollEvent(
+            @Parameter(description = "ID файла", required = true)
+            @PathVariable String id,
+            
+            @Parameter(description = "Последний известный клиенту статус", example = "UPLOADING")
+            @RequestParam(required = false) FileStatus lastStatus,
+            
+            @Parameter(description = "Максимальное время ожидания в секундах", example = "30")
+            @RequestParam(defaultValue = "30") long timeout) {
+        
+        log.debug("HTTP GET /api/files/{}/events/poll, lastStatus={}", id, lastStatus);
+        
+        return uploadEventBus.awaitEvent(id, lastStatus, Duration.ofSeconds(timeout),
+                () -> fileUploadService.getFileById(id));
+    }
+
+
+
+
+    @GetMapping("/{id}/content")
+    @Operation(
+            summary = "Скачать файл",
+            description = """
+                    Отдает содержимое файла потоком из хранилища.
+                    
+                    **Особенности:**
+                    - Поддерживается заголовок Range (один диапазон байт) - ответ 206 Partial Content
+                    - Поддерживается If-None-Match по ETag - ответ 304 Not Modified
+                    - Популярные файлы отдаются из локального дискового кэша через sendfile
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Содержимое файла"),
+            @ApiResponse(responseCode = "206", description = "Запрошенный диапазон байт"),
+            @ApiResponse(responseCode = "304", description = "Файл не изменился"),
+            @ApiResponse(responseCode = "404", description = "Файл не найден"),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Файл еще не загружен",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(responseCode = "416", description = "Диапазон вне размера файла")
+    })
+    public ResponseEntity<StreamingResponseBody> downloadFile(
+            @Parameter(description = "ID файла", required = true)
+            @PathVariable String id,
+            
+            @Parameter(description = "Диапазон байт", example = "bytes=0-1023")
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+            
+            @Parameter(hidden = true) WebRequest webRequest,
+            
+            @Parameter(hidden = true) HttpServletRequest request) {
+        
+        log.info("HTTP GET /api/files/{}/content, Range: {}", id, rangeHeader);
+
+        Optional<FileDownloadService.DownloadTarget> found = fileDownloadService.findDownloadTarget(id);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        FileDownloadService.DownloadTarget target = found.get();
+        if (webRequest.checkNotModified(target.etag())) {
+            return null;
+        }
+
+        long size = target.size();
+        long start = 0;
+        long end = size - 1;
+        HttpStatus status = HttpStatus.OK;
+
+        if (rangeHeader != null) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // Несколько диапазонов (multipart/byteranges) не поддерживаются - отдаем файл целиком
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                if (!isSatisfiable(range, size)) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                            .build();
+                }
+                start = range.getRangeStart(size);
+                end = range.getRangeEnd(size);
+                status = HttpStatus.PARTIAL_CONTENT;
+            }
+        }
+
+        long offset = start;
+        long length = end - start + 1;
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status)
+                .eTag(target.etag())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(target.originalFileName(), StandardCharsets.UTF_8)
+                        .build()
+                        .toString())
+                .contentType(target.contentType() != null
+                        ? MediaType.parseMediaType(target.contentType())
+                        : MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(length);
+        if (status == HttpStatus.PARTIAL_CONTENT) {
+            response.header(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end, size));
+        }
+
+        Optional<Path> cachedFile = fileDownloadService.findCachedFile(target);
+
+        // Tomcat отправит файл через sendfile сам, после выхода из обработчика, минуя JVM
+        if (cachedFile.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, cachedFile.get().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, offset);
+            request.setAttribute(SENDFILE_END, offset + length);
+            return response.build();
+        }
+
+        return response.body(out -> {
+            try {
+                fileDownloadService.writeContent(target, cachedFile, offset, length, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Ошибка чтения файла из хранилища", e);
+            }
+        });
+    }
+
+
+
+
+    private static boolean isSatisfiable(HttpRange range, long size) {
+        try {
+            return size > 0 && range.getRangeStart(size) < size;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+
+
+
+    @PostMapping("/presigned")
+    @Operation(
+            summary = "Получить URL для прямой загрузки",
+            description = """
+                    Создает запись о файле в статусе PENDING и возвращает presigned URL,
+                    по которому клиент загружает файл напрямую в MinIO методом PUT.
+                    
+                    **Протокол:**
+                    1. POST /api/files/presigned - получить URL (Upload-Length, X-File-Name, X-Idempotency-Key)
+                    2. PUT по полученному URL - загрузить содержимое файла
+                    3. POST /api/files/{id}/complete - подтвердить загрузку
+                    
+                    Повторный запрос с тем же X-Idempotency-Key выдает новый URL, пока файл не загружен.
+                    """
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "201",
+                    description = "URL выдан",
+                    content = @Content(schema = @Schema(implementation = PresignedUrlResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Некорректный размер или отсутствуют заголовки",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<PresignedUrlResponse> createPresignedUpload(
+            @Parameter(description = "Размер файла в байтах", required = true, example = "104857600")
+            @RequestHeader("Upload-Length") long uploadLength,
+            
+            @Parameter(description = "Имя файла", required = true, example = "video.mp4")
+            @RequestHeader("X-File-Name") String fileName,
+            
+            @Parameter(description = "MIME тип файла", example = "video/mp4")
+            @RequestHeader(value = "X-File-Content-Type", required = false) String fileContentType,
+            
+            @Parameter(description = "Уникальный ключ идемпотентности для предотвращения дублирования",
+                       required = true, example = "test-upload-12345")
+            @RequestHeader("X-Idempotency-Key") String idempotencyKey) throws Exception {
+        
+        log.info("HTTP POST /api/files/presigned, файл: '{}', Upload-Length: {}", fileName, uploadLength);
+
+        if (fileName.isBlank() || idempotencyKey.isBlank()) {
+            throw new IllegalArgumentException("Заголовки X-File-Name и X-Idempotency-Key обязательны");
+        }
+
+        PresignedUrlResponse response = presignedUploadService.createUpload(
+                idempotencyKey, fileName, fileContentType, uploadLength);
+
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .cacheControl(CacheControl.noStore())
+                .body(response);
+    }
+
+
+
+
+    @PostMapping("/{id}/complete")
+    @Operation(
+            summary = "Подтвердить прямую загрузку",
+            description = "Проверяет наличие и размер объекта в хранилище и переводит файл в статус COMPLETED"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Файл загружен",
+                    content = @Content(schema = @Schema(implementation = FileUploadResponse.class))
+            ),
+            @ApiResponse(responseCode = "404", description = "Файл не найден"),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Объект еще не загружен или его размер не совпадает с заявленным",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<FileUploadResponse> completePresignedUpload(
+            @Parameter(description = "ID файла", required = true)
+            @PathVariable String id) throws Exception {
+        
+        log.info("HTTP POST /api/files/{}/complete", id);
+
+        return presignedUploadService.complete(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -137,6 +887,66 @@ public class FileUploadController {
 
 
 
+    @GetMapping("/{id}/download-url")
+    @Operation(
+            summary = "Получить URL для прямого скачивания",
+            description = "Возвращает presigned URL, по которому файл скачивается напрямую из MinIO"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "URL выдан",
+                    content = @Content(schema = @Schema(implementation = PresignedUrlResponse.class))
+            ),
+            @ApiResponse(responseCode = "404", description = "Файл не найден"),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Файл еще не загружен",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<PresignedUrlResponse> getDownloadUrl(
+            @Parameter(description = "ID файла", required = true)
+            @PathVariable String id) throws Exception {
+        
+        return presignedUploadService.createDownloadUrl(id)
+                .map(response -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.noStore())
+                        .body(response))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+
+
+
+    @DeleteMapping("/{id}")
+    @Operation(
+            summary = "Удалить файл",
+            description = "Удаляет файл и его метаданные. Файл в процессе загрузки удалить нельзя."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "204", description = "Файл удален"),
+            @ApiResponse(responseCode = "404", description = "Файл не найден"),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "Файл еще загружается",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<Void> deleteFile(
+            @Parameter(description = "ID файла", required = true)
+            @PathVariable String id) throws Exception {
+        
+        log.info("HTTP DELETE /api/files/{}", id);
+        
+        return fileUploadService.deleteFile(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+
+
+
     @GetMapping("/status/{idempotencyKey}")
     @Operation(
             summary = "Получить статус по ключу идемпотентности",
@@ -148,6 +958,7 @@ public class FileUploadController {
                     description = "Статус файла",
                     content = @Content(schema = @Schema(implementation = FileUploadResponse.class))
             ),
+            @ApiResponse(responseCode = "304", description = "Статус не изменился (If-None-Match)"),
             @ApiResponse(
                     responseCode = "404",
                     description = "Файл с таким ключом не найден",
@@ -156,30 +967,104 @@ public class FileUploadController {
     })
     public ResponseEntity<FileUploadResponse> getFileByIdempotencyKey(
             @Parameter(description = "Ключ идемпотентности", required = true)
-            @PathVariable String idempotencyKey) {
+            @PathVariable String idempotencyKey,
+            
+            @Parameter(hidden = true) WebRequest webRequest) {
         
-        log.info("HTTP GET /api/files/status/{}", idempotencyKey);
+        log.debug("HTTP GET /api/files/status/{}", idempotencyKey);
         
         return fileUploadService.getFileByIdempotencyKey(idempotencyKey)
-                .map(ResponseEntity::ok)
+                .map(response -> statusResponse(response, webRequest))
                 .orElse(ResponseEntity.notFound().build());
     }
 
 
 
+
+    // Ответ о статусе с ETag: клиент опрашивает статус с If-None-Match и получает 304, пока статус не изменился.
+    // Конечный статус больше не меняется, и его можно кэшировать на клиенте.
+    private ResponseEntity<FileUploadResponse> statusResponse(FileUploadResponse response, WebRequest webRequest) {
+        String etag = statusEtag(response);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        CacheControl cacheControl = FileStatusCache.isTerminal(response.getStatus())
+                ? CacheControl.maxAge(terminalStatusMaxAge)
+                : CacheControl.noCache();
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(response);
+    }
+
+
+
+
+    private static String statusEtag(FileUploadResponse response) {
+        String state = String.join("|", response.getId(), String.valueOf(response.getStatus()),
+                String.valueOf(response.getChecksum()), String.valueOf(response.getErrorMessage()),
+                String.valueOf(response.getCompletedAt()));
+        return "\"" + DigestUtils.md5DigestAsHex(state.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+
+
     
-    @GetMapping
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
     @Operation(
-            summary = "Получить список всех файлов",
-            description = "Возвращает список всех загруженных файлов, отсортированных по дате создания"
-    )
-    @ApiResponse(
-            responseCode = "200",
-            description = "Список файлов",
-            content = @Content(schema = @Schema(implementation = FileUploadResponse.class))
+            summary = "Получить список файлов",
+            description = """
+                    Возвращает страницу файлов, отсортированных от новых к старым.
+                    
+                    Для следующей страницы передайте nextCursor из ответа в параметре cursor.
+                    На последней странице nextCursor отсутствует.
+                    
+                    С заголовком Accept: application/x-ndjson возвращает все подходящие файлы
+                    потоком, по одному JSON-объекту на строку (выгрузка без пагинации).
+                    """
     )
-    public ResponseEntity<List<FileUploadResponse>> getAllFiles() {
-        log.info("HTTP GET /api/files");
-        return ResponseEntity.ok(fileUploadService.getAllFiles());
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Страница списка файлов",
+                    content = @Content(schema = @Schema(implementation = FilePageResponse.class))
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Некорректный курсор или limit",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+    })
+    public ResponseEntity<FilePageResponse> getFiles(
+            @Parameter(description = "Фильтр по статусу", example = "COMPLETED")
+            @RequestParam(required = false) FileStatus status,
+            
+            @Parameter(description = "Фильтр по MIME типу", example = "application/pdf")
+            @RequestParam(required = false) String contentType,
+            
+            @Parameter(description = "Курсор следующей страницы из предыдущего ответа")
+            @RequestParam(required = false) String cursor,
+            
+            @Parameter(description = "Размер страницы (до 500)", example = "50")
+            @RequestParam(defaultValue = "50") int limit) {
+        
+        log.info("HTTP GET /api/files, status={}, contentType={}, limit={}", status, contentType, limit);
+        return ResponseEntity.ok(fileListingService.getPage(status, contentType, cursor, limit));
+    }
+
+
+
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(hidden = true)
+    public ResponseEntity<StreamingResponseBody> exportFiles(
+            @RequestParam(required = false) FileStatus status,
+            
+            @RequestParam(required = false) String contentType) {
+        
+        log.info("HTTP GET /api/files (NDJSON), status={}, contentType={}", status, contentType);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> fileListingService.exportNdjson(status, contentType, out));
     }
 }
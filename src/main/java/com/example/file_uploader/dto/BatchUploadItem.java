@@ -0,0 +1,42 @@
+package com.example.file_uploader.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// DTO результата для одного файла пакетной загрузки.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Результат загрузки одного файла из пакета")
+public class BatchUploadItem {
+
+    public enum Outcome {
+        // Файл принят в обработку, задача поставлена в очередь
+        ACCEPTED,
+        // Ключ уже использован - возвращается существующая запись
+        EXISTING,
+        // Файл не принят (например, пустой)
+        REJECTED,
+        // Файл не загружен из-за ошибки (загрузка элементов архива)
+        FAILED
+    }
+
+    @Schema(description = "Порядковый номер файла в запросе или элемента в архиве (с нуля)", example = "0")
+    private int index;
+
+    @Schema(description = "Ключ идемпотентности файла", example = "batch-42:report.pdf")
+    private String idempotencyKey;
+
+    @Schema(description = "Результат для файла", example = "ACCEPTED")
+    private Outcome outcome;
+
+    @Schema(description = "Информация о файле (отсутствует, если файл не принят)")
+    private FileUploadResponse file;
+
+    @Schema(description = "Причина отказа (для REJECTED и FAILED)", example = "Файл не может быть пустым")
+    private String error;
+}
@@ -0,0 +1,48 @@
+package com.example.file_uploader.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// DTO ответа на пакетную загрузку файлов.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Результат пакетной загрузки")
+public class BatchUploadResponse {
+
+    @Schema(description = "Принято в обработку", example = "8")
+    private int accepted;
+
+    @Schema(description = "Уже загружались ранее (идемпотентный запрос)", example = "1")
+    private int existing;
+
+    @Schema(description = "Не принято", example = "1")
+    private int rejected;
+
+    @Schema(description = "Не загружено из-за ошибки", example = "0")
+    private int failed;
+
+    @Schema(description = "Результаты в порядке файлов в запросе")
+    private List<BatchUploadItem> items;
+
+    // Ответ с подсчетом результатов по items.
+    public static BatchUploadResponse of(List<BatchUploadItem> items) {
+        return BatchUploadResponse.builder()
+                .accepted(count(items, BatchUploadItem.Outcome.ACCEPTED))
+                .existing(count(items, BatchUploadItem.Outcome.EXISTING))
+                .rejected(count(items, BatchUploadItem.Outcome.REJECTED))
+                .failed(count(items, BatchUploadItem.Outcome.FAILED))
+                .items(items)
+                .build();
+    }
+
+    private static int count(List<BatchUploadItem> items, BatchUploadItem.Outcome outcome) {
+        return (int) items.stream().filter(item -> item.getOutcome() == outcome).count();
+    }
+}
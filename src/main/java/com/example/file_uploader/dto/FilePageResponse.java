@@ -0,0 +1,25 @@
+package com.example.file_uploader.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// DTO страницы списка файлов.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Страница списка файлов")
+public class FilePageResponse {
+
+    @Schema(description = "Файлы, от новых к старым")
+    private List<FileUploadResponse> items;
+
+    @Schema(description = "Курсор следующей страницы (отсутствует на последней странице)",
+            example = "MjAyNC0wMS0xNVQxMDozMDowMHw1NTBlODQwMC1lMjli")
+    private String nextCursor;
+}
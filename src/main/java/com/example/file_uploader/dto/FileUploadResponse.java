@@ -1,5 +1,6 @@
 package com.example.file_uploader.dto;
 
+import com.example.file_uploader.entity.CompressionCodec;
 import com.example.file_uploader.entity.FileStatus;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
@@ -41,6 +42,12 @@ public class FileUploadResponse {
     @Schema(description = "Контрольная сумма файла", example = "d41d8cd98f00b204e9800998ecf8427e")
     private String checksum;
 
+    @Schema(description = "Кодек сжатия в хранилище (отсутствует, если файл хранится как есть)", example = "GZIP")
+    private CompressionCodec compressionCodec;
+
+    @Schema(description = "Размер объекта в хранилище после сжатия", example = "183421")
+    private Long storedSize;
+
     @Schema(description = "Дата и время создания")
     private LocalDateTime createdAt;
 
@@ -0,0 +1,37 @@
+package com.example.file_uploader.dto;
+
+import com.example.file_uploader.entity.FileStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// DTO с presigned URL для прямой загрузки или скачивания файла из хранилища.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Presigned URL для прямого обращения к хранилищу")
+public class PresignedUrlResponse {
+
+    @Schema(description = "ID файла", example = "550e8400-e29b-41d4-a716-446655440000")
+    private String fileId;
+
+    @Schema(description = "Ключ идемпотентности", example = "test")
+    private String idempotencyKey;
+
+    @Schema(description = "Статус файла", example = "PENDING")
+    private FileStatus status;
+
+    @Schema(description = "HTTP метод, которым нужно обратиться по URL", example = "PUT")
+    private String method;
+
+    @Schema(description = "Presigned URL (отсутствует, если файл уже не ожидает загрузки)")
+    private String url;
+
+    @Schema(description = "Время истечения URL", example = "2024-01-15T10:45:00")
+    private LocalDateTime expiresAt;
+}
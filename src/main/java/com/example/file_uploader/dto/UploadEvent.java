@@ -0,0 +1,45 @@
+package com.example.file_uploader.dto;
+
+import com.example.file_uploader.entity.FileStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// DTO события загрузки файла (SSE и long-polling).
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Событие загрузки файла: смена статуса или прогресс передачи")
+public class UploadEvent {
+
+    public enum Type {
+        STATUS,
+        PROGRESS
+    }
+
+    @Schema(description = "ID файла", example = "550e8400-e29b-41d4-a716-446655440000")
+    private String fileId;
+
+    @Schema(description = "Тип события", example = "STATUS")
+    private Type type;
+
+    @Schema(description = "Статус файла (для события STATUS)", example = "UPLOADING")
+    private FileStatus status;
+
+    @Schema(description = "Сколько байт передано в хранилище", example = "8388608")
+    private Long bytesTransferred;
+
+    @Schema(description = "Размер файла в байтах (если известен)", example = "1234567")
+    private Long totalBytes;
+
+    @Schema(description = "Сообщение об ошибке (если есть)", example = "null")
+    private String errorMessage;
+
+    @Schema(description = "Время события")
+    private LocalDateTime timestamp;
+}
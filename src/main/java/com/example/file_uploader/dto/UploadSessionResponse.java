@@ -0,0 +1,38 @@
+package com.example.file_uploader.dto;
+
+import com.example.file_uploader.entity.UploadSessionStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// DTO с состоянием сессии возобновляемой загрузки.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Состояние сессии возобновляемой загрузки")
+public class UploadSessionResponse {
+
+    @Schema(description = "Идентификатор сессии", example = "8c1f2a4e-6b7d-4c1a-9f3e-2d5b6a7c8e9f")
+    private String sessionId;
+
+    @Schema(description = "ID файла, который будет создан по завершении", example = "550e8400-e29b-41d4-a716-446655440000")
+    private String fileId;
+
+    @Schema(description = "Ключ идемпотентности", example = "test")
+    private String idempotencyKey;
+
+    @Schema(description = "Полный размер файла в байтах", example = "104857600")
+    private Long totalSize;
+
+    @Schema(description = "Размер части в байтах (все части, кроме последней)", example = "8388608")
+    private Long chunkSize;
+
+    @Schema(description = "Смещение следующей части", example = "16777216")
+    private Long offset;
+
+    @Schema(description = "Статус сессии", example = "ACTIVE")
+    private UploadSessionStatus status;
+}
@@ -0,0 +1,11 @@
+package com.example.file_uploader.entity;
+
+/**
+ * Кодек, которым сжат объект в хранилище.
+ *
+ * GZIP - gzip (RFC 1952), распаковывается средствами JDK.
+ * Файл без сжатия хранит null в FileMetadata.compressionCodec.
+ */
+public enum CompressionCodec {
+    GZIP
+}
@@ -0,0 +1,45 @@
+package com.example.file_uploader.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Объект в хранилище, адресуемый по хэшу содержимого, со счетчиком ссылок из FileMetadata.
+@Entity
+@Table(name = "content_object", indexes = {
+        @Index(name = "idx_content_object_ref_count", columnList = "refCount, updatedAt"),
+        @Index(name = "idx_content_object_stored_file_name", columnList = "storedFileName")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContentObject {
+
+    // SHA-256 содержимого в hex.
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    // Имя объекта в MinIO.
+    @Column(nullable = false)
+    private String storedFileName;
+
+    // Размер объекта в байтах.
+    private Long fileSize;
+
+    // Количество записей FileMetadata, ссылающихся на объект.
+    @Column(nullable = false)
+    private Long refCount;
+
+    // Дата и время создания записи.
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Дата и время последнего изменения счетчика.
+    private LocalDateTime updatedAt;
+}
@@ -12,7 +12,13 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "file_metadata", indexes = {
         @Index(name = "idx_idempotency_key", columnList = "idempotencyKey", unique = true),
-        @Index(name = "idx_status", columnList = "status")
+        @Index(name = "idx_status", columnList = "status"),
+        // Сверка объектов MinIO с записями о файлах (StorageJanitor)
+        @Index(name = "idx_file_metadata_stored_file_name", columnList = "storedFileName"),
+        // Keyset-пагинация списка файлов по (created_at, id), в том числе с фильтрами
+        @Index(name = "idx_file_metadata_created_at_id", columnList = "createdAt, id"),
+        @Index(name = "idx_file_metadata_status_created_at_id", columnList = "status, createdAt, id"),
+        @Index(name = "idx_file_metadata_content_type_created_at_id", columnList = "contentType, createdAt, id")
 })
 @Data
 @Builder
@@ -58,6 +64,18 @@ public class FileMetadata {
     // Контрольная сумма файла.
     private String checksum;
 
+    // Кодек сжатия объекта в хранилище (null - хранится как есть).
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private CompressionCodec compressionCodec;
+
+    // Размер объекта в хранилище (после сжатия); null - совпадает с fileSize.
+    private Long storedSize;
+
+    // SHA-256 содержимого, если файл хранится как общий объект (дедупликация).
+    @Column(length = 64)
+    private String contentHash;
+
     // Дата и время создания записи.
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
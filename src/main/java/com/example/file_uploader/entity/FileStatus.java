@@ -4,12 +4,19 @@ package com.example.file_uploader.entity;
  * 
  * PENDING - файл ожидает обработки
  * UPLOADING - файл в процессе загрузки
+ * COMPLETED_LOCAL - файл сохранен на локальном уровне хранилища (TieredStorageService), копии в MinIO еще нет
  * COMPLETED - файл успешно загружен
  * FAILED - произошла ошибка при загрузке
  */
 public enum FileStatus {
     PENDING,
     UPLOADING,
+    COMPLETED_LOCAL,
     COMPLETED,
-    FAILED
+    FAILED;
+
+    // Файл сохранен и доступен для скачивания (в MinIO или пока только на локальном уровне).
+    public boolean isCompleted() {
+        return this == COMPLETED || this == COMPLETED_LOCAL;
+    }
 }
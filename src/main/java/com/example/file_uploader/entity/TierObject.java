@@ -0,0 +1,77 @@
+package com.example.file_uploader.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Объект на локальном уровне хранилища узла (индекс TieredStorageService, по нему идет восстановление после перезапуска).
+@Entity
+@Table(name = "tier_object", indexes = {
+        @Index(name = "idx_tier_object_node_name", columnList = "nodeId, storedFileName", unique = true),
+        @Index(name = "idx_tier_object_node_state_next_attempt", columnList = "nodeId, state, nextAttemptAt"),
+        @Index(name = "idx_tier_object_name_state", columnList = "storedFileName, state")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TierObject {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    // Узел, на диске которого лежит копия (storage.tiered.node-id).
+    @Column(nullable = false)
+    private String nodeId;
+
+    // Имя объекта в хранилище.
+    @Column(nullable = false)
+    private String storedFileName;
+
+    // Размер объекта в байтах.
+    @Column(nullable = false)
+    private long size;
+
+    private String contentType;
+
+    // MD5 содержимого, вычисленный при записи на локальный диск.
+    @Column(length = 64)
+    private String etag;
+
+    // Состояние копирования в MinIO.
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private TierObjectState state;
+
+    // Количество неудачных попыток копирования в MinIO.
+    @Column(nullable = false)
+    private int attempts;
+
+    // Время, раньше которого объект нельзя брать в копирование.
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    // Ошибка последней попытки копирования.
+    @Column(length = 1000)
+    private String lastError;
+
+    // Дата и время записи на локальный диск.
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Дата и время копирования в MinIO.
+    private LocalDateTime replicatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.file_uploader.entity;
+/**
+ * Enum для состояния объекта на локальном уровне хранилища.
+ *
+ * LOCAL - объект есть только на локальном диске узла, ожидает копирования в MinIO
+ * REPLICATED - объект скопирован в MinIO, локальная копия может быть вытеснена
+ */
+public enum TierObjectState {
+    LOCAL,
+    REPLICATED
+}
@@ -0,0 +1,69 @@
+package com.example.file_uploader.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Задача на загрузку файла в MinIO, хранящаяся в очереди в БД.
+@Entity
+@Table(name = "upload_job", indexes = {
+        @Index(name = "idx_upload_job_status_next_attempt", columnList = "status, nextAttemptAt"),
+        @Index(name = "idx_upload_job_file_id", columnList = "fileId")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    // ID записи FileMetadata, которую обрабатывает задача.
+    @Column(nullable = false)
+    private String fileId;
+
+    // Путь к файлу в staging-директории.
+    @Column(nullable = false, length = 1000)
+    private String tempFilePath;
+
+    // Статус задачи.
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private UploadJobStatus status;
+
+    // Количество сделанных попыток.
+    @Column(nullable = false)
+    private int attempts;
+
+    // Время, раньше которого задачу нельзя брать в работу.
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    // Идентификатор узла, захватившего задачу.
+    private String lockedBy;
+
+    // Время последнего продления аренды задачи.
+    private LocalDateTime lockedAt;
+
+    // Ошибка последней попытки.
+    @Column(length = 1000)
+    private String lastError;
+
+    // Дата и время создания задачи.
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+}
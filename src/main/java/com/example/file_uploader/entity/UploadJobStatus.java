@@ -0,0 +1,13 @@
+package com.example.file_uploader.entity;
+/**
+ * Enum для статуса задачи в очереди загрузок.
+ *
+ * PENDING - задача ожидает свободного воркера (или повторной попытки)
+ * RUNNING - задача захвачена узлом и выполняется
+ * FAILED - исчерпаны все попытки загрузки
+ */
+public enum UploadJobStatus {
+    PENDING,
+    RUNNING,
+    FAILED
+}
@@ -0,0 +1,78 @@
+package com.example.file_uploader.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/// Сессия возобновляемой (chunked) загрузки. Части файла соответствуют частям S3 multipart upload.
+@Entity
+@Table(name = "upload_session", indexes = {
+        @Index(name = "idx_upload_session_idempotency_key", columnList = "idempotencyKey", unique = true),
+        @Index(name = "idx_upload_session_file_id", columnList = "fileId"),
+        @Index(name = "idx_upload_session_status_updated_at", columnList = "status, updatedAt")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    // Ключ идемпотентности (X-Idempotency-Key), идентифицирует сессию для клиента.
+    @Column(nullable = false, unique = true)
+    private String idempotencyKey;
+
+    // ID записи FileMetadata, которая будет создана по завершении сессии.
+    @Column(nullable = false)
+    private String fileId;
+
+    // Идентификатор multipart upload в MinIO.
+    @Column(nullable = false, length = 1000)
+    private String uploadId;
+
+    // Полный размер файла в байтах.
+    @Column(nullable = false)
+    private Long totalSize;
+
+    // Размер одной части. Все части, кроме последней, должны быть ровно такого размера.
+    @Column(nullable = false)
+    private Long chunkSize;
+
+    // Количество подтвержденных байт (смещение следующей части).
+    @Column(name = "upload_offset", nullable = false)
+    private Long offset;
+
+    // Статус сессии.
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private UploadSessionStatus status;
+
+    // Защита от одновременной записи двух частей в одну сессию.
+    @Version
+    private Long version;
+
+    // Дата и время создания сессии.
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Дата и время последней принятой части.
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
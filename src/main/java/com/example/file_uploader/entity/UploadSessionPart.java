@@ -0,0 +1,39 @@
+package com.example.file_uploader.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/// Загруженная часть сессии возобновляемой загрузки.
+@Entity
+@Table(name = "upload_session_part", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_upload_session_part", columnNames = {"sessionId", "partNumber"})
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionPart {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    // ID сессии.
+    @Column(nullable = false)
+    private String sessionId;
+
+    // Номер части в multipart upload (с 1).
+    @Column(nullable = false)
+    private Integer partNumber;
+
+    // ETag части, нужен для completeMultipartUpload.
+    @Column(nullable = false)
+    private String etag;
+
+    // Размер части в байтах.
+    @Column(nullable = false)
+    private Long size;
+}
@@ -0,0 +1,13 @@
+package com.example.file_uploader.entity;
+/**
+ * Enum для статуса сессии возобновляемой загрузки.
+ *
+ * ACTIVE - сессия принимает части файла
+ * COMPLETED - все части собраны в объект MinIO
+ * ABORTED - сессия отменена, загруженные части удалены
+ */
+public enum UploadSessionStatus {
+    ACTIVE,
+    COMPLETED,
+    ABORTED
+}
@@ -0,0 +1,9 @@
+package com.example.file_uploader.exception;
+
+// Архив превышает лимиты распаковки (число элементов, распакованный объем, степень сжатия).
+public class ArchiveLimitExceededException extends RuntimeException {
+
+    public ArchiveLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.file_uploader.exception;
+
+// Зависимость (MinIO, БД) перегружена: не удалось дождаться свободного слота.
+public class DownstreamBusyException extends RuntimeException {
+
+    public DownstreamBusyException(String message) {
+        super(message);
+    }
+}
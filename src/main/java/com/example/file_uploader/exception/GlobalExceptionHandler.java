@@ -3,6 +3,8 @@ package com.example.file_uploader.exception;
 import com.example.file_uploader.dto.ErrorResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MissingRequestHeaderException;
@@ -89,6 +91,101 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(error);
     }
 
+    // Конфликт состояния загрузки (неверное смещение части, повторное завершение сессии).
+    @ExceptionHandler(UploadConflictException.class)
+    public ResponseEntity<ErrorResponse> handleUploadConflict(
+            UploadConflictException ex, HttpServletRequest request) {
+        
+        log.warn("Конфликт загрузки: {}", ex.getMessage());
+        
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.CONFLICT.value())
+                .error("CONFLICT")
+                .message(ex.getMessage())
+                .path(request.getRequestURI())
+                .timestamp(LocalDateTime.now())
+                .build();
+        
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+
+    // Нарушение уникальности (например, ключа идемпотентности) - конфликт, а не ошибка сервера.
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<ErrorResponse> handleDataIntegrityViolation(
+            DataIntegrityViolationException ex, HttpServletRequest request) {
+        
+        log.warn("Нарушение ограничения БД: {}", ex.getMostSpecificCause().getMessage());
+        
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.CONFLICT.value())
+                .error("CONFLICT")
+                .message("Запрос конфликтует с параллельным запросом, повторите его")
+                .path(request.getRequestURI())
+                .timestamp(LocalDateTime.now())
+                .build();
+        
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+
+    // Архив похож на zip-бомбу или слишком велик. Уже загруженные элементы остаются.
+    @ExceptionHandler(ArchiveLimitExceededException.class)
+    public ResponseEntity<ErrorResponse> handleArchiveLimitExceeded(
+            ArchiveLimitExceededException ex, HttpServletRequest request) {
+
+        log.warn("Превышен лимит распаковки архива: {}", ex.getMessage());
+
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.PAYLOAD_TOO_LARGE.value())
+                .error("ARCHIVE_LIMIT_EXCEEDED")
+                .message(ex.getMessage())
+                .path(request.getRequestURI())
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(error);
+    }
+
+    // Зависимость перегружена - клиенту стоит повторить запрос позже.
+    @ExceptionHandler(DownstreamBusyException.class)
+    public ResponseEntity<ErrorResponse> handleDownstreamBusy(
+            DownstreamBusyException ex, HttpServletRequest request) {
+        
+        log.warn("Зависимость перегружена: {}", ex.getMessage());
+        
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .error("SERVICE_UNAVAILABLE")
+                .message(ex.getMessage())
+                .path(request.getRequestURI())
+                .timestamp(LocalDateTime.now())
+                .build();
+        
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(error);
+    }
+
+    // Хранилище недоступно (circuit breaker разомкнут или исчерпаны повторы).
+    @ExceptionHandler(StorageUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleStorageUnavailable(
+            StorageUnavailableException ex, HttpServletRequest request) {
+
+        log.warn("Хранилище недоступно: {}", ex.getMessage());
+
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .error("STORAGE_UNAVAILABLE")
+                .message(ex.getMessage())
+                .path(request.getRequestURI())
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(error);
+    }
+
     /**
      * Обработка всех остальных исключений.
      */
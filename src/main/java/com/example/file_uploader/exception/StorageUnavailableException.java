@@ -0,0 +1,18 @@
+package com.example.file_uploader.exception;
+
+import java.time.Duration;
+
+// Хранилище недоступно (разомкнут circuit breaker или исчерпаны повторы): запрос стоит повторить через retryAfter.
+public class StorageUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public StorageUnavailableException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.file_uploader.exception;
+
+// Конфликт состояния загрузки: неверное смещение части, параллельная запись или неподходящий статус.
+public class UploadConflictException extends RuntimeException {
+
+    public UploadConflictException(String message) {
+        super(message);
+    }
+}
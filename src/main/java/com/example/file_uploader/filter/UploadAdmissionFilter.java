@@ -0,0 +1,240 @@
+package com.example.file_uploader.filter;
+
+import com.example.file_uploader.dto.ErrorResponse;
+import com.example.file_uploader.entity.UploadJobStatus;
+import com.example.file_uploader.repository.UploadJobRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Контроль допуска запросов на загрузку.
+ *
+ * Решение принимается до чтения тела запроса, по заголовкам и текущей нагрузке узла:
+ * - лимит запросов клиента (token bucket по X-Api-Key или префиксу ключа идемпотентности) - 429;
+ * - объем тел загрузок, принимаемых узлом одновременно (in-flight bytes) - 503;
+ * - глубина очереди upload_job и свободное место в staging-директории (для загрузок через диск) - 503.
+ *
+ * Слоты MinIO здесь не проверяются: они берутся на отдельный запрос к MinIO, и мгновенное
+ * их отсутствие не говорит о перегрузке. Не дождавшийся слота запрос получает 503 от DownstreamLimiter.
+ *
+ * Во всех случаях клиент получает Retry-After и может повторить запрос позже.
+ * Глубина очереди и свободное место обновляются по расписанию, а не на каждый запрос.
+ */
+@Component
+@Slf4j
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private static final String UPLOAD_PATH = "/api/files/upload";
+    private static final String BATCH_UPLOAD_PATH = "/api/files/upload/batch";
+    private static final String STREAM_UPLOAD_PATH = "/api/files/upload/stream";
+    private static final String ARCHIVE_UPLOAD_PATH = "/api/files/upload/archive";
+    private static final String RESUMABLE_UPLOAD_PATH_PREFIX = "/api/files/uploads/";
+
+    private final UploadJobRepository uploadJobRepository;
+    private final ObjectMapper objectMapper;
+
+    private final ConcurrentHashMap<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final AtomicLong inFlightDiskBytes = new AtomicLong();
+    private volatile long queueDepth;
+    private volatile long usableDiskSpace = Long.MAX_VALUE;
+
+    @Value("${upload-admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${upload-admission.max-in-flight-bytes:512MB}")
+    private DataSize maxInFlightBytes;
+
+    // Сколько резервировать под запрос без Content-Length.
+    @Value("${upload-admission.unknown-length-estimate:50MB}")
+    private DataSize unknownLengthEstimate;
+
+    @Value("${upload-admission.max-queue-depth:1000}")
+    private long maxQueueDepth;
+
+    @Value("${upload-admission.min-free-disk:1GB}")
+    private DataSize minFreeDisk;
+
+    @Value("${upload-admission.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    @Value("${upload-admission.client.rate-per-second:10}")
+    private double clientRatePerSecond;
+
+    @Value("${upload-admission.client.burst:20}")
+    private double clientBurst;
+
+    // Клиенты без X-Api-Key различаются по части ключа идемпотентности до этого разделителя.
+    @Value("${upload-admission.client.key-separator::}")
+    private String keySeparator;
+
+    @Value("${upload-jobs.staging-dir:${java.io.tmpdir}/file-uploader-staging}")
+    private Path stagingDir;
+
+    public UploadAdmissionFilter(UploadJobRepository uploadJobRepository,
+                                 ObjectMapper objectMapper) {
+        this.uploadJobRepository = uploadJobRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!enabled) {
+            return true;
+        }
+        String path = request.getRequestURI();
+        String method = request.getMethod();
+        if (HttpMethod.POST.matches(method)) {
+            return !path.equals(UPLOAD_PATH) && !path.equals(BATCH_UPLOAD_PATH)
+                    && !path.equals(STREAM_UPLOAD_PATH) && !path.equals(ARCHIVE_UPLOAD_PATH);
+        }
+        if (HttpMethod.PATCH.matches(method)) {
+            return !path.startsWith(RESUMABLE_UPLOAD_PATH_PREFIX);
+        }
+        return true;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String clientKey = clientKey(request);
+        long waitNanos = clientBuckets
+                .computeIfAbsent(clientKey, key -> new TokenBucket(clientBurst, clientRatePerSecond, System.nanoTime()))
+                .tryConsume(System.nanoTime());
+        if (waitNanos > 0) {
+            reject(request, response, HttpStatus.TOO_MANY_REQUESTS,
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1),
+                    "Превышен лимит запросов для клиента " + clientKey);
+            return;
+        }
+
+        // Загрузка через multipart сохраняется в staging-директорию и ждет воркера в очереди,
+        // остальные загрузки передаются в MinIO сразу
+        boolean diskBacked = request.getRequestURI().equals(UPLOAD_PATH)
+                || request.getRequestURI().equals(BATCH_UPLOAD_PATH);
+        if (diskBacked && queueDepth >= maxQueueDepth) {
+            reject(request, response, HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+                    "Очередь загрузок переполнена");
+            return;
+        }
+
+        long contentLength = request.getContentLengthLong();
+        long reserved = contentLength >= 0 ? contentLength : unknownLengthEstimate.toBytes();
+        long totalInFlight = inFlightBytes.addAndGet(reserved);
+        // Одиночный запрос больше лимита допускается, если узел свободен
+        if (totalInFlight > maxInFlightBytes.toBytes() && totalInFlight != reserved) {
+            inFlightBytes.addAndGet(-reserved);
+            reject(request, response, HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+                    "Узел принимает слишком много данных одновременно");
+            return;
+        }
+
+        if (diskBacked) {
+            long diskReserved = inFlightDiskBytes.addAndGet(reserved);
+            if (usableDiskSpace - diskReserved < minFreeDisk.toBytes()) {
+                inFlightDiskBytes.addAndGet(-reserved);
+                inFlightBytes.addAndGet(-reserved);
+                reject(request, response, HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+                        "Недостаточно места для временных файлов");
+                return;
+            }
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            inFlightBytes.addAndGet(-reserved);
+            if (diskBacked) {
+                inFlightDiskBytes.addAndGet(-reserved);
+            }
+        }
+    }
+
+
+
+
+    // Обновляет глубину очереди и свободное место и удаляет неактивных клиентов.
+    @Scheduled(fixedDelayString = "${upload-admission.refresh-interval-ms:1000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            queueDepth = uploadJobRepository.countByStatus(UploadJobStatus.PENDING);
+        } catch (Exception e) {
+            log.warn("Не удалось получить глубину очереди загрузок: {}", e.getMessage());
+        }
+        try {
+            Files.createDirectories(stagingDir);
+            usableDiskSpace = Files.getFileStore(stagingDir).getUsableSpace();
+        } catch (IOException e) {
+            log.warn("Не удалось получить свободное место в {}: {}", stagingDir, e.getMessage());
+        }
+
+        long now = System.nanoTime();
+        clientBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+
+
+
+    private String clientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader("X-Api-Key");
+        if (apiKey != null && !apiKey.isBlank()) {
+            return "api:" + apiKey;
+        }
+        String idempotencyKey = request.getHeader("X-Idempotency-Key");
+        if (idempotencyKey != null) {
+            int separator = idempotencyKey.indexOf(keySeparator);
+            if (separator > 0) {
+                return "key:" + idempotencyKey.substring(0, separator);
+            }
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+
+
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, HttpStatus status,
+                        long retryAfter, String message) throws IOException {
+        log.warn("Загрузка отклонена ({}): {}", status.value(), message);
+
+        ErrorResponse error = ErrorResponse.builder()
+                .status(status.value())
+                .error(status.name())
+                .message(message)
+                .path(request.getRequestURI())
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        // Тело запроса не читается - просим клиента закрыть соединение
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        objectMapper.writeValue(response.getOutputStream(), error);
+    }
+}
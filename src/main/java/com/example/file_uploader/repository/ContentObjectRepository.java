@@ -0,0 +1,59 @@
+package com.example.file_uploader.repository;
+
+import com.example.file_uploader.entity.ContentObject;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Репозиторий объектов, адресуемых по содержимому.
+ * Счетчик ссылок меняется одиночными UPDATE, без чтения сущности,
+ * чтобы параллельные загрузки одинакового содержимого не теряли инкременты.
+ */
+@Repository
+public interface ContentObjectRepository extends JpaRepository<ContentObject, String> {
+
+    // Добавляет ссылку на существующий объект. Возвращает 0, если объекта нет.
+    @Transactional
+    @Modifying
+    @Query("UPDATE ContentObject c SET c.refCount = c.refCount + 1, c.updatedAt = :now WHERE c.hash = :hash")
+    int acquire(@Param("hash") String hash, @Param("now") LocalDateTime now);
+
+    // Убирает ссылку на объект. Объект с нулевым счетчиком удаляет сборщик мусора.
+    @Transactional
+    @Modifying
+    @Query("UPDATE ContentObject c SET c.refCount = c.refCount - 1, c.updatedAt = :now WHERE c.hash = :hash")
+    int release(@Param("hash") String hash, @Param("now") LocalDateTime now);
+
+    // Регистрирует новый объект с одной ссылкой. Возвращает 0, если объект уже зарегистрирован параллельно.
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO content_object (hash, stored_file_name, file_size, ref_count, created_at, updated_at)
+            VALUES (:hash, :storedFileName, :fileSize, 1, :now, :now)
+            ON CONFLICT DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("hash") String hash, @Param("storedFileName") String storedFileName,
+                       @Param("fileSize") Long fileSize, @Param("now") LocalDateTime now);
+
+    // Имена объектов из списка, зарегистрированных как общие (в том числе ожидающие сборщика мусора).
+    @Query("SELECT c.storedFileName FROM ContentObject c WHERE c.storedFileName IN :names")
+    List<String> findStoredFileNamesIn(@Param("names") Collection<String> names);
+
+    // Блокирует объекты без ссылок, которые не менялись с deadline.
+    @Query(value = """
+            SELECT * FROM content_object
+            WHERE ref_count <= 0 AND updated_at < :deadline
+            ORDER BY updated_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<ContentObject> lockUnreferenced(@Param("deadline") LocalDateTime deadline, @Param("limit") int limit);
+}
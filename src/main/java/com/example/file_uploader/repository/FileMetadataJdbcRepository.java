@@ -0,0 +1,319 @@
+package com.example.file_uploader.repository;
+
+import com.example.file_uploader.dto.FileUploadResponse;
+import com.example.file_uploader.entity.CompressionCodec;
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.entity.FileStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Чтение списка файлов напрямую через JDBC, без загрузки управляемых сущностей.
+ *
+ * Постраничный вывод - keyset-пагинация по (created_at, id): следующая страница
+ * начинается строго после последней строки предыдущей, поэтому запрос использует
+ * составной индекс и не зависит от глубины страницы (в отличие от OFFSET).
+ *
+ * Смена статуса - один условный UPDATE ... WHERE id = ? AND status = ?, без чтения строки;
+ * несколько смен статуса отправляются одним JDBC batch. Записи пакетной загрузки
+ * вставляются так же: один batch из INSERT ... ON CONFLICT DO NOTHING.
+ */
+@Repository
+public class FileMetadataJdbcRepository {
+
+    // Строк за одно обращение к БД при выгрузке. Без этого драйвер PostgreSQL читает весь результат в память.
+    private static final int EXPORT_FETCH_SIZE = 500;
+
+    private static final String SELECT_COLUMNS = """
+            SELECT id, idempotency_key, original_file_name, file_size, content_type, status,
+                   error_message, checksum, compression_codec, stored_size, created_at, completed_at
+            FROM file_metadata
+            """;
+
+    private static final RowMapper<FileUploadResponse> ROW_MAPPER = (rs, rowNum) -> FileUploadResponse.builder()
+            .id(rs.getString("id"))
+            .idempotencyKey(rs.getString("idempotency_key"))
+            .originalFileName(rs.getString("original_file_name"))
+            .fileSize(rs.getObject("file_size", Long.class))
+            .contentType(rs.getString("content_type"))
+            .status(FileStatus.valueOf(rs.getString("status")))
+            .errorMessage(rs.getString("error_message"))
+            .checksum(rs.getString("checksum"))
+            .compressionCodec(toCompressionCodec(rs.getString("compression_codec")))
+            .storedSize(rs.getObject("stored_size", Long.class))
+            .createdAt(toLocalDateTime(rs.getTimestamp("created_at")))
+            .completedAt(toLocalDateTime(rs.getTimestamp("completed_at")))
+            .build();
+
+    // Поля, равные null, не меняются. Статус проверяется, только если задан expectedStatus.
+    private static final String UPDATE_STATUS = """
+            UPDATE file_metadata
+            SET status = :status,
+                error_message = :errorMessage,
+                checksum = COALESCE(:checksum, checksum),
+                stored_file_name = COALESCE(:storedFileName, stored_file_name),
+                content_hash = COALESCE(:contentHash, content_hash),
+                file_size = COALESCE(:fileSize, file_size),
+                compression_codec = COALESCE(:compressionCodec, compression_codec),
+                stored_size = COALESCE(:storedSize, stored_size),
+                completed_at = COALESCE(:completedAt, completed_at),
+                updated_at = :now
+            WHERE id = :id AND (:anyStatus OR status = :expectedStatus)
+            """;
+
+    // Вставка, которая при занятом ключе идемпотентности ничего не делает (без ошибки уникальности).
+    // Кроме ключа уникален только id (новый UUID), поэтому конфликт без указания столбца - это конфликт по ключу;
+    // такая форма поддерживается и H2 в режиме PostgreSQL (бенчмарки, тесты).
+    private static final String INSERT_IF_ABSENT = """
+            INSERT INTO file_metadata (id, idempotency_key, original_file_name, stored_file_name, content_type,
+                                       file_size, bucket_name, status, created_at, updated_at)
+            VALUES (:id, :idempotencyKey, :originalFileName, :storedFileName, :contentType,
+                    :fileSize, :bucketName, :status, :createdAt, :updatedAt)
+            ON CONFLICT DO NOTHING
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate exportJdbcTemplate;
+
+    public FileMetadataJdbcRepository(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        JdbcTemplate exportTemplate = new JdbcTemplate(dataSource);
+        exportTemplate.setFetchSize(EXPORT_FETCH_SIZE);
+        this.exportJdbcTemplate = new NamedParameterJdbcTemplate(exportTemplate);
+    }
+
+    // Позиция в списке: created_at и id последней строки предыдущей страницы.
+    public record Cursor(LocalDateTime createdAt, String id) {
+    }
+
+    /**
+     * Смена статуса файла.
+     *
+     * @param expectedStatus статус, в котором должен находиться файл (null - любой)
+     */
+    public record StatusUpdate(String fileId, FileStatus expectedStatus, FileStatus status, String errorMessage,
+                               String checksum, String storedFileName, String contentHash, Long fileSize,
+                               CompressionCodec compressionCodec, Long storedSize, LocalDateTime completedAt) {
+
+        public static StatusUpdate of(String fileId, FileStatus expectedStatus, FileStatus status, String errorMessage) {
+            return new StatusUpdate(fileId, expectedStatus, status, errorMessage, null, null, null, null,
+                    null, null, null);
+        }
+    }
+
+    // Возвращает до limit файлов, отсортированных от новых к старым, после позиции after (null - с начала).
+    public List<FileUploadResponse> findPage(FileStatus status, String contentType, Cursor after, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS);
+        appendFilters(sql, params, status, contentType);
+        if (after != null) {
+            sql.append(params.getValues().isEmpty() ? " WHERE " : " AND ");
+            sql.append("(created_at, id) < (:afterCreatedAt, :afterId)");
+            params.addValue("afterCreatedAt", Timestamp.valueOf(after.createdAt()));
+            params.addValue("afterId", after.id());
+        }
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT :limit");
+        params.addValue("limit", limit);
+
+        return jdbcTemplate.query(sql.toString(), params, ROW_MAPPER);
+    }
+
+
+
+
+    // Вставляет запись о файле, если ключ идемпотентности свободен. Параллельная вставка
+    // с тем же ключом ждет фиксации первой транзакции и возвращает false.
+    public boolean insertIfAbsent(FileMetadata metadata) {
+        return jdbcTemplate.update(INSERT_IF_ABSENT, toInsertParameters(metadata)) == 1;
+    }
+
+
+
+
+    // Вставляет несколько записей одним JDBC batch. Для каждой возвращает true, если запись создана
+    // (false - ключ идемпотентности уже занят).
+    public boolean[] insertAllIfAbsent(List<FileMetadata> metadata) {
+        SqlParameterSource[] batch = metadata.stream()
+                .map(FileMetadataJdbcRepository::toInsertParameters)
+                .toArray(SqlParameterSource[]::new);
+
+        int[] counts = jdbcTemplate.batchUpdate(INSERT_IF_ABSENT, batch);
+        boolean[] inserted = new boolean[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            // Без числа строк (SUCCESS_NO_INFO) вставка не подтверждена: вызывающий сверит id записи с ключом
+            inserted[i] = counts[i] > 0;
+        }
+        return inserted;
+    }
+
+
+
+
+    // Передает все ключи идемпотентности в consumer, не накапливая их в памяти.
+    public void streamIdempotencyKeys(Consumer<String> consumer) {
+        exportJdbcTemplate.query("SELECT idempotency_key FROM file_metadata", new MapSqlParameterSource(),
+                rs -> {
+                    consumer.accept(rs.getString(1));
+                });
+    }
+
+
+
+
+    // Передает все подходящие файлы в consumer по одному, не накапливая результат в памяти.
+    // Для потокового чтения в PostgreSQL вызывать внутри транзакции.
+    public void streamAll(FileStatus status, String contentType, Consumer<FileUploadResponse> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS);
+        appendFilters(sql, params, status, contentType);
+        sql.append(" ORDER BY created_at DESC, id DESC");
+
+        exportJdbcTemplate.query(sql.toString(), params, rs -> {
+            consumer.accept(ROW_MAPPER.mapRow(rs, 0));
+        });
+    }
+
+
+
+
+    // Выполняет смены статуса одним batch. Для каждой возвращает true, если строка обновлена
+    // (false - файла нет или он уже не в ожидаемом статусе).
+    public boolean[] updateStatuses(List<StatusUpdate> updates) {
+        // Точность до микросекунд - как у timestamp в БД, чтобы по updated_at можно было найти строки этого batch
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        SqlParameterSource[] batch = updates.stream()
+                .map(update -> toParameters(update, now))
+                .toArray(SqlParameterSource[]::new);
+
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_STATUS, batch);
+        boolean[] updated = new boolean[counts.length];
+        Set<String> unconfirmed = new HashSet<>();
+        for (int i = 0; i < counts.length; i++) {
+            updated[i] = counts[i] > 0;
+            if (counts[i] == Statement.SUCCESS_NO_INFO) {
+                unconfirmed.add(updates.get(i).fileId());
+            }
+        }
+        if (!unconfirmed.isEmpty()) {
+            confirmUpdates(updates, counts, unconfirmed, now, updated);
+        }
+        return updated;
+    }
+
+
+
+
+    // Драйвер не сообщил количество строк (SUCCESS_NO_INFO): смена считается выполненной, только если
+    // строка обновлена этим batch (updated_at = now) и сейчас в целевом статусе. Иначе условие
+    // WHERE status = :expectedStatus не защищало бы от смены, которой не было.
+    private void confirmUpdates(List<StatusUpdate> updates, int[] counts, Set<String> unconfirmed,
+                                LocalDateTime now, boolean[] updated) {
+        Map<String, String> statuses = new HashMap<>();
+        jdbcTemplate.query("SELECT id, status FROM file_metadata WHERE id IN (:ids) AND updated_at = :now",
+                new MapSqlParameterSource()
+                        .addValue("ids", unconfirmed)
+                        .addValue("now", Timestamp.valueOf(now)),
+                rs -> {
+                    statuses.put(rs.getString("id"), rs.getString("status"));
+                });
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == Statement.SUCCESS_NO_INFO) {
+                StatusUpdate update = updates.get(i);
+                updated[i] = update.status().name().equals(statuses.get(update.fileId()));
+            }
+        }
+    }
+
+
+
+
+    private static SqlParameterSource toInsertParameters(FileMetadata metadata) {
+        return new MapSqlParameterSource()
+                .addValue("id", metadata.getId())
+                .addValue("idempotencyKey", metadata.getIdempotencyKey())
+                .addValue("originalFileName", metadata.getOriginalFileName())
+                .addValue("storedFileName", metadata.getStoredFileName())
+                .addValue("contentType", metadata.getContentType(), Types.VARCHAR)
+                .addValue("fileSize", metadata.getFileSize(), Types.BIGINT)
+                .addValue("bucketName", metadata.getBucketName())
+                .addValue("status", metadata.getStatus().name())
+                .addValue("createdAt", Timestamp.valueOf(metadata.getCreatedAt()))
+                .addValue("updatedAt", Timestamp.valueOf(metadata.getUpdatedAt()));
+    }
+
+
+
+
+    private static SqlParameterSource toParameters(StatusUpdate update, LocalDateTime now) {
+        return new MapSqlParameterSource()
+                .addValue("id", update.fileId())
+                .addValue("status", update.status().name())
+                .addValue("anyStatus", update.expectedStatus() == null, Types.BOOLEAN)
+                .addValue("expectedStatus", update.expectedStatus() != null ? update.expectedStatus().name() : null,
+                        Types.VARCHAR)
+                .addValue("errorMessage", update.errorMessage(), Types.VARCHAR)
+                .addValue("checksum", update.checksum(), Types.VARCHAR)
+                .addValue("storedFileName", update.storedFileName(), Types.VARCHAR)
+                .addValue("contentHash", update.contentHash(), Types.VARCHAR)
+                .addValue("fileSize", update.fileSize(), Types.BIGINT)
+                .addValue("compressionCodec",
+                        update.compressionCodec() != null ? update.compressionCodec().name() : null, Types.VARCHAR)
+                .addValue("storedSize", update.storedSize(), Types.BIGINT)
+                .addValue("completedAt", toTimestamp(update.completedAt()), Types.TIMESTAMP)
+                .addValue("now", Timestamp.valueOf(now), Types.TIMESTAMP);
+    }
+
+
+
+
+    private static void appendFilters(StringBuilder sql, MapSqlParameterSource params,
+                                      FileStatus status, String contentType) {
+        if (status != null) {
+            sql.append(" WHERE status = :status");
+            params.addValue("status", status.name());
+        }
+        if (contentType != null) {
+            sql.append(status != null ? " AND " : " WHERE ");
+            sql.append("content_type = :contentType");
+            params.addValue("contentType", contentType);
+        }
+    }
+
+
+
+
+    private static Timestamp toTimestamp(LocalDateTime dateTime) {
+        return dateTime != null ? Timestamp.valueOf(dateTime) : null;
+    }
+
+
+
+
+    private static CompressionCodec toCompressionCodec(String codec) {
+        return codec != null ? CompressionCodec.valueOf(codec) : null;
+    }
+
+
+
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -3,8 +3,14 @@ package com.example.file_uploader.repository;
 import com.example.file_uploader.entity.FileMetadata;
 import com.example.file_uploader.entity.FileStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,9 +23,37 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadata, Stri
 
     Optional<FileMetadata> findByIdempotencyKey(String idempotencyKey);
 
-    boolean existsByIdempotencyKey(String idempotencyKey);
+    // Записи по списку ключей одним запросом IN (пакетная загрузка).
+    List<FileMetadata> findByIdempotencyKeyIn(Collection<String> idempotencyKeys);
 
     List<FileMetadata> findByStatus(FileStatus status);
 
-    List<FileMetadata> findAllByOrderByCreatedAtDesc();
+    List<FileMetadata> findByStoredFileNameAndStatus(String storedFileName, FileStatus status);
+
+    // Для метрик: число файлов в статусе (по индексу на status).
+    long countByStatus(FileStatus status);
+
+    // Файлы PENDING/UPLOADING, не менявшиеся с deadline, которыми не владеет ни задача очереди,
+    // ни активная сессия возобновляемой загрузки: их загрузка прервана и сама не продолжится.
+    @Query(value = """
+            SELECT * FROM file_metadata f
+            WHERE f.status IN ('PENDING', 'UPLOADING') AND f.updated_at < :deadline
+              AND NOT EXISTS (SELECT 1 FROM upload_job j
+                              WHERE j.file_id = f.id AND j.status IN ('PENDING', 'RUNNING'))
+              AND NOT EXISTS (SELECT 1 FROM upload_session s
+                              WHERE s.file_id = f.id AND s.status = 'ACTIVE')
+            ORDER BY f.updated_at
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<FileMetadata> findAbandoned(@Param("deadline") LocalDateTime deadline, @Param("limit") int limit);
+
+    // Заполняет тип содержимого, если клиент его не указал (тип определило хранилище).
+    @Transactional
+    @Modifying
+    @Query("UPDATE FileMetadata f SET f.contentType = :contentType WHERE f.id = :id AND f.contentType IS NULL")
+    int fillMissingContentType(@Param("id") String id, @Param("contentType") String contentType);
+
+    // Имена объектов из списка, на которые ссылается хотя бы одна запись.
+    @Query("SELECT DISTINCT f.storedFileName FROM FileMetadata f WHERE f.storedFileName IN :names")
+    List<String> findStoredFileNamesIn(@Param("names") Collection<String> names);
 }
@@ -0,0 +1,64 @@
+package com.example.file_uploader.repository;
+
+import com.example.file_uploader.entity.TierObject;
+import com.example.file_uploader.entity.TierObjectState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Репозиторий индекса локального уровня хранилища.
+ * Каждый узел работает только со своими записями (nodeId), поэтому блокировки строк не нужны.
+ */
+@Repository
+public interface TierObjectRepository extends JpaRepository<TierObject, String> {
+
+    List<TierObject> findByNodeId(String nodeId);
+
+    // Есть ли узел, на котором объект пока только на локальном диске.
+    boolean existsByStoredFileNameAndState(String storedFileName, TierObjectState state);
+
+    // До limit объектов узла, ожидающих копирования в MinIO, в порядке времени следующей попытки.
+    @Query(value = """
+            SELECT * FROM tier_object
+            WHERE node_id = :nodeId AND state = 'LOCAL' AND next_attempt_at <= :now
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<TierObject> findDueForWriteBack(@Param("nodeId") String nodeId, @Param("now") LocalDateTime now,
+                                         @Param("limit") int limit);
+
+    // До limit скопированных в MinIO объектов узла - кандидаты на вытеснение, давно скопированные первыми.
+    @Query(value = """
+            SELECT * FROM tier_object
+            WHERE node_id = :nodeId AND state = 'REPLICATED'
+            ORDER BY replicated_at
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<TierObject> findEvictable(@Param("nodeId") String nodeId, @Param("limit") int limit);
+
+    // Откладывает следующую попытку: объекты взяты в копирование и не должны попасть в следующую выборку.
+    @Transactional
+    @Modifying
+    @Query("UPDATE TierObject t SET t.nextAttemptAt = :nextAttemptAt WHERE t.id IN :ids")
+    int postpone(@Param("ids") Collection<String> ids, @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE TierObject t SET t.state = :state, t.replicatedAt = :now, t.lastError = null WHERE t.id = :id")
+    int markReplicated(@Param("id") String id, @Param("state") TierObjectState state, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE TierObject t SET t.attempts = t.attempts + 1, t.lastError = :error, " +
+            "t.nextAttemptAt = :nextAttemptAt WHERE t.id = :id")
+    int recordFailure(@Param("id") String id, @Param("error") String error,
+                      @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+}
@@ -0,0 +1,87 @@
+package com.example.file_uploader.repository;
+
+import com.example.file_uploader.entity.UploadJob;
+import com.example.file_uploader.entity.UploadJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Репозиторий очереди задач загрузки.
+ * Захват задач идет через SELECT ... FOR UPDATE SKIP LOCKED, поэтому
+ * несколько узлов могут разбирать одну очередь, не блокируя друг друга.
+ */
+@Repository
+public interface UploadJobRepository extends JpaRepository<UploadJob, String> {
+
+    // Блокирует до limit готовых к выполнению задач, пропуская уже заблокированные другими узлами.
+    @Query(value = """
+            SELECT * FROM upload_job
+            WHERE status = 'PENDING' AND next_attempt_at <= :now
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<UploadJob> lockNextPending(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // Продлевает аренду задач, которые выполняются на этом узле.
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadJob j SET j.lockedAt = :now " +
+            "WHERE j.id IN :ids AND j.lockedBy = :nodeId AND j.status = :status")
+    int renewLeases(@Param("ids") Collection<String> ids, @Param("nodeId") String nodeId,
+                    @Param("now") LocalDateTime now, @Param("status") UploadJobStatus status);
+
+    // Возвращает в очередь задачи узлов, которые перестали продлевать аренду (упали или перезапустились).
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadJob j SET j.status = :pending, j.lockedBy = null, j.lockedAt = null " +
+            "WHERE j.status = :running AND j.lockedAt < :deadline")
+    int releaseExpiredLeases(@Param("deadline") LocalDateTime deadline,
+                             @Param("running") UploadJobStatus running,
+                             @Param("pending") UploadJobStatus pending);
+
+    // Удаляет успешно выполненную задачу, если она все еще принадлежит этому узлу.
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM UploadJob j WHERE j.id = :id AND j.lockedBy = :nodeId")
+    int deleteOwned(@Param("id") String id, @Param("nodeId") String nodeId);
+
+    // Переводит задачу узла в новый статус с указанием времени следующей попытки.
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadJob j SET j.status = :status, j.nextAttemptAt = :nextAttemptAt, " +
+            "j.lastError = :lastError, j.lockedBy = null, j.lockedAt = null " +
+            "WHERE j.id = :id AND j.lockedBy = :nodeId")
+    int releaseOwned(@Param("id") String id, @Param("nodeId") String nodeId,
+                     @Param("status") UploadJobStatus status,
+                     @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                     @Param("lastError") String lastError);
+
+    // Откладывает задачу узла до nextAttemptAt, не засчитывая попытку: хранилище недоступно,
+    // и неудача не говорит ничего о самом файле.
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadJob j SET j.status = :pending, j.attempts = j.attempts - 1, " +
+            "j.nextAttemptAt = :nextAttemptAt, j.lastError = :lastError, j.lockedBy = null, j.lockedAt = null " +
+            "WHERE j.id = :id AND j.lockedBy = :nodeId")
+    int deferOwned(@Param("id") String id, @Param("nodeId") String nodeId,
+                   @Param("pending") UploadJobStatus pending,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("lastError") String lastError);
+
+    // Пути staging-файлов из списка, которые еще нужны задачам в указанных статусах.
+    @Query("SELECT j.tempFilePath FROM UploadJob j WHERE j.tempFilePath IN :paths AND j.status IN :statuses")
+    List<String> findTempFilePathsIn(@Param("paths") Collection<String> paths,
+                                     @Param("statuses") Collection<UploadJobStatus> statuses);
+
+    // Глубина очереди для контроля допуска новых загрузок.
+    long countByStatus(UploadJobStatus status);
+}
@@ -0,0 +1,17 @@
+package com.example.file_uploader.repository;
+
+import com.example.file_uploader.entity.UploadSessionPart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface UploadSessionPartRepository extends JpaRepository<UploadSessionPart, String> {
+
+    List<UploadSessionPart> findBySessionIdOrderByPartNumber(String sessionId);
+
+    @Transactional
+    void deleteBySessionId(String sessionId);
+}
@@ -0,0 +1,26 @@
+package com.example.file_uploader.repository;
+
+import com.example.file_uploader.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    Optional<UploadSession> findByIdempotencyKey(String idempotencyKey);
+
+    // Активные сессии, в которые не приходили части с deadline.
+    @Query(value = """
+            SELECT * FROM upload_session
+            WHERE status = 'ACTIVE' AND updated_at < :deadline
+            ORDER BY updated_at
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<UploadSession> findExpired(@Param("deadline") LocalDateTime deadline, @Param("limit") int limit);
+}
@@ -0,0 +1,393 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.dto.BatchUploadItem;
+import com.example.file_uploader.dto.BatchUploadResponse;
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.exception.ArchiveLimitExceededException;
+import com.example.file_uploader.exception.StorageUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Распаковка архива (ZIP, TAR, TAR.GZ) из тела запроса: каждый элемент становится отдельным файлом.
+ *
+ * Архив читается потоком, элемент за элементом, и на диск не пишется.
+ * - Элементы не больше buffer-threshold читаются в память и загружаются в MinIO параллельно
+ *   на пуле archiveEntryExecutor; одновременно загружается не больше parallelism элементов на узел,
+ *   поэтому в памяти не больше parallelism * buffer-threshold байт.
+ * - Большие элементы передаются в MinIO прямо из потока архива, по одному
+ *   (следующий элемент нельзя прочитать, пока не дочитан текущий).
+ *
+ * Ключ идемпотентности элемента - ключ архива + "/" + путь элемента в архиве: повторная отправка
+ * того же архива возвращает уже загруженные элементы (EXISTING) и догружает остальные.
+ *
+ * Защита от zip-бомб: лимиты на число элементов, суммарный распакованный объем и отношение
+ * распакованного объема к прочитанному сжатому. Лимиты проверяются во время чтения, до того
+ * как распакованные данные попадут в память или в MinIO. При превышении новые элементы не
+ * читаются, уже загруженные остаются, клиент получает 413.
+ */
+@Service
+@Slf4j
+public class ArchiveExtractionService {
+
+    // Отношение сжатия проверяется после этого объема: маленькие архивы из однотипных данных сжимаются сильно.
+    private static final long RATIO_CHECK_MIN_BYTES = DataSize.ofMegabytes(1).toBytes();
+
+    // Ограничение длины ключа идемпотентности и имени файла (столбцы file_metadata).
+    private static final int MAX_NAME_LENGTH = 255;
+
+    public enum Format {
+        ZIP, TAR, TAR_GZ;
+
+        // Формат по имени файла архива, затем по Content-Type тела запроса.
+        public static Optional<Format> detect(String fileName, String contentType) {
+            String name = fileName != null ? fileName.toLowerCase(Locale.ROOT) : "";
+            if (name.endsWith(".zip")) {
+                return Optional.of(ZIP);
+            }
+            if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+                return Optional.of(TAR_GZ);
+            }
+            if (name.endsWith(".tar")) {
+                return Optional.of(TAR);
+            }
+            String type = contentType != null ? contentType.toLowerCase(Locale.ROOT) : "";
+            if (type.startsWith("application/zip") || type.startsWith("application/x-zip-compressed")) {
+                return Optional.of(ZIP);
+            }
+            if (type.startsWith("application/x-tar")) {
+                return Optional.of(TAR);
+            }
+            if (type.startsWith("application/gzip") || type.startsWith("application/x-gzip")) {
+                return Optional.of(TAR_GZ);
+            }
+            return Optional.empty();
+        }
+    }
+
+    private final FileUploadService fileUploadService;
+    private final IdempotencyService idempotencyService;
+    private final Executor archiveEntryExecutor;
+    private final Semaphore entrySlots;
+    private final int bufferThreshold;
+    private final int maxEntries;
+    private final long maxExpandedSize;
+    private final double maxCompressionRatio;
+
+    public ArchiveExtractionService(FileUploadService fileUploadService,
+                                    IdempotencyService idempotencyService,
+                                    @Qualifier("archiveEntryExecutor") Executor archiveEntryExecutor,
+                                    @Value("${upload.archive.parallelism:4}") int parallelism,
+                                    @Value("${upload.archive.buffer-threshold:8MB}") DataSize bufferThreshold,
+                                    @Value("${upload.archive.max-entries:10000}") int maxEntries,
+                                    @Value("${upload.archive.max-expanded-size:10GB}") DataSize maxExpandedSize,
+                                    @Value("${upload.archive.max-compression-ratio:100}") double maxCompressionRatio) {
+        this.fileUploadService = fileUploadService;
+        this.idempotencyService = idempotencyService;
+        this.archiveEntryExecutor = archiveEntryExecutor;
+        this.entrySlots = new Semaphore(parallelism);
+        this.bufferThreshold = Math.toIntExact(bufferThreshold.toBytes());
+        this.maxEntries = maxEntries;
+        this.maxExpandedSize = maxExpandedSize.toBytes();
+        this.maxCompressionRatio = maxCompressionRatio;
+    }
+
+    // Распаковывает архив из body и загружает элементы. Возвращает результат по каждому элементу-файлу
+    // в порядке их следования в архиве; каталоги и ссылки пропускаются.
+    public BatchUploadResponse extract(InputStream body, Format format, String archiveName,
+                                       String idempotencyKey) throws IOException, InterruptedException {
+        log.info("Распаковка архива '{}' ({}), idempotencyKey: '{}'", archiveName, format, idempotencyKey);
+
+        CountingInputStream compressed = new CountingInputStream(body);
+        Limits limits = new Limits(compressed);
+        // Результаты параллельных загрузок записываются из потоков пула
+        List<BatchUploadItem> items = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        try (ArchiveInputStream<?> archive = open(format, compressed)) {
+            ArchiveEntry entry;
+            int entries = 0;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (++entries > maxEntries) {
+                    throw new ArchiveLimitExceededException("В архиве больше " + maxEntries + " элементов");
+                }
+                if (!isRegularFile(entry)) {
+                    continue;
+                }
+                collectCompleted(pending);
+
+                int index = items.size();
+                String key = idempotencyKey + "/" + entry.getName();
+                items.add(null);
+                if (key.length() > MAX_NAME_LENGTH) {
+                    items.set(index, rejected(index, key, "Слишком длинный путь элемента в архиве"));
+                    continue;
+                }
+                if (!archive.canReadEntryData(entry)) {
+                    items.set(index, rejected(index, key, "Метод сжатия или шифрование элемента не поддерживается"));
+                    continue;
+                }
+                Optional<FileMetadata> existing = idempotencyService.findExisting(key);
+                if (existing.isPresent()) {
+                    items.set(index, FileUploadService.batchItem(index, existing.get(), BatchUploadItem.Outcome.EXISTING,
+                            "Файл уже был обработан ранее (идемпотентный запрос)"));
+                    continue;
+                }
+
+                InputStream data = new EntryInputStream(archive, limits);
+                long size = entry.getSize();
+                String contentType = MediaTypeFactory.getMediaType(entry.getName())
+                        .orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+                if (size >= 0 && size <= bufferThreshold) {
+                    pending.add(uploadBuffered(items, index, key, entry.getName(), contentType, data.readNBytes((int) size)));
+                    continue;
+                }
+                if (size < 0) {
+                    // Размер неизвестен (ZIP с data descriptor): небольшой элемент помещается в буфер целиком
+                    byte[] head = data.readNBytes(bufferThreshold + 1);
+                    if (head.length <= bufferThreshold) {
+                        pending.add(uploadBuffered(items, index, key, entry.getName(), contentType, head));
+                        continue;
+                    }
+                    data = new SequenceInputStream(new ByteArrayInputStream(head), data);
+                }
+                items.set(index, upload(index, key, entry.getName(), contentType, data, size));
+                limits.throwIfExceeded();
+            }
+        } finally {
+            // Элементы, уже отправленные в MinIO, догружаются и при ошибке чтения архива
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+                    .exceptionally(e -> null)
+                    .join();
+        }
+        collectCompleted(pending);
+
+        BatchUploadResponse response = BatchUploadResponse.of(new ArrayList<>(items));
+        log.info("Архив '{}' распакован: {} байт сжатых, {} байт распакованных; загружено {}, уже загружены {}, "
+                        + "отклонено {}, ошибок {}", archiveName, compressed.getBytesRead(), limits.expanded,
+                response.getAccepted(), response.getExisting(), response.getRejected(), response.getFailed());
+        return response;
+    }
+
+
+
+
+    // Загружает элемент из буфера в памяти на пуле archiveEntryExecutor, ожидая свободный слот.
+    private CompletableFuture<Void> uploadBuffered(List<BatchUploadItem> items, int index, String key, String name,
+                                                   String contentType, byte[] content) throws InterruptedException {
+        entrySlots.acquire();
+        try {
+            return CompletableFuture
+                    .runAsync(() -> {
+                        items.set(index, upload(index, key, name, contentType,
+                                new ByteArrayInputStream(content), content.length));
+                    }, archiveEntryExecutor)
+                    .whenComplete((result, error) -> entrySlots.release());
+        } catch (RuntimeException e) {
+            entrySlots.release();
+            throw e;
+        }
+    }
+
+
+
+
+    // Загружает один элемент потоком. Ошибка загрузки элемента не прерывает распаковку остальных,
+    // кроме превышения лимитов архива и недоступности хранилища.
+    private BatchUploadItem upload(int index, String key, String name, String contentType,
+                                   InputStream data, long size) {
+        try {
+            // Исход - по тому, кто создал запись: повторно присланный архив может застать
+            // уже загруженный файл, и это EXISTING, а не ACCEPTED
+            FileUploadService.StreamedFile stored = fileUploadService.uploadStreamingIfAbsent(
+                    data, size, name, contentType, key);
+            return BatchUploadItem.builder()
+                    .index(index)
+                    .idempotencyKey(key)
+                    .outcome(stored.created() ? BatchUploadItem.Outcome.ACCEPTED : BatchUploadItem.Outcome.EXISTING)
+                    .file(stored.file())
+                    .build();
+        } catch (StorageUnavailableException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            ArchiveLimitExceededException limit = findCause(e, ArchiveLimitExceededException.class);
+            if (limit != null) {
+                throw limit;
+            }
+            log.warn("Элемент архива '{}' не загружен: {}", name, e.getMessage());
+            return BatchUploadItem.builder()
+                    .index(index)
+                    .idempotencyKey(key)
+                    .outcome(BatchUploadItem.Outcome.FAILED)
+                    .error(e.getCause() != null ? e.getCause().getMessage() : e.getMessage())
+                    .build();
+        }
+    }
+
+
+
+
+    // Убирает из pending завершенные загрузки. Загрузка, прерванная исключением (хранилище недоступно),
+    // прерывает и распаковку.
+    private static void collectCompleted(List<CompletableFuture<Void>> pending) {
+        Iterator<CompletableFuture<Void>> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            CompletableFuture<Void> upload = iterator.next();
+            if (!upload.isDone()) {
+                continue;
+            }
+            iterator.remove();
+            try {
+                upload.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+
+
+
+    private static ArchiveInputStream<?> open(Format format, InputStream in) throws IOException {
+        return switch (format) {
+            case ZIP -> new ZipArchiveInputStream(in, StandardCharsets.UTF_8.name(), true, true);
+            case TAR -> new TarArchiveInputStream(in);
+            case TAR_GZ -> new TarArchiveInputStream(new GZIPInputStream(in));
+        };
+    }
+
+
+
+
+    // Каталоги, символические и жесткие ссылки, устройства не загружаются.
+    private static boolean isRegularFile(ArchiveEntry entry) {
+        if (entry.isDirectory()) {
+            return false;
+        }
+        if (entry instanceof TarArchiveEntry tarEntry) {
+            return tarEntry.isFile() && !tarEntry.isSymbolicLink() && !tarEntry.isLink();
+        }
+        if (entry instanceof ZipArchiveEntry zipEntry) {
+            return !zipEntry.isUnixSymlink();
+        }
+        return true;
+    }
+
+
+
+
+    private static BatchUploadItem rejected(int index, String key, String error) {
+        return BatchUploadItem.builder()
+                .index(index)
+                .idempotencyKey(key)
+                .outcome(BatchUploadItem.Outcome.REJECTED)
+                .error(error)
+                .build();
+    }
+
+
+
+
+    private static <T extends Throwable> T findCause(Throwable error, Class<T> type) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return type.cast(cause);
+            }
+        }
+        return null;
+    }
+
+
+
+
+    // Счетчик распакованных байт архива и проверка лимитов по мере чтения.
+    private final class Limits {
+
+        private final CountingInputStream compressed;
+        private long expanded;
+        private volatile ArchiveLimitExceededException exceeded;
+
+        private Limits(CountingInputStream compressed) {
+            this.compressed = compressed;
+        }
+
+        private void onExpanded(long count) {
+            expanded += count;
+            if (expanded > maxExpandedSize) {
+                exceed(String.format("Распакованный объем архива больше %d байт", maxExpandedSize));
+            }
+            long compressedBytes = compressed.getBytesRead();
+            if (expanded > RATIO_CHECK_MIN_BYTES && expanded > compressedBytes * maxCompressionRatio) {
+                exceed(String.format("Степень сжатия архива больше %.0f:1 (%d байт из %d)",
+                        maxCompressionRatio, expanded, compressedBytes));
+            }
+        }
+
+        private void exceed(String message) {
+            exceeded = new ArchiveLimitExceededException(message);
+            throw exceeded;
+        }
+
+        // Лимит мог сработать внутри загрузки элемента, где исключение завернуто или перехвачено клиентом MinIO.
+        private void throwIfExceeded() {
+            if (exceeded != null) {
+                throw exceeded;
+            }
+        }
+    }
+
+
+
+
+    // Данные текущего элемента: считает распакованные байты и не закрывает поток архива.
+    private static final class EntryInputStream extends CountingInputStream {
+
+        private final Limits limits;
+
+        private EntryInputStream(InputStream archive, Limits limits) {
+            super(archive);
+            this.limits = limits;
+        }
+
+        @Override
+        protected void onBytesRead(long count) {
+            super.onBytesRead(count);
+            limits.onExpanded(count);
+        }
+
+        @Override
+        public void close() {
+            // Поток архива закрывается после последнего элемента
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.file_uploader.service;
+
+import io.minio.BucketExistsArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioClient;
+import io.minio.errors.ErrorResponseException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш существования bucket'ов в MinIO.
+ *
+ * Проверка bucketExists (и создание bucket'а при необходимости) выполняется один раз
+ * на bucket за время жизни процесса, а не перед каждой загрузкой. Если хранилище
+ * ответило NoSuchBucket (bucket удалили снаружи), запись сбрасывается через invalidate,
+ * и при следующем обращении bucket проверяется и создается заново.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BucketRegistry {
+
+    private final MinioClient minioClient;
+
+    private final Set<String> knownBuckets = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, ReentrantLock> bucketLocks = new ConcurrentHashMap<>();
+
+    @Value("${minio.bucket-name}")
+    private String defaultBucket;
+
+    // Проверяет bucket по умолчанию при старте, чтобы первая загрузка не платила за проверку.
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            ensureExists(defaultBucket);
+        } catch (Exception e) {
+            log.warn("Не удалось инициализировать bucket при старте: {}. " +
+                    "Bucket будет создан при первой загрузке файла.", e.getMessage());
+        }
+    }
+
+
+
+
+    // Гарантирует, что bucket существует. После первой успешной проверки обращений к MinIO нет.
+    public void ensureExists(String bucketName) throws Exception {
+        if (knownBuckets.contains(bucketName)) {
+            return;
+        }
+
+        // Параллельные загрузки в новый bucket ждут одну проверку, а не делают каждая свою.
+        // ReentrantLock, а не synchronized: виртуальный поток не должен блокировать
+        // поток-носитель на время сетевого запроса
+        ReentrantLock lock = bucketLocks.computeIfAbsent(bucketName, name -> new ReentrantLock());
+        lock.lock();
+        try {
+            if (knownBuckets.contains(bucketName)) {
+                return;
+            }
+
+            boolean exists = minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build());
+            if (!exists) {
+                log.info("Bucket '{}' не существует, создаем...", bucketName);
+                try {
+                    minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+                    log.info("Bucket '{}' успешно создан", bucketName);
+                } catch (ErrorResponseException e) {
+                    // Bucket мог создать другой узел между проверкой и созданием
+                    if (!"BucketAlreadyOwnedByYou".equals(e.errorResponse().code())) {
+                        throw e;
+                    }
+                }
+            } else {
+                log.info("Bucket '{}' уже существует", bucketName);
+            }
+            knownBuckets.add(bucketName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+
+
+    // Сбрасывает закэшированное состояние bucket'а.
+    public void invalidate(String bucketName) {
+        if (knownBuckets.remove(bucketName)) {
+            log.warn("Bucket '{}' не найден в хранилище, кэш сброшен", bucketName);
+        }
+    }
+
+
+
+
+    // Возвращает true, если ошибка означает, что bucket'а нет в хранилище.
+    public static boolean isNoSuchBucket(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof ErrorResponseException response
+                    && "NoSuchBucket".equals(response.errorResponse().code())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
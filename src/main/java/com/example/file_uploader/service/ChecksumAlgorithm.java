@@ -0,0 +1,28 @@
+package com.example.file_uploader.service;
+
+/**
+ * Алгоритмы контрольной суммы, вычисляемой при загрузке файла.
+ *
+ * MD5 - совпадает с ETag MinIO для объектов, загруженных одной частью
+ * SHA256 - криптостойкий хэш
+ * CRC32C - самый быстрый, аппаратно ускоряется на x86/ARM
+ */
+public enum ChecksumAlgorithm {
+    MD5("MD5"),
+    SHA256("SHA-256"),
+    CRC32C(null);
+
+    private final String digestName;
+
+    ChecksumAlgorithm(String digestName) {
+        this.digestName = digestName;
+    }
+
+    String getDigestName() {
+        return digestName;
+    }
+
+    public Checksummer newChecksummer() {
+        return new Checksummer(this);
+    }
+}
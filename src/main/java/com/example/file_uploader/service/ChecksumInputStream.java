@@ -0,0 +1,65 @@
+package com.example.file_uploader.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Поток, вычисляющий контрольную сумму на лету, пока байты идут в хранилище.
+ * Аналог DigestInputStream, но с поддержкой CRC32C и подсчетом прочитанных байт,
+ * поэтому файл не приходится читать отдельным проходом ради checksum.
+ */
+public class ChecksumInputStream extends CountingInputStream {
+
+    private final Checksummer checksummer;
+    private String checksum;
+
+    public ChecksumInputStream(InputStream in, Checksummer checksummer) {
+        super(in);
+        this.checksummer = checksummer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            checksummer.update(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            checksummer.update(b, off, n);
+        }
+        return n;
+    }
+
+    // Пропущенные байты тоже должны попасть в контрольную сумму, поэтому читаем их.
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    // Финализирует контрольную сумму. Вызывается после того, как поток прочитан до конца.
+    public String getChecksum() {
+        if (checksum == null) {
+            checksum = checksummer.finish();
+        }
+        return checksum;
+    }
+
+    public ChecksumAlgorithm getAlgorithm() {
+        return checksummer.getAlgorithm();
+    }
+}
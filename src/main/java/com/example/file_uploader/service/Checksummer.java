@@ -0,0 +1,67 @@
+package com.example.file_uploader.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+// Инкрементальное вычисление контрольной суммы выбранным алгоритмом.
+public final class Checksummer {
+
+    private final ChecksumAlgorithm algorithm;
+    private final MessageDigest digest;
+    private final CRC32C crc;
+
+    Checksummer(ChecksumAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        if (algorithm.getDigestName() != null) {
+            try {
+                this.digest = MessageDigest.getInstance(algorithm.getDigestName());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Алгоритм не поддерживается JVM: " + algorithm, e);
+            }
+            this.crc = null;
+        } else {
+            this.digest = null;
+            this.crc = new CRC32C();
+        }
+    }
+
+    public ChecksumAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public void update(byte[] buffer, int offset, int length) {
+        if (digest != null) {
+            digest.update(buffer, offset, length);
+        } else {
+            crc.update(buffer, offset, length);
+        }
+    }
+
+    public void update(int b) {
+        if (digest != null) {
+            digest.update((byte) b);
+        } else {
+            crc.update(b);
+        }
+    }
+
+    // Возвращает значение в hex и сбрасывает состояние.
+    public String finish() {
+        if (digest != null) {
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        String value = String.format("%08x", crc.getValue());
+        crc.reset();
+        return value;
+    }
+
+    public void reset() {
+        if (digest != null) {
+            digest.reset();
+        } else {
+            crc.reset();
+        }
+    }
+}
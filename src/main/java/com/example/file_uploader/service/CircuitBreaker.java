@@ -0,0 +1,95 @@
+package com.example.file_uploader.service;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker для обращений к хранилищу.
+ *
+ * CLOSED - вызовы проходят; после failure-threshold неудач подряд переходит в OPEN.
+ * OPEN - вызовы отклоняются сразу, без обращения к хранилищу, в течение open-duration.
+ * HALF_OPEN - пропускается один пробный вызов: успех замыкает цепь, неудача снова размыкает.
+ *   Пробным вызовом должна быть короткая операция (см. ResilientStorageService.probe), иначе
+ *   все остальные вызовы отклоняются, пока идет, например, многочасовая передача.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+    }
+
+    // Разрешение на вызов. Получивший разрешение обязан сообщить исход: onSuccess, onFailure или onIgnored.
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+            state = State.HALF_OPEN;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> {
+                if (probeInFlight) {
+                    yield false;
+                }
+                probeInFlight = true;
+                yield true;
+            }
+            case OPEN -> false;
+        };
+    }
+
+    // Разрешение без права на пробный вызов: только при замкнутой цепи.
+    // Получивший разрешение так же обязан сообщить исход.
+    public synchronized boolean tryAcquireClosed() {
+        return getState() == State.CLOSED;
+    }
+
+    // Хранилище ответило (в том числе ошибкой вроде NoSuchKey).
+    public synchronized void onSuccess() {
+        probeInFlight = false;
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    // Хранилище не ответило или ответило временной ошибкой.
+    public synchronized void onFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    // Вызов завершился без обращения к хранилищу (например, не получен слот DownstreamLimiter).
+    public synchronized void onIgnored() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    // Через сколько цепь будет готова к пробному вызову.
+    public synchronized Duration retryAfter() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(Math.max(0, openDurationNanos - (System.nanoTime() - openedAt)));
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.CompressionCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Сжатие объектов при записи в хранилище и распаковка при чтении.
+ *
+ * Сжимаются только файлы подходящих типов (текст, JSON, CSV, XML...) и только если
+ * пробное сжатие первого блока дает выигрыш: уже сжатые данные (архивы, медиа, зашифрованные
+ * файлы с текстовым Content-Type) передаются как есть. Сжатие и распаковка идут потоком,
+ * в памяти только буферы Deflater/Inflater.
+ *
+ * Контрольная сумма файла считается по исходным байтам, размер файла - исходный;
+ * кодек и размер объекта в хранилище сохраняются в FileMetadata.
+ */
+@Component
+@Slf4j
+public class CompressionStage {
+
+    private static final int DECOMPRESS_BUFFER_SIZE = 64 * 1024;
+
+    private final boolean enabled;
+    private final List<MediaType> contentTypes;
+    private final long minSize;
+    private final int sampleSize;
+    private final double maxSampleRatio;
+    private final int level;
+
+    public CompressionStage(@Value("${storage.compression.enabled:false}") boolean enabled,
+                            @Value("${storage.compression.content-types:text/*,application/json,application/x-ndjson,"
+                                    + "application/xml,application/csv,application/javascript,application/x-yaml}")
+                            List<String> contentTypes,
+                            @Value("${storage.compression.min-size:4KB}") DataSize minSize,
+                            @Value("${storage.compression.sample-size:64KB}") DataSize sampleSize,
+                            @Value("${storage.compression.max-sample-ratio:0.8}") double maxSampleRatio,
+                            @Value("${storage.compression.level:6}") int level) {
+        this.enabled = enabled;
+        this.contentTypes = contentTypes.stream().map(String::trim).map(MediaType::parseMediaType).toList();
+        this.minSize = minSize.toBytes();
+        this.sampleSize = Math.toIntExact(sampleSize.toBytes());
+        this.maxSampleRatio = maxSampleRatio;
+        this.level = level;
+    }
+
+    // Сколько байт с начала файла нужно для решения о сжатии (0 - сжатие выключено).
+    public int sampleSize() {
+        return enabled ? sampleSize : 0;
+    }
+
+
+
+
+    // Выбирает кодек для файла по типу содержимого, размеру (-1 - неизвестен) и первому блоку sample.
+    // Пусто - файл хранится без сжатия.
+    public Optional<CompressionCodec> select(String contentType, long size, byte[] sample) {
+        if (!enabled || contentType == null || sample.length == 0 || !isCompressible(contentType)) {
+            return Optional.empty();
+        }
+        // Маленький файл (размер неизвестен - весь файл поместился в пробный блок) не стоит сжимать
+        long knownSize = size >= 0 ? size : sample.length < sampleSize ? sample.length : Long.MAX_VALUE;
+        if (knownSize < minSize) {
+            return Optional.empty();
+        }
+
+        double ratio = (double) deflatedSize(sample) / sample.length;
+        if (ratio > maxSampleRatio) {
+            log.debug("Сжатие пропущено: пробный блок ({}) сжимается до {}%", contentType, Math.round(ratio * 100));
+            return Optional.empty();
+        }
+        return Optional.of(CompressionCodec.GZIP);
+    }
+
+
+
+
+    // Поток сжатых данных для записи в хранилище.
+    public InputStream compress(CompressionCodec codec, InputStream raw) {
+        return switch (codec) {
+            case GZIP -> new GzipCompressingInputStream(raw, level);
+        };
+    }
+
+
+
+
+    // Поток исходных данных из объекта хранилища (codec = null - объект не сжат).
+    public InputStream decompress(CompressionCodec codec, InputStream stored) throws IOException {
+        if (codec == null) {
+            return stored;
+        }
+        return switch (codec) {
+            case GZIP -> new GZIPInputStream(stored, DECOMPRESS_BUFFER_SIZE);
+        };
+    }
+
+
+
+
+    private boolean isCompressible(String contentType) {
+        try {
+            MediaType type = MediaType.parseMediaType(contentType);
+            return contentTypes.stream().anyMatch(candidate -> candidate.includes(type));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+
+
+
+    // Размер блока после быстрого сжатия: оценка того, насколько сожмется весь файл.
+    private static long deflatedSize(byte[] sample) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                deflater.deflate(buffer);
+            }
+            return deflater.getBytesWritten();
+        } finally {
+            deflater.end();
+        }
+    }
+}
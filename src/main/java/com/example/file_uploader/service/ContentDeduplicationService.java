@@ -0,0 +1,145 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.ContentObject;
+import com.example.file_uploader.repository.ContentObjectRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Дедупликация по содержимому (content-addressed storage).
+ *
+ * Объекты хранятся под ключом cas/<sha256>, на каждый объект ведется счетчик ссылок
+ * в таблице content_object. Если такое содержимое уже загружено, putObject пропускается,
+ * а счетчик увеличивается. Объекты без ссылок удаляет сборщик мусора.
+ *
+ * Чтобы узнать хэш до загрузки, staging-файл читается один раз локально
+ * (вместе с основной контрольной суммой); для дубликатов это заменяет передачу файла по сети.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContentDeduplicationService {
+
+    private static final String KEY_PREFIX = "cas/";
+    private static final int MAX_REGISTER_ATTEMPTS = 3;
+
+    private final ContentObjectRepository contentObjectRepository;
+    private final StorageService storageService;
+    private final TransactionTemplate transactionTemplate;
+    private final UploadMetrics uploadMetrics;
+
+    @Value("${storage.dedup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.dedup.gc-grace-period-ms:300000}")
+    private long gcGracePeriodMs;
+
+    @Value("${storage.dedup.gc-batch-size:100}")
+    private int gcBatchSize;
+
+    // Результат сохранения: имя объекта в MinIO, хэш содержимого и контрольная сумма файла.
+    public record StoredContent(String storedFileName, String contentHash, String checksum) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+
+
+    // Сохраняет файл, переиспользуя уже загруженный объект с тем же содержимым.
+    // progress (может быть null) получает переданные в хранилище байты; для дубликата передачи нет.
+    public StoredContent store(Path source, long size, String contentType, Checksummer checksummer,
+                               LongConsumer progress) throws Exception {
+        Checksummer sha256 = ChecksumAlgorithm.SHA256.newChecksummer();
+        String hash = uploadMetrics.time(UploadMetrics.Stage.CHECKSUM, () -> {
+            try (InputStream in = Files.newInputStream(source)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    sha256.update(buffer, 0, read);
+                    checksummer.update(buffer, 0, read);
+                }
+            }
+            return sha256.finish();
+        });
+        String checksum = checksummer.finish();
+        String storedFileName = KEY_PREFIX + hash;
+
+        if (contentObjectRepository.acquire(hash, LocalDateTime.now()) == 1) {
+            log.info("ДЕДУПЛИКАЦИЯ: содержимое {} уже хранится, загрузка пропущена", hash);
+            return new StoredContent(storedFileName, hash, checksum);
+        }
+
+        long start = System.nanoTime();
+        uploadMetrics.time(UploadMetrics.Stage.STORAGE_PUT, () ->
+                storageService.uploadFile(source, size, contentType, storedFileName, null, progress));
+        uploadMetrics.recordTransfer(UploadMetrics.UploadPath.STAGED, size, System.nanoTime() - start);
+
+        // Объект мог быть зарегистрирован параллельной загрузкой того же содержимого
+        // или удален сборщиком мусора между проверками - повторяем, пока не получим ссылку.
+        for (int attempt = 0; attempt < MAX_REGISTER_ATTEMPTS; attempt++) {
+            LocalDateTime now = LocalDateTime.now();
+            if (contentObjectRepository.insertIfAbsent(hash, storedFileName, size, now) == 1
+                    || contentObjectRepository.acquire(hash, now) == 1) {
+                log.info("Содержимое {} загружено как '{}'", hash, storedFileName);
+                return new StoredContent(storedFileName, hash, checksum);
+            }
+        }
+        throw new IllegalStateException("Не удалось зарегистрировать объект " + hash);
+    }
+
+
+
+
+    // Убирает ссылку на объект при удалении файла.
+    public void release(String contentHash) {
+        contentObjectRepository.release(contentHash, LocalDateTime.now());
+        log.info("Ссылка на содержимое {} удалена", contentHash);
+    }
+
+
+
+
+    // Удаляет из MinIO объекты, на которые не осталось ссылок.
+    // Строки блокируются на время удаления, поэтому параллельная загрузка того же содержимого
+    // дождется окончания сборки и загрузит объект заново, а не сошлется на удаляемый.
+    @Scheduled(fixedDelayString = "${storage.dedup.gc-interval-ms:60000}")
+    public void collectGarbage() {
+        if (!enabled) {
+            return;
+        }
+
+        Integer collected = transactionTemplate.execute(status -> {
+            LocalDateTime deadline = LocalDateTime.now().minusNanos(gcGracePeriodMs * 1_000_000);
+            List<ContentObject> unreferenced = contentObjectRepository.lockUnreferenced(deadline, gcBatchSize);
+            int count = 0;
+            for (ContentObject object : unreferenced) {
+                try {
+                    storageService.deleteFile(object.getStoredFileName());
+                    contentObjectRepository.delete(object);
+                    count++;
+                } catch (Exception e) {
+                    log.error("Не удалось удалить объект '{}': {}", object.getStoredFileName(), e.getMessage());
+                }
+            }
+            return count;
+        });
+
+        if (collected != null && collected > 0) {
+            log.info("Сборщик мусора удалил объектов без ссылок: {}", collected);
+        }
+    }
+}
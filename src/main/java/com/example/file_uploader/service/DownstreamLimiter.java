@@ -0,0 +1,96 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.exception.DownstreamBusyException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ограничение числа одновременных обращений к зависимостям (MinIO).
+ *
+ * С виртуальными потоками количество потоков больше не ограничивает нагрузку,
+ * поэтому параллелизм ограничивается там, где он действительно конечен, - на стороне
+ * зависимостей. Слот берется на один запрос к зависимости, а не на всю операцию.
+ * Поток, не получивший слот за acquire-timeout-ms, получает DownstreamBusyException (503),
+ * а не висит бесконечно.
+ *
+ * БД здесь не ограничивается: эту роль играет пул Hikari
+ * (spring.datasource.hikari.maximum-pool-size и connection-timeout).
+ */
+@Component
+@Slf4j
+public class DownstreamLimiter {
+
+    public enum Downstream {
+        MINIO
+    }
+
+    private final Map<Downstream, Semaphore> semaphores = new EnumMap<>(Downstream.class);
+    private final long acquireTimeoutMs;
+
+    public DownstreamLimiter(@Value("${downstream-limits.minio.max-concurrent:64}") int minioMaxConcurrent,
+                             @Value("${downstream-limits.acquire-timeout-ms:30000}") long acquireTimeoutMs) {
+        semaphores.put(Downstream.MINIO, new Semaphore(minioMaxConcurrent, true));
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        log.info("Лимиты зависимостей: MinIO={}", minioMaxConcurrent);
+    }
+
+    // Слот обращения к зависимости. Освобождается при close(), повторный close() ничего не делает.
+    public static final class Permit implements AutoCloseable {
+
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+    }
+
+
+
+
+    // Ждет свободный слот не дольше acquire-timeout-ms.
+    public Permit acquire(Downstream downstream) {
+        Semaphore semaphore = semaphores.get(downstream);
+        try {
+            if (!semaphore.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new DownstreamBusyException(downstream + " перегружен, повторите запрос позже");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownstreamBusyException("Ожидание слота " + downstream + " прервано");
+        }
+        return new Permit(semaphore);
+    }
+
+
+
+
+    public <T> T call(Downstream downstream, Callable<T> action) throws Exception {
+        try (Permit permit = acquire(downstream)) {
+            return action.call();
+        }
+    }
+
+
+
+
+    // Количество свободных слотов (для мониторинга).
+    public int availablePermits(Downstream downstream) {
+        return semaphores.get(downstream).availablePermits();
+    }
+}
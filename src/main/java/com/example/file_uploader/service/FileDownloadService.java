@@ -0,0 +1,133 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.CompressionCodec;
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.exception.UploadConflictException;
+import com.example.file_uploader.repository.FileMetadataRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Сервис для чтения загруженных файлов.
+ *
+ * Содержимое (целиком или диапазон байт) читается из локального кэша популярных объектов,
+ * а при промахе - потоком из MinIO, без буферизации всего файла в памяти.
+ * Сжатый объект распаковывается на лету; диапазон байт в нем отсчитывается от начала
+ * распакованного содержимого, поэтому объект читается с начала. Сжатые объекты не кэшируются.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FileDownloadService {
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final StorageService storageService;
+    private final LocalObjectCache localObjectCache;
+    private final CompressionStage compressionStage;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // Описание файла, доступного для скачивания.
+    // compressionCodec - кодек объекта в хранилище (null - хранится как есть).
+    public record DownloadTarget(String storedFileName, String originalFileName, String contentType,
+                                 long size, String etag, CompressionCodec compressionCodec) {
+    }
+
+    // Находит файл для скачивания. Скачать можно только полностью загруженный файл.
+    public Optional<DownloadTarget> findDownloadTarget(String id) {
+        return fileMetadataRepository.findById(id).map(this::toDownloadTarget);
+    }
+
+
+
+
+    // Путь к закэшированной копии объекта, если она есть (для отдачи через sendfile).
+    public Optional<Path> findCachedFile(DownloadTarget target) {
+        // Кэш хранит объект как есть, а sendfile отдает его без распаковки
+        if (target.compressionCodec() != null) {
+            return Optional.empty();
+        }
+        return localObjectCache.get(target.storedFileName(), target.size());
+    }
+
+
+
+
+    // Пишет в out length байт объекта начиная с offset - из закэшированной копии, если она есть.
+    public void writeContent(DownloadTarget target, Optional<Path> cachedFile, long offset, long length,
+                             OutputStream out) throws Exception {
+        if (cachedFile.isPresent()) {
+            transferFromFile(cachedFile.get(), offset, length, out);
+            return;
+        }
+
+        if (target.compressionCodec() != null) {
+            try (InputStream in = compressionStage.decompress(target.compressionCodec(),
+                    storageService.getObject(target.storedFileName(), 0, null))) {
+                in.skipNBytes(offset);
+                copy(in, out, length);
+            }
+            return;
+        }
+
+        boolean fullObject = offset == 0 && length == target.size();
+        try (InputStream in = storageService.getObject(target.storedFileName(), offset, fullObject ? null : length)) {
+            in.transferTo(out);
+        }
+    }
+
+
+
+
+    private void transferFromFile(Path file, long offset, long length, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+        }
+    }
+
+
+
+
+    private static void copy(InputStream in, OutputStream out, long length) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long remaining = length;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new EOFException("Объект короче ожидаемого, не хватает " + remaining + " байт");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+
+
+
+
+    private DownloadTarget toDownloadTarget(FileMetadata metadata) {
+        if (!metadata.getStatus().isCompleted()) {
+            throw new UploadConflictException("Файл еще не загружен, статус: " + metadata.getStatus());
+        }
+        // Имя объекта уникально для каждой загрузки (или равно хэшу содержимого), поэтому подходит для ETag
+        String etag = metadata.getChecksum() != null ? metadata.getChecksum() : metadata.getStoredFileName();
+        return new DownloadTarget(metadata.getStoredFileName(), metadata.getOriginalFileName(),
+                metadata.getContentType(), metadata.getFileSize(), "\"" + etag + "\"", metadata.getCompressionCodec());
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.dto.FilePageResponse;
+import com.example.file_uploader.dto.FileUploadResponse;
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Список файлов: постраничный вывод по курсору и потоковая выгрузка в NDJSON.
+ *
+ * Курсор - непрозрачная для клиента строка (base64 от created_at и id последнего файла страницы).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FileListingService {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private final FileMetadataJdbcRepository fileMetadataJdbcRepository;
+    private final ObjectMapper objectMapper;
+
+    // Возвращает страницу файлов после курсора (null - первая страница).
+    public FilePageResponse getPage(FileStatus status, String contentType, String cursor, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        log.info("Запрос страницы файлов: status={}, contentType={}, limit={}", status, contentType, limit);
+
+        // Запрашиваем на одну строку больше, чтобы узнать, есть ли следующая страница
+        List<FileUploadResponse> items = fileMetadataJdbcRepository.findPage(
+                status, contentType, decodeCursor(cursor), limit + 1);
+
+        String nextCursor = null;
+        if (items.size() > limit) {
+            items = items.subList(0, limit);
+            FileUploadResponse last = items.get(limit - 1);
+            nextCursor = encodeCursor(last.getCreatedAt(), last.getId());
+        }
+
+        return FilePageResponse.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+
+
+
+    // Пишет все подходящие файлы в out, по одному JSON-объекту на строку.
+    // Транзакция нужна, чтобы драйвер читал результат порциями через курсор БД.
+    @Transactional(readOnly = true)
+    public void exportNdjson(FileStatus status, String contentType, OutputStream out) throws IOException {
+        log.info("Выгрузка списка файлов в NDJSON: status={}, contentType={}", status, contentType);
+        try {
+            fileMetadataJdbcRepository.streamAll(status, contentType, file -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(file));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+
+
+
+    private static String encodeCursor(LocalDateTime createdAt, String id) {
+        String value = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+
+
+    private static FileMetadataJdbcRepository.Cursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Некорректный курсор");
+            }
+            return new FileMetadataJdbcRepository.Cursor(
+                    LocalDateTime.parse(value.substring(0, separator)), value.substring(separator + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Некорректный курсор: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.dto.FileUploadResponse;
+import com.example.file_uploader.entity.FileStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Кэш ответов о статусе файла для частых опросов GET /api/files/{id} и /status/{key}.
+ *
+ * Файлы в конечном статусе (COMPLETED, FAILED) хранятся terminal-ttl, остальные - active-ttl.
+ * Смены статуса и удаление на этом узле сбрасывают запись сразу (через FileStatusUpdater и evict).
+ * Другие узлы об изменениях не сообщают, поэтому изменение на другом узле становится видно
+ * не позже срока записи, которая была в кэше: active-ttl для файлов в процессе загрузки,
+ * terminal-ttl для файлов в COMPLETED/FAILED - в том числе их удаление.
+ * Ключ идемпотентности сопоставляется с ID отдельным кэшем с тем же сроком terminal-ttl от записи.
+ */
+@Component
+public class FileStatusCache {
+
+    private final Cache<String, FileUploadResponse> responsesById;
+    private final Cache<String, String> idsByIdempotencyKey;
+
+    public FileStatusCache(@Value("${file-status-cache.maximum-size:100000}") long maximumSize,
+                           @Value("${file-status-cache.active-ttl:2s}") Duration activeTtl,
+                           @Value("${file-status-cache.terminal-ttl:10m}") Duration terminalTtl) {
+        this.responsesById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new StatusAwareExpiry(activeTtl, terminalTtl))
+                .build();
+        this.idsByIdempotencyKey = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(terminalTtl)
+                .build();
+    }
+
+    public static boolean isTerminal(FileStatus status) {
+        return status == FileStatus.COMPLETED || status == FileStatus.FAILED;
+    }
+
+
+
+
+    // Возвращает ответ из кэша или загружает его через loader. Отсутствие файла не кэшируется.
+    public Optional<FileUploadResponse> getById(String fileId, Function<String, Optional<FileUploadResponse>> loader) {
+        return Optional.ofNullable(responsesById.get(fileId, id -> {
+            Optional<FileUploadResponse> loaded = loader.apply(id);
+            loaded.ifPresent(response -> idsByIdempotencyKey.put(response.getIdempotencyKey(), id));
+            return loaded.orElse(null);
+        }));
+    }
+
+
+
+
+    // Возвращает ID файла по ключу идемпотентности, если связь уже известна.
+    public Optional<String> findIdByIdempotencyKey(String idempotencyKey) {
+        return Optional.ofNullable(idsByIdempotencyKey.getIfPresent(idempotencyKey));
+    }
+
+
+
+
+    public void put(FileUploadResponse response) {
+        responsesById.put(response.getId(), response);
+        idsByIdempotencyKey.put(response.getIdempotencyKey(), response.getId());
+    }
+
+
+
+
+    // Сбрасывает ответ после смены статуса файла.
+    public void invalidate(String fileId) {
+        responsesById.invalidate(fileId);
+    }
+
+
+
+
+    // Сбрасывает все сведения о файле (после удаления).
+    public void evict(String fileId, String idempotencyKey) {
+        responsesById.invalidate(fileId);
+        idsByIdempotencyKey.invalidate(idempotencyKey);
+    }
+
+
+
+
+    private record StatusAwareExpiry(Duration activeTtl, Duration terminalTtl)
+            implements Expiry<String, FileUploadResponse> {
+
+        @Override
+        public long expireAfterCreate(String key, FileUploadResponse value, long currentTime) {
+            return (isTerminal(value.getStatus()) ? terminalTtl : activeTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, FileUploadResponse value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, FileUploadResponse value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.repository.FileMetadataJdbcRepository;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository.StatusUpdate;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Смена статусов файлов, объединенная в пакеты.
+ *
+ * Воркеры не обращаются к БД сами: смена статуса ставится в очередь, и раз в
+ * flush-interval-ms все накопившиеся смены отправляются одним JDBC batch через одно
+ * соединение. Под нагрузкой это заменяет сотни коротких транзакций (каждая со своим
+ * соединением из пула) несколькими batch-запросами.
+ *
+ * Сброс выполняет собственный поток (общий пул @Scheduled занят диспетчером, уборкой, метриками
+ * и не должен задерживать смены статусов). Вызывающий apply() ждет записи не дольше apply-timeout:
+ * обычно это интервал сброса плюс время batch, при медленной БД - ошибка вместо бесконечного ожидания.
+ */
+@Component
+@Slf4j
+public class FileStatusUpdater {
+
+    private final FileMetadataJdbcRepository fileMetadataJdbcRepository;
+    private final FileStatusCache fileStatusCache;
+    private final UploadEventBus uploadEventBus;
+    private final UploadMetrics uploadMetrics;
+    private final BlockingQueue<PendingUpdate> queue = new LinkedBlockingQueue<>();
+    private final int maxBatchSize;
+    private final long flushIntervalMs;
+    private final Duration applyTimeout;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "StatusUpdater"));
+
+    private record PendingUpdate(StatusUpdate update, CompletableFuture<Boolean> result) {
+    }
+
+    public FileStatusUpdater(FileMetadataJdbcRepository fileMetadataJdbcRepository,
+                             FileStatusCache fileStatusCache,
+                             UploadEventBus uploadEventBus,
+                             UploadMetrics uploadMetrics,
+                             @Value("${status-updates.max-batch-size:500}") int maxBatchSize,
+                             @Value("${status-updates.flush-interval-ms:20}") long flushIntervalMs,
+                             @Value("${status-updates.apply-timeout:10s}") Duration applyTimeout) {
+        this.fileMetadataJdbcRepository = fileMetadataJdbcRepository;
+        this.fileStatusCache = fileStatusCache;
+        this.uploadEventBus = uploadEventBus;
+        this.uploadMetrics = uploadMetrics;
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.applyTimeout = applyTimeout;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Останавливает поток сброса и записывает то, что осталось в очереди.
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(applyTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    // Ставит смену статуса в очередь. Результат - true, если файл был в ожидаемом статусе и обновлен.
+    public CompletableFuture<Boolean> submit(StatusUpdate update) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        queue.add(new PendingUpdate(update, result));
+        return result;
+    }
+
+
+
+
+    // Меняет статус и ждет, пока смена будет записана в БД, не дольше apply-timeout.
+    public boolean apply(StatusUpdate update) {
+        long start = System.nanoTime();
+        boolean success = false;
+        PendingUpdate pending = new PendingUpdate(update, new CompletableFuture<>());
+        queue.add(pending);
+        try {
+            boolean updated = pending.result().get(applyTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            success = true;
+            return updated;
+        } catch (TimeoutException e) {
+            // Смена, еще не взятая в batch, отменяется, чтобы не выполниться после ошибки у вызывающего
+            boolean cancelled = queue.remove(pending);
+            throw new IllegalStateException(String.format("Смена статуса файла %s на %s не записана за %d мс%s",
+                    update.fileId(), update.status(), applyTimeout.toMillis(),
+                    cancelled ? "" : " (запись еще выполняется)"));
+        } catch (InterruptedException e) {
+            queue.remove(pending);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание смены статуса файла " + update.fileId() + " прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            uploadMetrics.recordStage(UploadMetrics.Stage.STATUS_UPDATE, System.nanoTime() - start, success);
+        }
+    }
+
+
+
+
+    // Отправляет накопившиеся смены статусов пакетами по max-batch-size.
+    void flush() {
+        List<PendingUpdate> batch = new ArrayList<>();
+        try {
+            while (queue.drainTo(batch, maxBatchSize) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        } catch (RuntimeException e) {
+            // Исключение остановило бы scheduleWithFixedDelay, а с ним и все смены статусов
+            log.error("Ошибка сброса смен статуса: {}", e.getMessage(), e);
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+
+
+
+
+    private void write(List<PendingUpdate> batch) {
+        try {
+            boolean[] updated = fileMetadataJdbcRepository.updateStatuses(
+                    batch.stream().map(PendingUpdate::update).toList());
+            // Кэш сбрасывается до того, как вызывающий поток узнает о записи
+            batch.forEach(pending -> fileStatusCache.invalidate(pending.update().fileId()));
+            for (int i = 0; i < batch.size(); i++) {
+                PendingUpdate pending = batch.get(i);
+                StatusUpdate update = pending.update();
+                if (updated[i]) {
+                    uploadEventBus.publishStatus(update.fileId(), update.status(), update.errorMessage(),
+                            update.fileSize());
+                } else {
+                    log.debug("Статус файла {} не изменен: ожидался {}", update.fileId(), update.expectedStatus());
+                }
+                pending.result().complete(updated[i]);
+            }
+            log.debug("Записано смен статуса: {}", batch.size());
+        } catch (Exception e) {
+            log.error("Ошибка записи {} смен статуса: {}", batch.size(), e.getMessage());
+            batch.forEach(pending -> fileStatusCache.invalidate(pending.update().fileId()));
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+}
@@ -1,32 +1,47 @@
 package com.example.file_uploader.service;
 
+import com.example.file_uploader.dto.BatchUploadItem;
+import com.example.file_uploader.dto.BatchUploadResponse;
 import com.example.file_uploader.dto.FileUploadResponse;
+import com.example.file_uploader.entity.CompressionCodec;
 import com.example.file_uploader.entity.FileMetadata;
 import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.entity.UploadJob;
+import com.example.file_uploader.entity.UploadJobStatus;
+import com.example.file_uploader.exception.StorageUnavailableException;
+import com.example.file_uploader.exception.UploadConflictException;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository.StatusUpdate;
 import com.example.file_uploader.repository.FileMetadataRepository;
+import com.example.file_uploader.repository.UploadJobRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
  * Сервис для управления загрузкой файлов.
  * 
  * Реализует основную бизнес-логику:
  * - Прием файла и создание записи в БД
- * - Асинхронная загрузка в MinIO
+ * - Постановка задачи загрузки в очередь (загрузку в MinIO выполняет UploadJobDispatcher)
  * - Обеспечение идемпотентности
  * - Обработка ошибок и откат изменений
  *
@@ -38,10 +53,28 @@ public class FileUploadService {
 
     private final FileMetadataRepository fileMetadataRepository;
     private final StorageService storageService;
+    private final UploadJobRepository uploadJobRepository;
+    private final ContentDeduplicationService deduplicationService;
+    private final FileStatusUpdater fileStatusUpdater;
+    private final IdempotencyService idempotencyService;
+    private final FileStatusCache fileStatusCache;
+    private final UploadEventBus uploadEventBus;
+    private final UploadMetrics uploadMetrics;
+    private final CompressionStage compressionStage;
+
+    // Результат потоковой загрузки: created = false, если запись с этим ключом уже существовала.
+    public record StreamedFile(FileUploadResponse file, boolean created) {
+    }
 
     @Value("${minio.bucket-name}")
     private String bucketName;
 
+    @Value("${upload.checksum.algorithm:MD5}")
+    private ChecksumAlgorithm checksumAlgorithm;
+
+    @Value("${upload-jobs.staging-dir:${java.io.tmpdir}/file-uploader-staging}")
+    private Path stagingDir;
+
     // Инициализация загрузки файла
     @Transactional
     public FileUploadResponse initiateUpload(MultipartFile file, String idempotencyKey) {
@@ -49,8 +82,8 @@ public class FileUploadService {
         log.info("Получен запрос на загрузку файла: '{}', idempotencyKey: '{}'", 
                 file.getOriginalFilename(), idempotencyKey);
 
-        // Проверка идемпотентности - ищем существующую запись
-        Optional<FileMetadata> existingFile = fileMetadataRepository.findByIdempotencyKey(idempotencyKey);
+        // Проверка идемпотентности - ищем существующую запись (новые ключи отсекает Bloom filter без запроса в БД)
+        Optional<FileMetadata> existingFile = idempotencyService.findExisting(idempotencyKey);
         
         if (existingFile.isPresent()) {
             FileMetadata metadata = existingFile.get();
@@ -63,16 +96,7 @@ public class FileUploadService {
         // Генерируем уникальное имя для хранения
         String storedFileName = generateStoredFileName(file.getOriginalFilename());
         
-        // Вычисляем контрольную сумму
-        String checksum;
-        try {
-            checksum = storageService.calculateChecksum(file);
-            log.info("Контрольная сумма файла: {}", checksum);
-        } catch (Exception e) {
-            log.error("Ошибка вычисления контрольной суммы: {}", e.getMessage());
-            checksum = null;
-        }
-
+        // Контрольная сумма вычисляется воркером на лету, во время передачи файла в MinIO
         // Создаем запись в БД со статусом PENDING
         FileMetadata metadata = FileMetadata.builder()
                 .idempotencyKey(idempotencyKey)
@@ -82,19 +106,26 @@ public class FileUploadService {
                 .fileSize(file.getSize())
                 .bucketName(bucketName)
                 .status(FileStatus.PENDING)
-                .checksum(checksum)
                 .build();
 
-        metadata = fileMetadataRepository.save(metadata);
+        // Параллельный запрос с тем же ключом мог успеть создать запись - тогда возвращаем ее
+        IdempotencyService.Claim claim = idempotencyService.claim(metadata);
+        if (!claim.created()) {
+            return buildResponse(claim.metadata(), "Файл уже был обработан ранее (идемпотентный запрос)");
+        }
         log.info("Создана запись в БД с ID: {}, статус: PENDING", metadata.getId());
 
-        // Сохраняем файл во временную директорию для асинхронной обработки
+        // Сохраняем файл в staging-директорию, откуда его заберет воркер
         Path tempFile = saveTempFile(file);
         
-        // Запускаем асинхронную загрузку
-        processUploadAsync(metadata.getId(), tempFile, file.getContentType(), file.getSize());
-
-        log.info("Файл принят в обработку, возвращаем ответ клиенту");
+        // Ставим задачу в очередь в той же транзакции, что и запись о файле
+        uploadJobRepository.save(UploadJob.builder()
+                .fileId(metadata.getId())
+                .tempFilePath(tempFile.toString())
+                .status(UploadJobStatus.PENDING)
+                .build());
+
+        log.info("Файл принят в обработку, задача поставлена в очередь");
         log.info("=== HTTP ЗАПРОС ЗАВЕРШЕН (не блокируем клиента) ===");
         
         return buildResponse(metadata, "Файл принят в обработку. Используйте GET /api/files/{id} для проверки статуса");
@@ -103,79 +134,324 @@ public class FileUploadService {
 
 
 
+    // Пакетная загрузка: keys[i] - ключ идемпотентности files[i]. Существующие ключи ищутся одним запросом IN,
+    // новые записи вставляются одним JDBC batch, задачи очереди - одним batch Hibernate (jdbc.batch_size).
+    // Пустой файл не принимается, но не отменяет загрузку остальных.
+    @Transactional
+    public BatchUploadResponse initiateBatchUpload(List<MultipartFile> files, List<String> keys) {
+        log.info("Пакетная загрузка: {} файлов", files.size());
+        BatchUploadItem[] items = new BatchUploadItem[files.size()];
+
+        Map<String, FileMetadata> existing = idempotencyService.findExisting(keys);
+        List<Integer> newIndexes = new ArrayList<>();
+        List<FileMetadata> candidates = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            FileMetadata found = existing.get(keys.get(i));
+            if (found != null) {
+                items[i] = batchItem(i, found, BatchUploadItem.Outcome.EXISTING,
+                        "Файл уже был обработан ранее (идемпотентный запрос)");
+            } else if (file.isEmpty()) {
+                items[i] = BatchUploadItem.builder()
+                        .index(i)
+                        .idempotencyKey(keys.get(i))
+                        .outcome(BatchUploadItem.Outcome.REJECTED)
+                        .error("Файл не может быть пустым")
+                        .build();
+            } else {
+                newIndexes.add(i);
+                candidates.add(FileMetadata.builder()
+                        .idempotencyKey(keys.get(i))
+                        .originalFileName(file.getOriginalFilename())
+                        .storedFileName(generateStoredFileName(file.getOriginalFilename()))
+                        .contentType(file.getContentType())
+                        .fileSize(file.getSize())
+                        .bucketName(bucketName)
+                        .status(FileStatus.PENDING)
+                        .build());
+            }
+        }
+
+        List<IdempotencyService.Claim> claims = candidates.isEmpty() ? List.of()
+                : idempotencyService.claimAll(candidates);
+        List<UploadJob> jobs = new ArrayList<>();
+        try {
+            for (int n = 0; n < claims.size(); n++) {
+                int i = newIndexes.get(n);
+                IdempotencyService.Claim claim = claims.get(n);
+                if (!claim.created()) {
+                    items[i] = batchItem(i, claim.metadata(), BatchUploadItem.Outcome.EXISTING,
+                            "Файл уже был обработан ранее (идемпотентный запрос)");
+                    continue;
+                }
+                Path tempFile = saveTempFile(files.get(i));
+                jobs.add(UploadJob.builder()
+                        .fileId(claim.metadata().getId())
+                        .tempFilePath(tempFile.toString())
+                        .status(UploadJobStatus.PENDING)
+                        .build());
+                items[i] = batchItem(i, claim.metadata(), BatchUploadItem.Outcome.ACCEPTED,
+                        "Файл принят в обработку. Используйте GET /api/files/{id} для проверки статуса");
+            }
+            // Все задачи ставятся в очередь в той же транзакции, что и записи о файлах
+            uploadJobRepository.saveAll(jobs);
+        } catch (RuntimeException e) {
+            // Транзакция откатится - сохраненные файлы никто не заберет
+            jobs.forEach(job -> cleanupTempFile(Path.of(job.getTempFilePath())));
+            throw e;
+        }
+
+        BatchUploadResponse response = BatchUploadResponse.of(List.of(items));
+        log.info("Пакетная загрузка: принято {}, уже загружены {}, отклонено {}",
+                response.getAccepted(), response.getExisting(), response.getRejected());
+        return response;
+    }
+
+
+
 
+    // Потоковая загрузка: тело запроса передается в MinIO напрямую, без временных файлов.
+    // Контрольная сумма вычисляется на том же проходе. size = -1, если Content-Length не передан.
+    public FileUploadResponse uploadStreaming(InputStream body, long size, String originalFileName,
+                                              String contentType, String idempotencyKey) {
+        return uploadStreamingIfAbsent(body, size, originalFileName, contentType, idempotencyKey).file();
+    }
 
 
 
 
+    // Потоковая загрузка с признаком, создал ли ее именно этот вызов запись о файле.
+    public StreamedFile uploadStreamingIfAbsent(InputStream body, long size, String originalFileName,
+                                                String contentType, String idempotencyKey) {
+        log.info("Потоковая загрузка файла: '{}', размер: {}, idempotencyKey: '{}'",
+                originalFileName, size, idempotencyKey);
 
+        Optional<FileMetadata> existingFile = idempotencyService.findExisting(idempotencyKey);
+        if (existingFile.isPresent()) {
+            log.info("ИДЕМПОТЕНТНОСТЬ: Найдена существующая запись для idempotencyKey='{}', status={}",
+                    idempotencyKey, existingFile.get().getStatus());
+            return new StreamedFile(buildResponse(existingFile.get(),
+                    "Файл уже был обработан ранее (идемпотентный запрос)"), false);
+        }
 
+        IdempotencyService.Claim claim = idempotencyService.claim(FileMetadata.builder()
+                .idempotencyKey(idempotencyKey)
+                .originalFileName(originalFileName)
+                .storedFileName(generateStoredFileName(originalFileName))
+                .contentType(contentType)
+                .fileSize(size < 0 ? null : size)
+                .bucketName(bucketName)
+                .status(FileStatus.UPLOADING)
+                .build());
+        if (!claim.created()) {
+            return new StreamedFile(buildResponse(claim.metadata(),
+                    "Файл уже был обработан ранее (идемпотентный запрос)"), false);
+        }
+        FileMetadata metadata = claim.metadata();
+        log.info("Создана запись в БД с ID: {}, статус: UPLOADING", metadata.getId());
+
+        try (UploadMetrics.InFlight inFlight = uploadMetrics.inFlight(UploadMetrics.UploadPath.STREAM)) {
+            // Решение о сжатии - по первому блоку; прочитанный блок возвращается в начало потока
+            byte[] sample = body.readNBytes(compressionStage.sampleSize());
+            Optional<CompressionCodec> codec = compressionStage.select(contentType, size, sample);
+            InputStream source = sample.length > 0
+                    ? new SequenceInputStream(new ByteArrayInputStream(sample), body) : body;
+
+            InputStream progressStream = new ProgressInputStream(source,
+                    uploadEventBus.progressReporter(metadata.getId(), metadata.getFileSize()));
+            ChecksumInputStream checksumStream = new ChecksumInputStream(progressStream, checksumAlgorithm.newChecksummer());
+            CountingInputStream storedStream = new CountingInputStream(codec.isPresent()
+                    ? compressionStage.compress(codec.get(), checksumStream) : checksumStream);
+
+            long start = System.nanoTime();
+            String etag = uploadMetrics.time(UploadMetrics.Stage.STORAGE_PUT, () ->
+                    storageService.uploadStream(storedStream, codec.isPresent() ? -1 : size, contentType,
+                            metadata.getStoredFileName()));
+            uploadMetrics.recordTransfer(UploadMetrics.UploadPath.STREAM, checksumStream.getBytesRead(),
+                    System.nanoTime() - start);
+            String checksum = checksumStream.getChecksum();
+            // ETag сжатого объекта - хэш сжатых байт, сверять не с чем
+            if (codec.isEmpty()) {
+                verifyChecksum(checksumStream.getAlgorithm(), checksum, etag);
+            }
 
+            LocalDateTime completedAt = LocalDateTime.now();
+            Long storedSize = codec.isPresent() ? storedStream.getBytesRead() : null;
+            FileStatus completed = completedStatus(metadata.getStoredFileName());
+            fileStatusUpdater.apply(new StatusUpdate(metadata.getId(), FileStatus.UPLOADING, completed,
+                    null, checksum, null, null, checksumStream.getBytesRead(), codec.orElse(null), storedSize,
+                    completedAt));
+            metadata.setChecksum(checksum);
+            metadata.setFileSize(checksumStream.getBytesRead());
+            metadata.setCompressionCodec(codec.orElse(null));
+            metadata.setStoredSize(storedSize);
+            metadata.setStatus(confirmIfDurable(metadata.getId(), completed, metadata.getStoredFileName()));
+            metadata.setCompletedAt(completedAt);
+            log.info("Файл {} загружен потоком, {} байт, статус: {}", metadata.getId(), checksumStream.getBytesRead(),
+                    metadata.getStatus());
+
+            return new StreamedFile(buildResponse(metadata, "Файл успешно загружен"), true);
+        } catch (Exception e) {
+            log.error("ОШИБКА потоковой загрузки файла {}: {}", metadata.getId(), e.getMessage(), e);
+            updateStatus(metadata.getId(), FileStatus.FAILED, e.getMessage());
+            tryRollbackUpload(metadata);
+            // 503 с Retry-After: клиент повторит загрузку, когда хранилище восстановится
+            if (e instanceof StorageUnavailableException unavailable) {
+                throw unavailable;
+            }
+            throw new RuntimeException("Ошибка потоковой загрузки файла", e);
+        }
+    }
 
 
 
 
-   // Реализация методов StorageService для работы с MinIO
-    @Async("fileUploadExecutor")
-    public CompletableFuture<Void> processUploadAsync(String fileId, Path tempFile, 
-                                                       String contentType, long fileSize) {
-        log.info("=== НАЧАЛО АСИНХРОННОЙ ОБРАБОТКИ (поток: {}) ===", Thread.currentThread().getName());
+    // Загружает файл из staging-директории в MinIO. Вызывается воркером UploadJobDispatcher.
+    // Исключение означает неудачную попытку: решение о повторе принимает диспетчер.
+    public void processUpload(String fileId, Path tempFile) throws Exception {
+        log.info("=== НАЧАЛО ОБРАБОТКИ ЗАДАЧИ (поток: {}) ===", Thread.currentThread().getName());
         log.info("Обработка файла с ID: {}", fileId);
 
-        try {
+        FileMetadata metadata = fileMetadataRepository.findById(fileId)
+                .orElseThrow(() -> new RuntimeException("Файл не найден: " + fileId));
 
-            updateStatus(fileId, FileStatus.UPLOADING, null);
-            log.info("Статус изменен на UPLOADING");
+        if (metadata.getStatus().isCompleted()) {
+            // Задача выполнена ранее, но не успела удалиться из очереди
+            log.info("Файл {} уже загружен, повторная загрузка не нужна", fileId);
+            cleanupTempFile(tempFile);
+            return;
+        }
 
-            log.info("Загрузка файла в MinIO...");
-            Thread.sleep(3000); // 3 секунды задержки для демонстрации
+        // Переход из прочитанного статуса: если файл за это время изменил другой узел, загрузка не начинается
+        if (!fileStatusUpdater.apply(StatusUpdate.of(fileId, metadata.getStatus(), FileStatus.UPLOADING, null))) {
+            throw new IllegalStateException("Статус файла " + fileId + " изменен параллельно");
+        }
+        log.info("Статус изменен на UPLOADING");
+
+        log.info("Загрузка файла в MinIO...");
+        try (UploadMetrics.InFlight inFlight = uploadMetrics.inFlight(UploadMetrics.UploadPath.STAGED)) {
+            storeStagedFile(metadata, tempFile);
+        }
+
+        cleanupTempFile(tempFile);
+        log.info("Файл успешно загружен в хранилище");
+        log.info("=== ОБРАБОТКА ЗАДАЧИ ЗАВЕРШЕНА УСПЕШНО ===");
+    }
 
-            FileMetadata metadata = fileMetadataRepository.findById(fileId)
-                    .orElseThrow(() -> new RuntimeException("Файл не найден: " + fileId));
 
 
-                    
-            try (var inputStream = Files.newInputStream(tempFile)) {
-                storageService.uploadFile(
-                        new MultipartFileWrapper(tempFile, contentType, fileSize, metadata.getOriginalFileName()),
-                        metadata.getStoredFileName()
-                );
+
+    // Загружает staging-файл в MinIO (или ссылается на уже загруженный объект) и переводит файл в COMPLETED
+    // (COMPLETED_LOCAL, если объект пока только на локальном уровне хранилища).
+    private void storeStagedFile(FileMetadata metadata, Path tempFile) throws Exception {
+        String fileId = metadata.getId();
+        Checksummer checksummer = checksumAlgorithm.newChecksummer();
+        LongConsumer progress = uploadEventBus.progressReporter(fileId, metadata.getFileSize());
+        if (deduplicationService.isEnabled()) {
+            ContentDeduplicationService.StoredContent content = deduplicationService.store(
+                    tempFile, metadata.getFileSize(), metadata.getContentType(), checksummer, progress);
+            log.info("Контрольная сумма файла ({}): {}", checksumAlgorithm, content.checksum());
+            try {
+                completeStoredFile(fileId, content.storedFileName(), status -> new StatusUpdate(fileId,
+                        FileStatus.UPLOADING, status, null, content.checksum(), content.storedFileName(),
+                        content.contentHash(), null, null, null, LocalDateTime.now()));
+            } catch (RuntimeException e) {
+                // Ссылка на объект уже взята - без записи о файле она бы не освободилась никогда
+                deduplicationService.release(content.contentHash());
+                throw e;
             }
+        } else if (compressionStage.sampleSize() > 0) {
+            storeStagedFileCompressed(metadata, tempFile, checksummer, progress);
+        } else {
+            storeStagedFileRaw(metadata, tempFile, checksummer, progress);
+        }
+    }
 
-            updateStatusCompleted(fileId);
-            log.info("Файл успешно загружен в MinIO, статус: COMPLETED");
-            log.info("=== АСИНХРОННАЯ ОБРАБОТКА ЗАВЕРШЕНА УСПЕШНО ===");
 
-        } catch (Exception e) {
-            log.error("ОШИБКА при загрузке файла: {}", e.getMessage(), e);
-            
-            updateStatus(fileId, FileStatus.FAILED, e.getMessage());
-            
-            tryRollbackUpload(fileId);
-            
-            log.info("=== АСИНХРОННАЯ ОБРАБОТКА ЗАВЕРШЕНА С ОШИБКОЙ ===");
-        } finally {
-            cleanupTempFile(tempFile);
+
+
+    // Загрузка staging-файла без сжатия: из файла, с параллельной multipart-загрузкой для больших файлов
+    // и сверкой контрольной суммы с ETag.
+    private void storeStagedFileRaw(FileMetadata metadata, Path tempFile, Checksummer checksummer,
+                                    LongConsumer progress) throws Exception {
+        String fileId = metadata.getId();
+        long start = System.nanoTime();
+        String etag = uploadMetrics.time(UploadMetrics.Stage.STORAGE_PUT, () ->
+                storageService.uploadFile(tempFile, metadata.getFileSize(), metadata.getContentType(),
+                        metadata.getStoredFileName(), checksummer, progress));
+        uploadMetrics.recordTransfer(UploadMetrics.UploadPath.STAGED, metadata.getFileSize(),
+                System.nanoTime() - start);
+        String checksum = checksummer.finish();
+        verifyChecksum(checksumAlgorithm, checksum, etag);
+        log.info("Контрольная сумма файла ({}): {}", checksumAlgorithm, checksum);
+        completeStoredFile(fileId, metadata.getStoredFileName(), status -> new StatusUpdate(fileId,
+                FileStatus.UPLOADING, status, null, checksum, null, null, null, null, null, LocalDateTime.now()));
+    }
+
+
+
+
+    // Загрузка staging-файла с возможным сжатием. Сжатый объект передается потоком: его размер
+    // заранее неизвестен, поэтому параллельная multipart-загрузка из файла здесь не используется.
+    private void storeStagedFileCompressed(FileMetadata metadata, Path tempFile, Checksummer checksummer,
+                                           LongConsumer progress) throws Exception {
+        byte[] sample;
+        try (InputStream in = Files.newInputStream(tempFile)) {
+            sample = in.readNBytes(compressionStage.sampleSize());
+        }
+        Optional<CompressionCodec> codec = compressionStage.select(metadata.getContentType(), metadata.getFileSize(), sample);
+
+        if (codec.isEmpty()) {
+            storeStagedFileRaw(metadata, tempFile, checksummer, progress);
+            return;
         }
 
-        return CompletableFuture.completedFuture(null);
+        long start = System.nanoTime();
+        long storedSize;
+        try (InputStream in = Files.newInputStream(tempFile)) {
+            CountingInputStream storedStream = new CountingInputStream(compressionStage.compress(codec.get(),
+                    new ChecksumInputStream(new ProgressInputStream(in, progress), checksummer)));
+            uploadMetrics.time(UploadMetrics.Stage.STORAGE_PUT, () ->
+                    storageService.uploadStream(storedStream, -1, metadata.getContentType(), metadata.getStoredFileName()));
+            storedSize = storedStream.getBytesRead();
+        }
+        uploadMetrics.recordTransfer(UploadMetrics.UploadPath.STAGED, metadata.getFileSize(), System.nanoTime() - start);
+        String checksum = checksummer.finish();
+        log.info("Файл {} сжат ({}): {} -> {} байт", metadata.getId(), codec.get(), metadata.getFileSize(), storedSize);
+
+        completeStoredFile(metadata.getId(), metadata.getStoredFileName(), status -> new StatusUpdate(metadata.getId(),
+                FileStatus.UPLOADING, status, null, checksum, null, null, null, codec.get(), storedSize, LocalDateTime.now()));
     }
 
 
 
 
+    // Возвращает файл в PENDING до следующей попытки загрузки.
+    public void scheduleRetry(String fileId, String errorMessage) {
+        fileStatusUpdater.apply(StatusUpdate.of(fileId, FileStatus.UPLOADING, FileStatus.PENDING, errorMessage));
+    }
 
 
 
 
+    // Окончательно помечает загрузку как FAILED после исчерпания попыток.
+    public void failUpload(String fileId, Path tempFile, String errorMessage) {
+        updateStatus(fileId, FileStatus.FAILED, errorMessage);
+        fileMetadataRepository.findById(fileId).ifPresent(this::tryRollbackUpload);
+        cleanupTempFile(tempFile);
+        log.info("=== ОБРАБОТКА ЗАДАЧИ ЗАВЕРШЕНА С ОШИБКОЙ ===");
+    }
 
 
 
-    // Получает информацию о файле по его ID.
+
+
+
+    // Получает информацию о файле по его ID. Частые опросы статуса обслуживаются из кэша.
     public Optional<FileUploadResponse> getFileById(String id) {
-        log.info("Запрос информации о файле с ID: {}", id);
-        return fileMetadataRepository.findById(id)
-                .map(metadata -> buildResponse(metadata, null));
+        log.debug("Запрос информации о файле с ID: {}", id);
+        return fileStatusCache.getById(id, fileId -> fileMetadataRepository.findById(fileId)
+                .map(metadata -> buildResponse(metadata, null)));
     }
 
 
@@ -184,11 +460,22 @@ public class FileUploadService {
 
 
 
-    // Получает информацию о файле по idempotencyKey.
+    // Получает информацию о файле по idempotencyKey. Частые опросы статуса обслуживаются из кэша.
     public Optional<FileUploadResponse> getFileByIdempotencyKey(String idempotencyKey) {
-        log.info("Запрос информации о файле по idempotencyKey: {}", idempotencyKey);
-        return fileMetadataRepository.findByIdempotencyKey(idempotencyKey)
+        log.debug("Запрос информации о файле по idempotencyKey: {}", idempotencyKey);
+        Optional<String> cachedId = fileStatusCache.findIdByIdempotencyKey(idempotencyKey);
+        if (cachedId.isPresent()) {
+            Optional<FileUploadResponse> cached = getFileById(cachedId.get());
+            // Файл мог быть удален на другом узле, а ключ - занят заново
+            if (cached.isPresent()) {
+                return cached;
+            }
+        }
+
+        Optional<FileUploadResponse> response = idempotencyService.findExisting(idempotencyKey)
                 .map(metadata -> buildResponse(metadata, null));
+        response.ifPresent(fileStatusCache::put);
+        return response;
     }
 
 
@@ -197,28 +484,40 @@ public class FileUploadService {
 
 
 
-    // Получает список всех файлов.
-    public List<FileUploadResponse> getAllFiles() {
-        log.info("Запрос списка всех файлов");
-        return fileMetadataRepository.findAllByOrderByCreatedAtDesc()
-                .stream()
-                .map(metadata -> buildResponse(metadata, null))
-                .toList();
+    // Удаляет файл. Общий объект (дедупликация) удаляется сборщиком мусора, когда на него не останется ссылок.
+    public boolean deleteFile(String id) throws Exception {
+        Optional<FileMetadata> found = fileMetadataRepository.findById(id);
+        if (found.isEmpty()) {
+            return false;
+        }
+
+        FileMetadata metadata = found.get();
+        if (metadata.getStatus() == FileStatus.PENDING || metadata.getStatus() == FileStatus.UPLOADING) {
+            throw new UploadConflictException("Файл еще загружается, статус: " + metadata.getStatus());
+        }
+
+        if (metadata.getContentHash() != null) {
+            deduplicationService.release(metadata.getContentHash());
+        } else if (metadata.getStatus().isCompleted()) {
+            storageService.deleteFile(metadata.getStoredFileName());
+        }
+
+        fileMetadataRepository.delete(metadata);
+        fileStatusCache.evict(id, metadata.getIdempotencyKey());
+        log.info("Файл {} удален", id);
+        return true;
     }
 
 
 
 
 
-    // Обновляет статус файла.
-    @Transactional
+
+
+    // Обновляет статус файла одним UPDATE, независимо от текущего статуса.
     public void updateStatus(String fileId, FileStatus status, String errorMessage) {
-        fileMetadataRepository.findById(fileId).ifPresent(metadata -> {
-            metadata.setStatus(status);
-            metadata.setErrorMessage(errorMessage);
-            fileMetadataRepository.save(metadata);
-            log.info("Статус файла {} обновлен на {}", fileId, status);
-        });
+        fileStatusUpdater.apply(StatusUpdate.of(fileId, null, status, errorMessage));
+        log.info("Статус файла {} обновлен на {}", fileId, status);
     }
 
 
@@ -227,15 +526,68 @@ public class FileUploadService {
 
 
 
-    // Обновляет статус файла на COMPLETED.
-    @Transactional
-    public void updateStatusCompleted(String fileId) {
-        fileMetadataRepository.findById(fileId).ifPresent(metadata -> {
-            metadata.setStatus(FileStatus.COMPLETED);
-            metadata.setCompletedAt(LocalDateTime.now());
-            metadata.setErrorMessage(null);
-            fileMetadataRepository.save(metadata);
-        });
+    // Переводит файл из UPLOADING в COMPLETED и сохраняет вычисленную при загрузке контрольную сумму.
+    // storedFileName и contentHash передаются, если файл сохранен как общий объект (дедупликация).
+    public void updateStatusCompleted(String fileId, String checksum, String storedFileName, String contentHash) {
+        boolean updated = fileStatusUpdater.apply(new StatusUpdate(fileId, FileStatus.UPLOADING, FileStatus.COMPLETED,
+                null, checksum, storedFileName, contentHash, null, null, null, LocalDateTime.now()));
+        if (!updated) {
+            throw new IllegalStateException("Файл " + fileId + " уже не в статусе UPLOADING");
+        }
+    }
+
+
+
+
+
+    // Объект скопирован с локального уровня хранилища в MinIO: ссылающиеся на него файлы становятся COMPLETED.
+    @EventListener
+    public void onObjectReplicated(ObjectReplicatedEvent event) {
+        List<FileMetadata> files = fileMetadataRepository.findByStoredFileNameAndStatus(
+                event.storedFileName(), FileStatus.COMPLETED_LOCAL);
+        for (FileMetadata file : files) {
+            fileStatusUpdater.apply(StatusUpdate.of(file.getId(), FileStatus.COMPLETED_LOCAL, FileStatus.COMPLETED, null));
+        }
+        if (!files.isEmpty()) {
+            log.info("Объект {} скопирован в MinIO, файлов переведено в COMPLETED: {}", event.storedFileName(), files.size());
+        }
+    }
+
+
+
+
+
+    // Переводит файл из UPLOADING в COMPLETED или COMPLETED_LOCAL - в зависимости от того,
+    // скопирован ли объект objectName в MinIO. update строит обновление для выбранного статуса.
+    private void completeStoredFile(String fileId, String objectName, Function<FileStatus, StatusUpdate> update) {
+        FileStatus completed = completedStatus(objectName);
+        if (!fileStatusUpdater.apply(update.apply(completed))) {
+            throw new IllegalStateException("Файл " + fileId + " уже не в статусе UPLOADING");
+        }
+        confirmIfDurable(fileId, completed, objectName);
+    }
+
+
+
+
+
+    // COMPLETED_LOCAL, если объект пока сохранен только на локальном уровне хранилища.
+    private FileStatus completedStatus(String objectName) {
+        return storageService.isDurable(objectName) ? FileStatus.COMPLETED : FileStatus.COMPLETED_LOCAL;
+    }
+
+
+
+
+
+    // Повторная проверка после записи COMPLETED_LOCAL: объект мог быть скопирован в MinIO до того, как
+    // обновление статуса стало видно обработчику ObjectReplicatedEvent. Возвращает итоговый статус.
+    private FileStatus confirmIfDurable(String fileId, FileStatus status, String objectName) {
+        if (status == FileStatus.COMPLETED_LOCAL && storageService.isDurable(objectName)
+                && fileStatusUpdater.apply(StatusUpdate.of(fileId, FileStatus.COMPLETED_LOCAL, FileStatus.COMPLETED, null))) {
+            return FileStatus.COMPLETED;
+        }
+        return status;
     }
 
 
@@ -243,7 +595,7 @@ public class FileUploadService {
 
 
     // Генерирует уникальное имя для хранения файла в MinIO, сохраняя расширение.
-    private String generateStoredFileName(String originalFileName) {
+    static String generateStoredFileName(String originalFileName) {
         String extension = "";
         if (originalFileName != null && originalFileName.contains(".")) {
             extension = originalFileName.substring(originalFileName.lastIndexOf("."));
@@ -253,16 +605,40 @@ public class FileUploadService {
 
 
 
-    // Вычисляет контрольную сумму файла (MD5).
-    private Path saveTempFile(MultipartFile file) {
+    // Сверяет MD5 с ETag объекта. ETag составного (multipart) объекта не является MD5 содержимого,
+    // а для других алгоритмов сравнивать не с чем - в этих случаях проверка пропускается.
+    private void verifyChecksum(ChecksumAlgorithm algorithm, String checksum, String etag) {
+        if (algorithm != ChecksumAlgorithm.MD5 || etag == null) {
+            return;
+        }
+        String normalizedEtag = etag.replace("\"", "");
+        if (normalizedEtag.contains("-")) {
+            return;
+        }
+        if (!normalizedEtag.equalsIgnoreCase(checksum)) {
+            throw new IllegalStateException(String.format(
+                    "Контрольная сумма %s не совпадает с ETag объекта %s", checksum, normalizedEtag));
+        }
+    }
+
+
+
+    // Сохраняет файл в staging-директорию до загрузки воркером.
+    Path saveTempFile(MultipartFile file) {
+        long start = System.nanoTime();
+        boolean success = false;
         try {
-            Path tempDir = Files.createTempDirectory("file-uploader-");
+            Files.createDirectories(stagingDir);
+            Path tempDir = Files.createTempDirectory(stagingDir, "file-uploader-");
             Path tempFile = tempDir.resolve(UUID.randomUUID().toString());
             file.transferTo(tempFile.toFile());
             log.debug("Временный файл создан: {}", tempFile);
+            success = true;
             return tempFile;
         } catch (IOException e) {
             throw new RuntimeException("Ошибка сохранения временного файла", e);
+        } finally {
+            uploadMetrics.recordStage(UploadMetrics.Stage.TEMP_WRITE, System.nanoTime() - start, success);
         }
     }
 
@@ -290,28 +666,38 @@ public class FileUploadService {
 
 
     // Пытается удалить файл из MinIO при ошибке загрузки для отката изменений.
-    private void tryRollbackUpload(String fileId) {
+    // Удаление отсутствующего объекта не считается ошибкой, поэтому statObject перед ним не нужен.
+    private void tryRollbackUpload(FileMetadata metadata) {
+        // Общий объект может использоваться другими файлами - его не трогаем
+        if (metadata.getContentHash() != null) {
+            return;
+        }
         try {
-            fileMetadataRepository.findById(fileId).ifPresent(metadata -> {
-                if (storageService.fileExists(metadata.getStoredFileName())) {
-                    try {
-                        storageService.deleteFile(metadata.getStoredFileName());
-                        log.info("Откат: файл удален из MinIO");
-                    } catch (Exception e) {
-                        log.error("Ошибка отката загрузки: {}", e.getMessage());
-                    }
-                }
-            });
+            storageService.deleteFile(metadata.getStoredFileName());
+            log.info("Откат: файл удален из MinIO");
         } catch (Exception e) {
-            log.error("Ошибка при попытке отката: {}", e.getMessage());
+            log.error("Ошибка отката загрузки: {}", e.getMessage());
         }
     }
 
     
 
 
+    static BatchUploadItem batchItem(int index, FileMetadata metadata, BatchUploadItem.Outcome outcome,
+                                             String message) {
+        return BatchUploadItem.builder()
+                .index(index)
+                .idempotencyKey(metadata.getIdempotencyKey())
+                .outcome(outcome)
+                .file(buildResponse(metadata, message))
+                .build();
+    }
+
+
+
+
     // Строит DTO для ответа на основе метаданных файла.
-    private FileUploadResponse buildResponse(FileMetadata metadata, String message) {
+    static FileUploadResponse buildResponse(FileMetadata metadata, String message) {
         return FileUploadResponse.builder()
                 .id(metadata.getId())
                 .idempotencyKey(metadata.getIdempotencyKey())
@@ -321,54 +707,11 @@ public class FileUploadService {
                 .status(metadata.getStatus())
                 .errorMessage(metadata.getErrorMessage())
                 .checksum(metadata.getChecksum())
+                .compressionCodec(metadata.getCompressionCodec())
+                .storedSize(metadata.getStoredSize())
                 .createdAt(metadata.getCreatedAt())
                 .completedAt(metadata.getCompletedAt())
                 .message(message)
                 .build();
     }
-
-
-
-    // Временная обертка для MultipartFile, чтобы использовать его с MinIO SDK.
-    private static class MultipartFileWrapper implements MultipartFile {
-        private final Path path;
-        private final String contentType;
-        private final long size;
-        private final String originalFilename;
-
-        public MultipartFileWrapper(Path path, String contentType, long size, String originalFilename) {
-            this.path = path;
-            this.contentType = contentType;
-            this.size = size;
-            this.originalFilename = originalFilename;
-        }
-
-        @Override
-        public String getName() { return "file"; }
-
-        @Override
-        public String getOriginalFilename() { return originalFilename; }
-
-        @Override
-        public String getContentType() { return contentType; }
-
-        @Override
-        public boolean isEmpty() { return size == 0; }
-
-        @Override
-        public long getSize() { return size; }
-
-        @Override
-        public byte[] getBytes() throws IOException { return Files.readAllBytes(path); }
-
-        @Override
-        public java.io.InputStream getInputStream() throws IOException { 
-            return Files.newInputStream(path); 
-        }
-
-        @Override
-        public void transferTo(java.io.File dest) throws IOException {
-            Files.copy(path, dest.toPath());
-        }
-    }
 }
@@ -0,0 +1,82 @@
+package com.example.file_uploader.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Поток, отдающий содержимое исходного потока в формате gzip по мере чтения.
+ *
+ * В отличие от GZIPOutputStream, сжатие идет на стороне читателя: поток можно передать в хранилище
+ * как тело запроса, без промежуточного файла и без отдельного потока-писателя. В памяти только
+ * буферы Deflater. Заголовок gzip отдается сразу, трейлер (CRC32 и размер) - после исходных данных.
+ */
+public class GzipCompressingInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // ID1 ID2, CM = deflate, без флагов, MTIME = 0, XFL = 0, OS = unknown
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final CRC32 crc = new CRC32();
+    private final Deflater deflater;
+    private final DeflaterInputStream body;
+    private InputStream current = new ByteArrayInputStream(HEADER);
+    private int part;
+
+    public GzipCompressingInputStream(InputStream in, int level) {
+        this.deflater = new Deflater(level, true);
+        this.body = new DeflaterInputStream(new CheckedInputStream(in, crc), deflater, BUFFER_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (current != null) {
+            int n = current.read(b, off, len);
+            if (n > 0) {
+                return n;
+            }
+            nextPart();
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            body.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Заголовок -> сжатые данные -> трейлер -> конец потока.
+    private void nextPart() {
+        part++;
+        if (part == 1) {
+            current = body;
+        } else if (part == 2) {
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue());
+            trailer.putInt((int) deflater.getBytesRead());
+            current = new ByteArrayInputStream(trailer.array());
+        } else {
+            current = null;
+        }
+    }
+}
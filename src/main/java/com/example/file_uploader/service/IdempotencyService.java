@@ -0,0 +1,182 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository;
+import com.example.file_uploader.repository.FileMetadataRepository;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ключи идемпотентности: быстрая проверка и атомарное создание записи о файле.
+ *
+ * Bloom filter в памяти хранит все известные узлу ключи. Если фильтр говорит, что ключа нет,
+ * запрос в БД не нужен - ключ точно новый для этого узла. Ключи, созданные другими узлами,
+ * фильтр может не знать, поэтому окончательное решение принимает вставка
+ * INSERT ... ON CONFLICT DO NOTHING: из двух параллельных запросов с одним ключом
+ * запись создает ровно один, а второй получает уже существующую запись.
+ * Пакетная загрузка проверяет все ключи одним запросом IN и вставляет записи одним JDBC batch.
+ *
+ * До окончания загрузки ключей из БД при старте фильтр не используется.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileMetadataJdbcRepository fileMetadataJdbcRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final BloomFilter<String> knownKeys;
+    private volatile boolean ready;
+
+    // Результат создания записи: созданная запись или запись, уже существовавшая с этим ключом.
+    public record Claim(FileMetadata metadata, boolean created) {
+    }
+
+    public IdempotencyService(FileMetadataRepository fileMetadataRepository,
+                              FileMetadataJdbcRepository fileMetadataJdbcRepository,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${idempotency.bloom.expected-keys:10000000}") long expectedKeys,
+                              @Value("${idempotency.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.fileMetadataJdbcRepository = fileMetadataJdbcRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.knownKeys = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedKeys, falsePositiveRate);
+    }
+
+    // Загружает существующие ключи в фильтр в фоне, не задерживая старт приложения.
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadKnownKeys() {
+        Thread.ofVirtual().name("idempotency-keys-loader").start(() -> {
+            try {
+                long[] count = new long[1];
+                // Транзакция нужна, чтобы драйвер читал ключи порциями, а не все сразу
+                readOnlyTransaction.executeWithoutResult(status ->
+                        fileMetadataJdbcRepository.streamIdempotencyKeys(key -> {
+                            knownKeys.put(key);
+                            count[0]++;
+                        }));
+                ready = true;
+                log.info("Загружено ключей идемпотентности: {}", count[0]);
+            } catch (Exception e) {
+                log.error("Не удалось загрузить ключи идемпотентности, проверка идет через БД: {}", e.getMessage());
+            }
+        });
+    }
+
+
+
+
+    // Ищет запись по ключу. Для ключей, которых точно нет, обращения к БД не происходит.
+    public Optional<FileMetadata> findExisting(String idempotencyKey) {
+        if (ready && !knownKeys.mightContain(idempotencyKey)) {
+            return Optional.empty();
+        }
+        return fileMetadataRepository.findByIdempotencyKey(idempotencyKey);
+    }
+
+
+
+
+    // Ищет записи по нескольким ключам одним запросом IN. Ключи, которых точно нет, в запрос не попадают.
+    public Map<String, FileMetadata> findExisting(Collection<String> idempotencyKeys) {
+        List<String> candidates = idempotencyKeys.stream()
+                .filter(key -> !ready || knownKeys.mightContain(key))
+                .toList();
+        if (candidates.isEmpty()) {
+            return Map.of();
+        }
+        return fileMetadataRepository.findByIdempotencyKeyIn(candidates).stream()
+                .collect(Collectors.toMap(FileMetadata::getIdempotencyKey, Function.identity()));
+    }
+
+
+
+
+    // Атомарно создает запись о файле или возвращает существующую запись с тем же ключом.
+    public Claim claim(FileMetadata candidate) {
+        prepare(candidate, LocalDateTime.now());
+
+        boolean created = fileMetadataJdbcRepository.insertIfAbsent(candidate);
+        knownKeys.put(candidate.getIdempotencyKey());
+        if (created) {
+            return new Claim(candidate, true);
+        }
+
+        log.info("ИДЕМПОТЕНТНОСТЬ: ключ '{}' занят параллельным запросом", candidate.getIdempotencyKey());
+        FileMetadata existing = fileMetadataRepository.findByIdempotencyKey(candidate.getIdempotencyKey())
+                .orElseThrow(() -> new IllegalStateException(
+                        "Запись с ключом " + candidate.getIdempotencyKey() + " не найдена после конфликта"));
+        return new Claim(existing, false);
+    }
+
+
+
+
+    // Создает записи для нескольких файлов одним JDBC batch; результаты - в порядке candidates.
+    // Записи, ключи которых заняты параллельными запросами, читаются одним запросом IN.
+    public List<Claim> claimAll(List<FileMetadata> candidates) {
+        LocalDateTime now = LocalDateTime.now();
+        candidates.forEach(candidate -> prepare(candidate, now));
+
+        boolean[] inserted = fileMetadataJdbcRepository.insertAllIfAbsent(candidates);
+        List<String> unconfirmed = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            knownKeys.put(candidates.get(i).getIdempotencyKey());
+            if (!inserted[i]) {
+                unconfirmed.add(candidates.get(i).getIdempotencyKey());
+            }
+        }
+        Map<String, FileMetadata> existing = unconfirmed.isEmpty() ? Map.of()
+                : fileMetadataRepository.findByIdempotencyKeyIn(unconfirmed).stream()
+                        .collect(Collectors.toMap(FileMetadata::getIdempotencyKey, Function.identity()));
+
+        List<Claim> claims = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            FileMetadata candidate = candidates.get(i);
+            if (inserted[i]) {
+                claims.add(new Claim(candidate, true));
+                continue;
+            }
+            FileMetadata found = existing.get(candidate.getIdempotencyKey());
+            if (found == null) {
+                throw new IllegalStateException(
+                        "Запись с ключом " + candidate.getIdempotencyKey() + " не найдена после конфликта");
+            }
+            // Драйвер мог не сообщить число строк - тогда своя запись узнается по id
+            boolean created = found.getId().equals(candidate.getId());
+            if (!created) {
+                log.info("ИДЕМПОТЕНТНОСТЬ: ключ '{}' занят параллельным запросом", candidate.getIdempotencyKey());
+            }
+            claims.add(new Claim(created ? candidate : found, created));
+        }
+        return claims;
+    }
+
+
+
+
+    private static void prepare(FileMetadata candidate, LocalDateTime now) {
+        candidate.setId(UUID.randomUUID().toString());
+        candidate.setCreatedAt(now);
+        candidate.setUpdatedAt(now);
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.file_uploader.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Локальный дисковый кэш популярных объектов MinIO.
+ *
+ * Объект попадает в кэш после min-hits обращений и отдается с диска через sendfile
+ * (или FileChannel.transferTo), не нагружая MinIO и heap JVM. Общий объем ограничен max-size,
+ * при переполнении вытесняются давно не читавшиеся объекты (LRU).
+ *
+ * Объекты в MinIO неизменяемы (имя уникально для каждой загрузки или равно хэшу содержимого),
+ * поэтому инвалидация кэша не нужна. Вытесненные файлы удаляются с задержкой,
+ * чтобы не оборвать уже начатую отдачу через sendfile.
+ */
+@Component
+@Slf4j
+public class LocalObjectCache {
+
+    // Сколько последних ключей помнить для подсчета обращений.
+    private static final int MAX_TRACKED_KEYS = 10_000;
+
+    private final StorageService storageService;
+    private final Executor objectCacheExecutor;
+    private final boolean enabled;
+    private final Path cacheDir;
+    private final long maxSize;
+    private final long maxObjectSize;
+    private final int minHits;
+    private final long evictionDelayMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, CachedObject> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Integer> hits = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_TRACKED_KEYS;
+        }
+    };
+    private final Deque<EvictedFile> evicted = new ArrayDeque<>();
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+    private long currentSize;
+
+    private record CachedObject(Path path, long size) {
+    }
+
+    private record EvictedFile(Path path, long evictedAt) {
+    }
+
+    public LocalObjectCache(StorageService storageService,
+                            @Qualifier("objectCacheExecutor") Executor objectCacheExecutor,
+                            @Value("${download.cache.enabled:false}") boolean enabled,
+                            @Value("${download.cache.dir:${java.io.tmpdir}/file-uploader-cache}") Path cacheDir,
+                            @Value("${download.cache.max-size:2GB}") DataSize maxSize,
+                            @Value("${download.cache.max-object-size:256MB}") DataSize maxObjectSize,
+                            @Value("${download.cache.min-hits:2}") int minHits,
+                            @Value("${download.cache.eviction-delay-ms:60000}") long evictionDelayMs) {
+        this.storageService = storageService;
+        this.objectCacheExecutor = objectCacheExecutor;
+        this.enabled = enabled;
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize.toBytes();
+        this.maxObjectSize = maxObjectSize.toBytes();
+        this.minHits = minHits;
+        this.evictionDelayMs = evictionDelayMs;
+    }
+
+    // Кэш не переживает перезапуск: содержимое директории от прошлого запуска удаляется.
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        FileSystemUtils.deleteRecursively(cacheDir);
+        Files.createDirectories(cacheDir);
+        log.info("Локальный кэш объектов: {}, лимит {} байт", cacheDir, maxSize);
+    }
+
+
+
+
+    // Возвращает путь к закэшированному объекту. Промах учитывается как обращение,
+    // и после min-hits обращений объект загружается в кэш в фоне.
+    public Optional<Path> get(String storedFileName, long size) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        boolean shouldLoad;
+        lock.lock();
+        try {
+            CachedObject cached = entries.get(storedFileName);
+            if (cached != null) {
+                return Optional.of(cached.path());
+            }
+            int count = hits.merge(storedFileName, 1, Integer::sum);
+            shouldLoad = count >= minHits && size <= maxObjectSize && size <= maxSize;
+        } finally {
+            lock.unlock();
+        }
+
+        if (shouldLoad && loading.add(storedFileName)) {
+            try {
+                objectCacheExecutor.execute(() -> load(storedFileName, size));
+            } catch (TaskRejectedException e) {
+                loading.remove(storedFileName);
+            }
+        }
+        return Optional.empty();
+    }
+
+
+
+
+    // Удаляет вытесненные файлы, отдача которых уже точно завершилась.
+    @Scheduled(fixedDelayString = "${download.cache.eviction-delay-ms:60000}")
+    public void deleteEvictedFiles() {
+        long deadline = System.currentTimeMillis() - evictionDelayMs;
+        Deque<EvictedFile> ready = new ArrayDeque<>();
+        lock.lock();
+        try {
+            Iterator<EvictedFile> iterator = evicted.iterator();
+            while (iterator.hasNext()) {
+                EvictedFile file = iterator.next();
+                if (file.evictedAt() > deadline) {
+                    break;
+                }
+                ready.add(file);
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (EvictedFile file : ready) {
+            try {
+                Files.deleteIfExists(file.path());
+            } catch (IOException e) {
+                log.warn("Не удалось удалить вытесненный файл кэша {}: {}", file.path(), e.getMessage());
+            }
+        }
+    }
+
+
+
+
+    private void load(String storedFileName, long size) {
+        Path target = cacheDir.resolve(UUID.randomUUID().toString());
+        try {
+            try (InputStream in = storageService.getObject(storedFileName, 0, null)) {
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            long actualSize = Files.size(target);
+
+            lock.lock();
+            try {
+                CachedObject previous = entries.put(storedFileName, new CachedObject(target, actualSize));
+                if (previous != null) {
+                    currentSize -= previous.size();
+                    evicted.add(new EvictedFile(previous.path(), System.currentTimeMillis()));
+                }
+                currentSize += actualSize;
+                evictIfNeeded();
+            } finally {
+                lock.unlock();
+            }
+            log.debug("Объект '{}' ({} байт) добавлен в локальный кэш", storedFileName, actualSize);
+        } catch (Exception e) {
+            log.warn("Не удалось закэшировать объект '{}': {}", storedFileName, e.getMessage());
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException ignored) {
+                // файл мог не успеть создаться
+            }
+        } finally {
+            loading.remove(storedFileName);
+        }
+    }
+
+
+
+
+    // Вызывается под lock.
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, CachedObject>> iterator = entries.entrySet().iterator();
+        long now = System.currentTimeMillis();
+        while (currentSize > maxSize && iterator.hasNext()) {
+            CachedObject eldest = iterator.next().getValue();
+            iterator.remove();
+            currentSize -= eldest.size();
+            evicted.add(new EvictedFile(eldest.path(), now));
+        }
+    }
+}
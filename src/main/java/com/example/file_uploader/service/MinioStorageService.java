@@ -2,63 +2,302 @@ package com.example.file_uploader.service;
 
 import io.minio.*;
 import io.minio.errors.ErrorResponseException;
+import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import io.minio.messages.Part;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
 import org.springframework.stereotype.Service;
+import org.springframework.util.function.ThrowingSupplier;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.EOFException;
 import java.io.InputStream;
-import java.security.MessageDigest;
-import java.util.HexFormat;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.function.LongConsumer;
 
 // Сервис для работы с MinIO - загрузка, удаление и проверка файлов.
+// Каждый запрос к MinIO выполняется под слотом DownstreamLimiter (MINIO) - слот держится
+// на время одного запроса, а не всей операции: multipart-загрузка берет слот на каждую часть.
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MinioStorageService implements StorageService {
 
     private final MinioClient minioClient;
+    private final MultipartUploadEngine multipartUploadEngine;
+    private final MultipartMinioClient multipartMinioClient;
+    private final BucketRegistry bucketRegistry;
+    private final DownstreamLimiter downstreamLimiter;
+    private final UploadMetrics uploadMetrics;
+    @Qualifier("presignMinioClient")
+    private final MinioClient presignMinioClient;
+
+    // Размер части для потоков неизвестной длины (минимум для S3 - 5MB).
+    private static final long STREAM_PART_SIZE = 10L * 1024 * 1024;
 
     @Value("${minio.bucket-name}")
     private String bucketName;
 
+    // Файлы от этого размера загружаются параллельными частями через MultipartUploadEngine.
+    @Value("${minio.multipart.threshold:64MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${upload.checksum.algorithm:MD5}")
+    private ChecksumAlgorithm checksumAlgorithm;
+
     @Override
-    public String uploadFile(MultipartFile file, String storedFileName) throws Exception {
+    public String uploadFile(Path source, long size, String contentType, String storedFileName,
+                             Checksummer checksummer, LongConsumer progress) throws Exception {
         log.info("Начало загрузки файла '{}' в MinIO bucket '{}'", storedFileName, bucketName);
         
-        // Проверяем и создаем bucket если не существует
+        // Проверяем и создаем bucket если не существует (проверка кэшируется)
         ensureBucketExists();
 
-        try (InputStream inputStream = file.getInputStream()) {
+        try {
+            return putFile(source, size, contentType, storedFileName, checksummer, progress);
+        } catch (Exception e) {
+            if (!BucketRegistry.isNoSuchBucket(e)) {
+                throw e;
+            }
+            // Bucket удалили после проверки - файл локальный, поэтому загрузку можно повторить
+            bucketRegistry.invalidate(bucketName);
+            ensureBucketExists();
+            if (checksummer != null) {
+                checksummer.reset();
+            }
+            return putFile(source, size, contentType, storedFileName, checksummer, progress);
+        }
+    }
+
+
+
+
+    private String putFile(Path source, long size, String contentType, String storedFileName,
+                           Checksummer checksummer, LongConsumer progress) throws Exception {
+        if (size >= multipartThreshold.toBytes()) {
+            // Слоты MinIO берет MultipartUploadEngine - на каждый запрос, а не на весь файл
+            return uploadMetrics.storageCall("upload_file", () -> multipartUploadEngine.upload(
+                    source, size, bucketName, storedFileName, contentType, checksummer, progress));
+        }
+
+        InputStream fileStream = Files.newInputStream(source);
+        if (progress != null) {
+            fileStream = new ProgressInputStream(fileStream, progress);
+        }
+        try (InputStream inputStream = checksummer != null
+                ? new ChecksumInputStream(fileStream, checksummer)
+                : fileStream) {
             // Загружаем файл в MinIO
-            minioClient.putObject(
+            ObjectWriteResponse response = minioCall("upload_file", () -> minioClient.putObject(
                     PutObjectArgs.builder()
                             .bucket(bucketName)
                             .object(storedFileName)
-                            .stream(inputStream, file.getSize(), -1)
-                            .contentType(file.getContentType())
+                            .stream(inputStream, size, -1)
+                            .contentType(contentType)
                             .build()
-            );
+            ));
             
             log.info("Файл '{}' успешно загружен в MinIO", storedFileName);
-            return String.format("%s/%s", bucketName, storedFileName);
+            return response.etag();
         }
     }
 
 
 
+
+    @Override
+    public String uploadStream(InputStream inputStream, long size, String contentType,
+                               String storedFileName) throws Exception {
+        log.info("Потоковая загрузка файла '{}' в MinIO bucket '{}', размер: {}", storedFileName, bucketName, size);
+
+        ensureBucketExists();
+
+        // Поток нельзя прочитать повторно, поэтому при NoSuchBucket загрузка не повторяется -
+        // кэш сбрасывается, и bucket будет создан при следующем запросе клиента
+        ObjectWriteResponse response;
+        try {
+            response = minioCall("upload_stream", () -> minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(storedFileName)
+                            .stream(inputStream, size, size < 0 ? STREAM_PART_SIZE : -1)
+                            .contentType(contentType)
+                            .build()
+            ));
+        } catch (Exception e) {
+            throw invalidateIfNoSuchBucket(e);
+        }
+
+        log.info("Файл '{}' успешно загружен в MinIO потоком", storedFileName);
+        return response.etag();
+    }
+
+
+
     
     @Override
-    public void deleteFile(String storedFileName) throws Exception {
-        log.info("Удаление файла '{}' из MinIO bucket '{}'", storedFileName, bucketName);
-        
-        minioClient.removeObject(
-                RemoveObjectArgs.builder()
+    public String createMultipartUpload(String storedFileName, String contentType) throws Exception {
+        ensureBucketExists();
+        String uploadId;
+        try {
+            uploadId = minioCall("create_multipart",
+                    () -> multipartMinioClient.createMultipartUpload(bucketName, storedFileName, contentType));
+        } catch (Exception e) {
+            throw invalidateIfNoSuchBucket(e);
+        }
+        log.info("Создан multipart upload для '{}': {}", storedFileName, uploadId);
+        return uploadId;
+    }
+
+
+
+
+    @Override
+    public String uploadPart(String storedFileName, String uploadId, int partNumber,
+                             InputStream data, long length) throws Exception {
+        byte[] buffer = data.readNBytes(Math.toIntExact(length));
+        if (buffer.length != length) {
+            throw new EOFException(String.format("Часть %d: получено %d байт из %d", partNumber, buffer.length, length));
+        }
+        return minioCall("upload_part",
+                () -> multipartMinioClient.uploadPart(bucketName, storedFileName, uploadId, partNumber, buffer, length));
+    }
+
+
+
+
+    @Override
+    public String completeMultipartUpload(String storedFileName, String uploadId,
+                                          SortedMap<Integer, String> partEtags) throws Exception {
+        Part[] parts = partEtags.entrySet().stream()
+                .map(entry -> new Part(entry.getKey(), entry.getValue()))
+                .toArray(Part[]::new);
+        String etag = minioCall("complete_multipart",
+                () -> multipartMinioClient.completeMultipartUpload(bucketName, storedFileName, uploadId, parts)).etag();
+        log.info("Multipart upload '{}' собран из {} частей", storedFileName, parts.length);
+        return etag;
+    }
+
+
+
+
+    @Override
+    public void abortMultipartUpload(String storedFileName, String uploadId) throws Exception {
+        minioCall("abort_multipart", () -> {
+            multipartMinioClient.abortMultipartUpload(bucketName, storedFileName, uploadId);
+            return null;
+        });
+        log.info("Multipart upload '{}' отменен", storedFileName);
+    }
+
+
+
+
+    @Override
+    public InputStream getObject(String storedFileName, long offset, Long length) throws Exception {
+        GetObjectArgs.Builder args = GetObjectArgs.builder()
+                .bucket(bucketName)
+                .object(storedFileName);
+        if (offset > 0 || length != null) {
+            args.offset(offset).length(length);
+        }
+        // Слот держится до получения ответа; тело объекта вызывающий читает уже без слота
+        return minioCall("get_object", () -> minioClient.getObject(args.build()));
+    }
+
+
+
+
+    @Override
+    public String presignUpload(String storedFileName, Duration expiry) throws Exception {
+        ensureBucketExists();
+        return presignMinioClient.getPresignedObjectUrl(
+                GetPresignedObjectUrlArgs.builder()
+                        .method(Method.PUT)
+                        .bucket(bucketName)
+                        .object(storedFileName)
+                        .expiry(Math.toIntExact(expiry.toSeconds()))
+                        .build()
+        );
+    }
+
+
+
+
+    @Override
+    public String presignDownload(String storedFileName, String downloadFileName, Duration expiry) throws Exception {
+        String contentDisposition = ContentDisposition.attachment()
+                .filename(downloadFileName, StandardCharsets.UTF_8)
+                .build()
+                .toString();
+        return presignMinioClient.getPresignedObjectUrl(
+                GetPresignedObjectUrlArgs.builder()
+                        .method(Method.GET)
                         .bucket(bucketName)
                         .object(storedFileName)
+                        .expiry(Math.toIntExact(expiry.toSeconds()))
+                        .extraQueryParams(Map.of("response-content-disposition", contentDisposition))
                         .build()
         );
+    }
+
+
+
+
+    @Override
+    public Optional<StoredObjectInfo> statObject(String storedFileName) throws Exception {
+        // Отсутствие объекта - ожидаемый ответ, а не ошибка хранилища
+        return minioCall("stat_object", () -> {
+            try {
+                StatObjectResponse stat = minioClient.statObject(
+                        StatObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(storedFileName)
+                                .build()
+                );
+                return Optional.of(new StoredObjectInfo(stat.size(), stat.etag(), stat.contentType()));
+            } catch (ErrorResponseException e) {
+                if ("NoSuchKey".equals(e.errorResponse().code())) {
+                    return Optional.empty();
+                }
+                throw e;
+            }
+        });
+    }
+
+
+
+
+    @Override
+    public void deleteFile(String storedFileName) throws Exception {
+        log.info("Удаление файла '{}' из MinIO bucket '{}'", storedFileName, bucketName);
+        
+        minioCall("delete_object", () -> {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(storedFileName)
+                            .build()
+            );
+            return null;
+        });
         
         log.info("Файл '{}' успешно удален из MinIO", storedFileName);
     }
@@ -66,15 +305,73 @@ public class MinioStorageService implements StorageService {
 
 
 
+    @Override
+    public int deleteFiles(Collection<String> storedFileNames) throws Exception {
+        if (storedFileNames.isEmpty()) {
+            return 0;
+        }
+        List<DeleteObject> objects = storedFileNames.stream().map(DeleteObject::new).toList();
+
+        // removeObjects ленивый: запросы (до 1000 объектов в каждом) уходят при чтении результата
+        int failed = minioCall("delete_objects", () -> {
+            int errors = 0;
+            for (Result<DeleteError> result : minioClient.removeObjects(
+                    RemoveObjectsArgs.builder()
+                            .bucket(bucketName)
+                            .objects(objects)
+                            .build())) {
+                DeleteError error = result.get();
+                log.warn("Не удалось удалить объект '{}': {}", error.objectName(), error.message());
+                errors++;
+            }
+            return errors;
+        });
+
+        log.info("Удалено объектов из MinIO bucket '{}': {} из {}", bucketName, objects.size() - failed, objects.size());
+        return objects.size() - failed;
+    }
+
+
+
+
+    @Override
+    public List<StoredObjectSummary> listObjects(String startAfter, int limit) throws Exception {
+        ListObjectsArgs.Builder args = ListObjectsArgs.builder()
+                .bucket(bucketName)
+                .recursive(true)
+                .maxKeys(Math.min(limit, 1000));
+        if (startAfter != null) {
+            args.startAfter(startAfter);
+        }
+
+        // Следующая страница листинга запрашивается только при переходе к ней
+        return minioCall("list_objects", () -> {
+            List<StoredObjectSummary> objects = new ArrayList<>();
+            for (Result<Item> result : minioClient.listObjects(args.build())) {
+                Item item = result.get();
+                if (!item.isDir()) {
+                    objects.add(new StoredObjectSummary(item.objectName(), item.size(), item.lastModified().toInstant()));
+                }
+                if (objects.size() >= limit) {
+                    break;
+                }
+            }
+            return objects;
+        });
+    }
+
+
+
+
     @Override
     public boolean fileExists(String storedFileName) {
         try {
-            minioClient.statObject(
+            downstreamLimiter.call(DownstreamLimiter.Downstream.MINIO, () -> minioClient.statObject(
                     StatObjectArgs.builder()
                             .bucket(bucketName)
                             .object(storedFileName)
                             .build()
-            );
+            ));
             return true;
         } catch (ErrorResponseException e) {
             if (e.errorResponse().code().equals("NoSuchKey")) {
@@ -93,36 +390,41 @@ public class MinioStorageService implements StorageService {
 
     @Override
     public String calculateChecksum(MultipartFile file) throws Exception {
-        log.debug("Вычисление контрольной суммы для файла '{}'", file.getOriginalFilename());
+        log.debug("Вычисление контрольной суммы ({}) для файла '{}'", checksumAlgorithm, file.getOriginalFilename());
         
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        try (InputStream is = file.getInputStream()) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                md.update(buffer, 0, bytesRead);
-            }
+        try (ChecksumInputStream is = new ChecksumInputStream(file.getInputStream(), checksumAlgorithm.newChecksummer())) {
+            is.transferTo(OutputStream.nullOutputStream());
+            String checksum = is.getChecksum();
+            log.debug("Контрольная сумма: {}", checksum);
+            return checksum;
         }
-        
-        String checksum = HexFormat.of().formatHex(md.digest());
-        log.debug("Контрольная сумма: {}", checksum);
-        return checksum;
+    }
+
+
+
+
+    // Один запрос к MinIO (или последовательность запросов ленивого ответа) под слотом MINIO,
+    // с метриками по операции.
+    private <T> T minioCall(String operation, ThrowingSupplier<T> action) throws Exception {
+        return downstreamLimiter.call(DownstreamLimiter.Downstream.MINIO,
+                () -> uploadMetrics.storageCall(operation, action));
     }
 
 
 
 
     private void ensureBucketExists() throws Exception {
-        boolean exists = minioClient.bucketExists(
-                BucketExistsArgs.builder().bucket(bucketName).build()
-        );
-        
-        if (!exists) {
-            log.info("Bucket '{}' не существует, создаем...", bucketName);
-            minioClient.makeBucket(
-                    MakeBucketArgs.builder().bucket(bucketName).build()
-            );
-            log.info("Bucket '{}' успешно создан", bucketName);
+        bucketRegistry.ensureExists(bucketName);
+    }
+
+
+
+
+    // Сбрасывает кэш bucket'а, если операция упала из-за его отсутствия.
+    private Exception invalidateIfNoSuchBucket(Exception e) {
+        if (BucketRegistry.isNoSuchBucket(e)) {
+            bucketRegistry.invalidate(bucketName);
         }
+        return e;
     }
 }
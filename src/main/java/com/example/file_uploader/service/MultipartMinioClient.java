@@ -0,0 +1,64 @@
+package com.example.file_uploader.service;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.MinioAsyncClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.messages.Part;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * MinIO клиент с доступом к низкоуровневому multipart API.
+ *
+ * В SDK методы createMultipartUpload/uploadPart/completeMultipartUpload защищенные
+ * и используются только внутри putObject, который грузит части последовательно.
+ * Этот класс открывает их для MultipartUploadEngine.
+ */
+public class MultipartMinioClient extends MinioAsyncClient {
+
+    public MultipartMinioClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    public String createMultipartUpload(String bucketName, String objectName, String contentType) throws Exception {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (contentType != null) {
+            headers.put("Content-Type", contentType);
+        }
+        return await(createMultipartUploadAsync(bucketName, null, objectName, headers, HashMultimap.create()))
+                .result()
+                .uploadId();
+    }
+
+    // Загружает одну часть. data может быть длиннее length - отправляются только первые length байт.
+    public String uploadPart(String bucketName, String objectName, String uploadId,
+                             int partNumber, byte[] data, long length) throws Exception {
+        return await(uploadPartAsync(bucketName, null, objectName, data, length, uploadId, partNumber,
+                HashMultimap.create(), HashMultimap.create()))
+                .etag();
+    }
+
+    public ObjectWriteResponse completeMultipartUpload(String bucketName, String objectName,
+                                                       String uploadId, Part[] parts) throws Exception {
+        return await(completeMultipartUploadAsync(bucketName, null, objectName, uploadId, parts,
+                HashMultimap.create(), HashMultimap.create()));
+    }
+
+    public void abortMultipartUpload(String bucketName, String objectName, String uploadId) throws Exception {
+        await(abortMultipartUploadAsync(bucketName, null, objectName, uploadId,
+                HashMultimap.create(), HashMultimap.create()));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.file_uploader.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.messages.Part;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.LongConsumer;
+
+/**
+ * Параллельная multipart-загрузка больших файлов в MinIO.
+ *
+ * Файл читается последовательно позиционным чтением (FileChannel.read(buffer, position)),
+ * каждая часть сразу отправляется на пул multipartUploadExecutor, так что в сети одновременно
+ * находится до parallelism частей. Последовательное чтение позволяет вычислять контрольную
+ * сумму на том же проходе. Количество буферов в памяти ограничено parallelism на весь узел.
+ *
+ * Каждая часть повторяется при ошибке до max-part-retries раз; если часть так и не загрузилась,
+ * multipart upload отменяется (abortMultipartUpload), чтобы не оставлять висящие части в MinIO.
+ *
+ * Каждый запрос к MinIO (создание, часть, сборка, отмена) берет свой слот MINIO в DownstreamLimiter,
+ * поэтому большой файл не держит слот на всю передачу, а ожидание повтора части слот не занимает.
+ */
+@Component
+@Slf4j
+public class MultipartUploadEngine {
+
+    // Ограничение S3 на количество частей в одном объекте.
+    private static final int MAX_PARTS = 10_000;
+
+    private final MultipartMinioClient client;
+    private final Executor multipartUploadExecutor;
+    private final int partSize;
+    private final int maxPartRetries;
+    private final long retryBackoffMs;
+    private final Semaphore partSlots;
+    private final DownstreamLimiter downstreamLimiter;
+    private final MeterRegistry meterRegistry;
+    private final Queue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+
+    public MultipartUploadEngine(MultipartMinioClient client,
+                                 @Qualifier("multipartUploadExecutor") Executor multipartUploadExecutor,
+                                 @Value("${minio.multipart.part-size:16MB}") DataSize partSize,
+                                 @Value("${minio.multipart.parallelism:4}") int parallelism,
+                                 @Value("${minio.multipart.max-part-retries:3}") int maxPartRetries,
+                                 @Value("${minio.multipart.retry-backoff-ms:200}") long retryBackoffMs,
+                                 DownstreamLimiter downstreamLimiter,
+                                 MeterRegistry meterRegistry) {
+        if (partSize.toBytes() < DataSize.ofMegabytes(5).toBytes()) {
+            throw new IllegalArgumentException("minio.multipart.part-size не может быть меньше 5MB");
+        }
+        this.client = client;
+        this.multipartUploadExecutor = multipartUploadExecutor;
+        this.partSize = Math.toIntExact(partSize.toBytes());
+        this.maxPartRetries = maxPartRetries;
+        this.retryBackoffMs = retryBackoffMs;
+        this.partSlots = new Semaphore(parallelism);
+        this.downstreamLimiter = downstreamLimiter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Загружает файл частями и возвращает ETag собранного объекта.
+    // checksummer (может быть null) получает все байты файла по порядку,
+    // progress (может быть null) - размер каждой загруженной части.
+    public String upload(Path source, long size, String bucketName, String objectName,
+                         String contentType, Checksummer checksummer, LongConsumer progress) throws Exception {
+        int effectivePartSize = effectivePartSize(size);
+        int partCount = (int) ((size + effectivePartSize - 1) / effectivePartSize);
+        log.info("Multipart-загрузка '{}': {} байт, {} частей по {} байт", objectName, size, partCount, effectivePartSize);
+
+        String uploadId = minio(() -> client.createMultipartUpload(bucketName, objectName, contentType));
+        List<CompletableFuture<Part>> parts = new ArrayList<>(partCount);
+
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                failFastIfAnyPartFailed(parts);
+
+                long position = (long) (partNumber - 1) * effectivePartSize;
+                int length = (int) Math.min(effectivePartSize, size - position);
+
+                partSlots.acquire();
+                byte[] buffer = null;
+                try {
+                    buffer = takeBuffer(effectivePartSize);
+                    readFully(channel, buffer, length, position);
+                    if (checksummer != null) {
+                        checksummer.update(buffer, 0, length);
+                    }
+                    // Последняя часть короче буфера - отправляем копию точного размера
+                    byte[] data = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+                    parts.add(submitPart(bucketName, objectName, uploadId, partNumber, data, buffer, progress));
+                } catch (Exception e) {
+                    releaseBuffer(buffer);
+                    throw e;
+                }
+            }
+
+            CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).join();
+            Part[] completed = parts.stream().map(CompletableFuture::join).toArray(Part[]::new);
+
+            String etag = minio(() -> client.completeMultipartUpload(bucketName, objectName, uploadId, completed)).etag();
+            log.info("Multipart-загрузка '{}' завершена, ETag: {}", objectName, etag);
+            return etag;
+        } catch (Exception e) {
+            abort(bucketName, objectName, uploadId, parts);
+            throw unwrap(e);
+        }
+    }
+
+
+
+
+    private CompletableFuture<Part> submitPart(String bucketName, String objectName, String uploadId,
+                                               int partNumber, byte[] data, byte[] buffer,
+                                               LongConsumer progress) {
+        return CompletableFuture
+                .supplyAsync(() -> uploadPartWithRetry(bucketName, objectName, uploadId, partNumber, data),
+                        multipartUploadExecutor)
+                .whenComplete((part, error) -> {
+                    releaseBuffer(buffer);
+                    if (error == null && progress != null) {
+                        progress.accept(data.length);
+                    }
+                });
+    }
+
+
+
+
+    private Part uploadPartWithRetry(String bucketName, String objectName, String uploadId,
+                                     int partNumber, byte[] data) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                String etag = minio(() -> client.uploadPart(bucketName, objectName, uploadId, partNumber, data, data.length));
+                return new Part(partNumber, etag);
+            } catch (Exception e) {
+                meterRegistry.counter("storage.errors", "operation", "upload_part",
+                        "code", UploadMetrics.errorCode(e)).increment();
+                if (attempt > maxPartRetries) {
+                    throw new CompletionException(e);
+                }
+                log.warn("Ошибка загрузки части {} объекта '{}' (попытка {}): {}",
+                        partNumber, objectName, attempt, e.getMessage());
+                sleepBeforeRetry(attempt);
+            }
+        }
+    }
+
+
+
+
+    // Ждет завершения уже отправленных частей и отменяет multipart upload.
+    private void abort(String bucketName, String objectName, String uploadId, List<CompletableFuture<Part>> parts) {
+        CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                .handle((result, error) -> null)
+                .join();
+        try {
+            minio(() -> {
+                client.abortMultipartUpload(bucketName, objectName, uploadId);
+                return null;
+            });
+            log.info("Multipart-загрузка '{}' отменена", objectName);
+        } catch (Exception e) {
+            log.error("Не удалось отменить multipart-загрузку '{}' ({}): {}", objectName, uploadId, e.getMessage());
+        }
+    }
+
+
+
+
+    // Один запрос к MinIO под слотом MINIO.
+    private <T> T minio(Callable<T> request) throws Exception {
+        return downstreamLimiter.call(DownstreamLimiter.Downstream.MINIO, request);
+    }
+
+
+
+
+    // Увеличивает размер части, если файл не помещается в 10000 частей.
+    private int effectivePartSize(long size) {
+        long minPartSize = (size + MAX_PARTS - 1) / MAX_PARTS;
+        return (int) Math.max(partSize, minPartSize);
+    }
+
+
+
+
+    private byte[] takeBuffer(int size) {
+        if (size != partSize) {
+            return new byte[size];
+        }
+        byte[] buffer = freeBuffers.poll();
+        return buffer != null ? buffer : new byte[partSize];
+    }
+
+
+
+
+    private void releaseBuffer(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (buffer.length == partSize) {
+            freeBuffers.offer(buffer);
+        }
+        partSlots.release();
+    }
+
+
+
+
+    private static void readFully(FileChannel channel, byte[] buffer, int length, long position) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position + target.position());
+            if (read < 0) {
+                throw new EOFException("Файл короче ожидаемого размера");
+            }
+        }
+    }
+
+
+
+
+    private static void failFastIfAnyPartFailed(List<CompletableFuture<Part>> parts) {
+        for (CompletableFuture<Part> part : parts) {
+            if (part.isCompletedExceptionally()) {
+                part.join();
+            }
+        }
+    }
+
+
+
+
+    private void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(retryBackoffMs << (attempt - 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+
+
+
+    private static Exception unwrap(Exception e) {
+        if (e instanceof CompletionException && e.getCause() instanceof Exception cause) {
+            return cause;
+        }
+        return e;
+    }
+}
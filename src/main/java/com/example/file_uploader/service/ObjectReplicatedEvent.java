@@ -0,0 +1,5 @@
+package com.example.file_uploader.service;
+
+// Объект скопирован с локального уровня хранилища в MinIO (публикует TieredStorageService).
+public record ObjectReplicatedEvent(String storedFileName) {
+}
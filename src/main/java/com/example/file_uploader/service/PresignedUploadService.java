@@ -0,0 +1,210 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.dto.FileUploadResponse;
+import com.example.file_uploader.dto.PresignedUrlResponse;
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.exception.UploadConflictException;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository.StatusUpdate;
+import com.example.file_uploader.repository.FileMetadataRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Прямая загрузка и скачивание файлов через presigned URL.
+ *
+ * Сервер только создает запись о файле и подписывает URL, а содержимое файла
+ * передается между клиентом и MinIO напрямую, минуя JVM. После загрузки клиент
+ * вызывает complete: наличие и размер объекта проверяются через statObject,
+ * и файл переводится в COMPLETED.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresignedUploadService {
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileUploadService fileUploadService;
+    private final StorageService storageService;
+    private final IdempotencyService idempotencyService;
+    private final FileStatusUpdater fileStatusUpdater;
+    private final UploadMetrics uploadMetrics;
+
+    @Value("${minio.bucket-name}")
+    private String bucketName;
+
+    @Value("${upload.presigned.expiry:15m}")
+    private Duration expiry;
+
+    // Ограничение S3 на размер объекта, загружаемого одним PUT.
+    @Value("${upload.presigned.max-size:5GB}")
+    private DataSize maxSize;
+
+    @Value("${upload.checksum.algorithm:MD5}")
+    private ChecksumAlgorithm checksumAlgorithm;
+
+    // Создает запись PENDING и возвращает URL для загрузки файла методом PUT.
+    // Повторный запрос с тем же ключом выдает новый URL для того же объекта, пока файл не загружен.
+    public PresignedUrlResponse createUpload(String idempotencyKey, String originalFileName,
+                                             String contentType, long size) throws Exception {
+        if (size <= 0 || size > maxSize.toBytes()) {
+            throw new IllegalArgumentException(String.format(
+                    "Размер файла должен быть от 1 до %d байт", maxSize.toBytes()));
+        }
+
+        Optional<FileMetadata> existingFile = idempotencyService.findExisting(idempotencyKey);
+        if (existingFile.isPresent()) {
+            log.info("ИДЕМПОТЕНТНОСТЬ: Найдена существующая запись для idempotencyKey='{}', status={}",
+                    idempotencyKey, existingFile.get().getStatus());
+            return buildExistingUploadResponse(existingFile.get());
+        }
+
+        IdempotencyService.Claim claim = idempotencyService.claim(FileMetadata.builder()
+                .idempotencyKey(idempotencyKey)
+                .originalFileName(originalFileName)
+                .storedFileName(FileUploadService.generateStoredFileName(originalFileName))
+                .contentType(contentType)
+                .fileSize(size)
+                .bucketName(bucketName)
+                .status(FileStatus.PENDING)
+                .build());
+        if (!claim.created()) {
+            return buildExistingUploadResponse(claim.metadata());
+        }
+
+        FileMetadata metadata = claim.metadata();
+        String url = storageService.presignUpload(metadata.getStoredFileName(), expiry);
+        log.info("Выдан presigned URL для загрузки файла {} ({} байт)", metadata.getId(), size);
+        return buildResponse(metadata, "PUT", url);
+    }
+
+
+
+
+    // Проверяет, что клиент загрузил объект, и переводит файл в COMPLETED.
+    public Optional<FileUploadResponse> complete(String fileId) throws Exception {
+        Optional<FileMetadata> found = fileMetadataRepository.findById(fileId);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+
+        FileMetadata metadata = found.get();
+        if (metadata.getStatus() == FileStatus.COMPLETED) {
+            return fileUploadService.getFileById(fileId);
+        }
+        if (metadata.getStatus() != FileStatus.PENDING) {
+            throw new UploadConflictException("Файл в статусе " + metadata.getStatus());
+        }
+
+        StoredObjectInfo object = storageService.statObject(metadata.getStoredFileName())
+                .orElseThrow(() -> new UploadConflictException("Объект еще не загружен в хранилище"));
+
+        if (metadata.getFileSize() != null && object.size() != metadata.getFileSize()) {
+            String error = String.format("Размер объекта %d не совпадает с заявленным %d",
+                    object.size(), metadata.getFileSize());
+            // Объект удаляется, только если файл все еще ждал загрузки: иначе им уже распорядился
+            // параллельный complete() или сборщик мусора
+            if (fileStatusUpdater.apply(StatusUpdate.of(fileId, FileStatus.PENDING, FileStatus.FAILED, error))) {
+                storageService.deleteFile(metadata.getStoredFileName());
+            }
+            throw new UploadConflictException(error);
+        }
+
+        // Условный переход PENDING -> COMPLETED: файл, который тем временем перевели в FAILED
+        // (и удалили его объект), не оживает
+        if (!fileStatusUpdater.apply(new StatusUpdate(fileId, FileStatus.PENDING, FileStatus.COMPLETED, null,
+                checksumFromEtag(object.etag()), null, null, object.size(), null, null, LocalDateTime.now()))) {
+            return completedOrConflict(fileId);
+        }
+        if (metadata.getContentType() == null && object.contentType() != null) {
+            fileMetadataRepository.fillMissingContentType(fileId, object.contentType());
+        }
+        // Файл передан клиентом напрямую в MinIO - скорость передачи узлу неизвестна
+        uploadMetrics.recordTransfer(UploadMetrics.UploadPath.PRESIGNED, object.size(), 0);
+
+        log.info("Файл {} загружен напрямую в хранилище, статус: COMPLETED", fileId);
+        return fileUploadService.getFileById(fileId);
+    }
+
+
+
+
+    // Смена статуса не применилась: повторный complete() после успешного получает файл, остальные - 409.
+    private Optional<FileUploadResponse> completedOrConflict(String fileId) {
+        Optional<FileUploadResponse> current = fileUploadService.getFileById(fileId);
+        if (current.isPresent() && current.get().getStatus() == FileStatus.COMPLETED) {
+            return current;
+        }
+        throw new UploadConflictException("Файл в статусе " + current.map(FileUploadResponse::getStatus).orElse(null));
+    }
+
+
+
+
+    // Возвращает URL для скачивания файла напрямую из хранилища.
+    public Optional<PresignedUrlResponse> createDownloadUrl(String fileId) throws Exception {
+        Optional<FileMetadata> found = fileMetadataRepository.findById(fileId);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+
+        FileMetadata metadata = found.get();
+        if (!metadata.getStatus().isCompleted()) {
+            throw new UploadConflictException("Файл еще не загружен, статус: " + metadata.getStatus());
+        }
+
+        // Сжатый объект из хранилища пришлось бы распаковывать клиенту, а объекта только на локальном
+        // уровне в MinIO еще нет - такие файлы отдает приложение
+        if (metadata.getCompressionCodec() != null || metadata.getStatus() == FileStatus.COMPLETED_LOCAL) {
+            return Optional.of(buildResponse(metadata, "GET", "/api/files/" + fileId + "/content"));
+        }
+
+        String url = storageService.presignDownload(metadata.getStoredFileName(), metadata.getOriginalFileName(), expiry);
+        return Optional.of(buildResponse(metadata, "GET", url));
+    }
+
+
+
+
+    // Для повторного запроса: новый URL, пока файл ожидает загрузки, иначе только статус.
+    private PresignedUrlResponse buildExistingUploadResponse(FileMetadata metadata) throws Exception {
+        if (metadata.getStatus() != FileStatus.PENDING) {
+            return buildResponse(metadata, "PUT", null);
+        }
+        return buildResponse(metadata, "PUT", storageService.presignUpload(metadata.getStoredFileName(), expiry));
+    }
+
+
+
+
+    // ETag объекта, загруженного одним PUT, - это MD5 содержимого. Для других алгоритмов
+    // контрольную сумму без чтения объекта получить нельзя.
+    private String checksumFromEtag(String etag) {
+        if (checksumAlgorithm != ChecksumAlgorithm.MD5 || etag == null) {
+            return null;
+        }
+        String normalizedEtag = etag.replace("\"", "");
+        return normalizedEtag.contains("-") ? null : normalizedEtag;
+    }
+
+
+
+
+    private PresignedUrlResponse buildResponse(FileMetadata metadata, String method, String url) {
+        return PresignedUrlResponse.builder()
+                .fileId(metadata.getId())
+                .idempotencyKey(metadata.getIdempotencyKey())
+                .status(metadata.getStatus())
+                .method(method)
+                .url(url)
+                .expiresAt(url != null ? LocalDateTime.now().plus(expiry) : null)
+                .build();
+    }
+}
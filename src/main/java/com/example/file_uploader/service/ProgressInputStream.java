@@ -0,0 +1,21 @@
+package com.example.file_uploader.service;
+
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+// Поток, сообщающий о каждой прочитанной порции байт (прогресс передачи в хранилище).
+public class ProgressInputStream extends CountingInputStream {
+
+    private final LongConsumer progress;
+
+    public ProgressInputStream(InputStream in, LongConsumer progress) {
+        super(in);
+        this.progress = progress;
+    }
+
+    @Override
+    protected void onBytesRead(long count) {
+        super.onBytesRead(count);
+        progress.accept(count);
+    }
+}
@@ -0,0 +1,426 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.exception.StorageUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.ServerException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongConsumer;
+
+/**
+ * Слой устойчивости вокруг StorageService: срок на каждую операцию, повторы с экспоненциальной
+ * задержкой и случайным разбросом (full jitter) и circuit breaker.
+ *
+ * Оборачивает все бины StorageService (см. StorageResilienceConfig), в том числе заглушки в тестах.
+ * - Операция выполняется в отдельном виртуальном потоке; по истечении срока поток прерывается
+ *   (блокирующий сокет виртуального потока при этом закрывается), вызывающий получает TimeoutException.
+ * - Повторяются только временные ошибки (5xx, SlowDown, обрыв соединения, истекший срок) и только
+ *   у операций, которые можно повторить: поток запроса и часть возобновляемой загрузки прочитать
+ *   второй раз нельзя.
+ * - Пока цепь разомкнута, вызовы сразу завершаются StorageUnavailableException (503 для клиента,
+ *   задача очереди откладывается без траты попытки).
+ */
+@Slf4j
+public class ResilientStorageService implements StorageService {
+
+    // Коды S3, после которых запрос имеет смысл повторить.
+    private static final Set<String> TRANSIENT_CODES = Set.of(
+            "InternalError", "ServiceUnavailable", "SlowDown", "RequestTimeout",
+            "OperationTimedOut", "XMinioServerNotInitialized");
+
+    // Имя объекта для пробного вызова circuit breaker; объекта с таким именем нет.
+    private static final String PROBE_OBJECT = ".circuit-breaker-probe";
+
+    // Попытка не остановилась после отмены по сроку: повторять операцию, пока она работает, нельзя.
+    static class AbandonedAttemptException extends TimeoutException {
+
+        AbandonedAttemptException(String message) {
+            super(message);
+        }
+    }
+
+    // Сроки, повторы и параметры circuit breaker (storage.resilience.*).
+    public record Policy(Duration metadataTimeout, Duration transferTimeout, DataSize minThroughput,
+                         Duration maxTransferTimeout, int maxAttempts, Duration initialBackoff,
+                         Duration maxBackoff, int failureThreshold, Duration openDuration) {
+    }
+
+    private final StorageService delegate;
+    private final String name;
+    private final Policy policy;
+    private final CircuitBreaker circuitBreaker;
+    private final ExecutorService callExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final MeterRegistry meterRegistry;
+    private final Counter rejected;
+
+    public ResilientStorageService(StorageService delegate, String name, Policy policy, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.name = name;
+        this.policy = policy;
+        this.circuitBreaker = new CircuitBreaker(policy.failureThreshold(), policy.openDuration());
+        this.meterRegistry = meterRegistry;
+        this.rejected = Counter.builder("storage.circuit.rejected")
+                .description("Обращения к хранилищу, отклоненные разомкнутым circuit breaker")
+                .tag("storage", name)
+                .register(meterRegistry);
+        Gauge.builder("storage.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("Состояние circuit breaker: 0 - CLOSED, 1 - HALF_OPEN, 2 - OPEN")
+                .tag("storage", name)
+                .register(meterRegistry);
+    }
+
+    public StorageService getDelegate() {
+        return delegate;
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    @Override
+    public String uploadFile(Path source, long size, String contentType, String storedFileName,
+                             Checksummer checksummer, LongConsumer progress) throws Exception {
+        // Файл локальный - повтор читает его заново, контрольная сумма считается с начала.
+        // Сброс безопасен: прерванная попытка к этому времени остановлена (см. callWithTimeout)
+        return execute("upload_file", transferTimeout(size), true,
+                () -> {
+                    if (checksummer != null) {
+                        checksummer.reset();
+                    }
+                },
+                () -> delegate.uploadFile(source, size, contentType, storedFileName, checksummer, progress));
+    }
+
+
+
+
+    @Override
+    public String uploadStream(InputStream inputStream, long size, String contentType,
+                               String storedFileName) throws Exception {
+        return execute("upload_stream", transferTimeout(size), false, null,
+                () -> delegate.uploadStream(inputStream, size, contentType, storedFileName));
+    }
+
+
+
+
+    @Override
+    public String createMultipartUpload(String storedFileName, String contentType) throws Exception {
+        return execute("create_multipart", policy.metadataTimeout(), true, null,
+                () -> delegate.createMultipartUpload(storedFileName, contentType));
+    }
+
+
+
+
+    @Override
+    public String uploadPart(String storedFileName, String uploadId, int partNumber,
+                             InputStream data, long length) throws Exception {
+        return execute("upload_part", transferTimeout(length), false, null,
+                () -> delegate.uploadPart(storedFileName, uploadId, partNumber, data, length));
+    }
+
+
+
+
+    @Override
+    public String completeMultipartUpload(String storedFileName, String uploadId,
+                                          SortedMap<Integer, String> partEtags) throws Exception {
+        // Сборка объекта из многих частей занимает у MinIO заметное время
+        return execute("complete_multipart", policy.transferTimeout(), true, null,
+                () -> delegate.completeMultipartUpload(storedFileName, uploadId, partEtags));
+    }
+
+
+
+
+    @Override
+    public void abortMultipartUpload(String storedFileName, String uploadId) throws Exception {
+        execute("abort_multipart", policy.metadataTimeout(), true, null, () -> {
+            delegate.abortMultipartUpload(storedFileName, uploadId);
+            return null;
+        });
+    }
+
+
+
+
+    // Срок ограничивает открытие потока (до первого байта), а не чтение содержимого.
+    @Override
+    public InputStream getObject(String storedFileName, long offset, Long length) throws Exception {
+        return execute("get_object", policy.metadataTimeout(), true, null,
+                () -> delegate.getObject(storedFileName, offset, length));
+    }
+
+
+
+
+    // Подпись URL вычисляется локально, без обращения к хранилищу.
+    @Override
+    public String presignUpload(String storedFileName, Duration expiry) throws Exception {
+        return delegate.presignUpload(storedFileName, expiry);
+    }
+
+
+
+
+    @Override
+    public String presignDownload(String storedFileName, String downloadFileName, Duration expiry) throws Exception {
+        return delegate.presignDownload(storedFileName, downloadFileName, expiry);
+    }
+
+
+
+
+    @Override
+    public Optional<StoredObjectInfo> statObject(String storedFileName) throws Exception {
+        return execute("stat_object", policy.metadataTimeout(), true, null,
+                () -> delegate.statObject(storedFileName));
+    }
+
+
+
+
+    @Override
+    public void deleteFile(String storedFileName) throws Exception {
+        execute("delete_object", policy.metadataTimeout(), true, null, () -> {
+            delegate.deleteFile(storedFileName);
+            return null;
+        });
+    }
+
+
+
+
+    @Override
+    public int deleteFiles(Collection<String> storedFileNames) throws Exception {
+        return execute("delete_objects", policy.transferTimeout(), true, null,
+                () -> delegate.deleteFiles(storedFileNames));
+    }
+
+
+
+
+    @Override
+    public List<StoredObjectSummary> listObjects(String startAfter, int limit) throws Exception {
+        return execute("list_objects", policy.metadataTimeout(), true, null,
+                () -> delegate.listObjects(startAfter, limit));
+    }
+
+
+
+
+    // Ошибки хранилища обрабатывает сам делегат (возвращает false).
+    @Override
+    public boolean fileExists(String storedFileName) {
+        return delegate.fileExists(storedFileName);
+    }
+
+
+
+
+    @Override
+    public boolean isDurable(String storedFileName) {
+        return delegate.isDurable(storedFileName);
+    }
+
+
+
+
+    @Override
+    public String calculateChecksum(MultipartFile file) throws Exception {
+        return delegate.calculateChecksum(file);
+    }
+
+
+
+
+    // Выполняет операцию со сроком timeout. Временные ошибки повторяются (если retryable),
+    // перед каждым повтором вызывается beforeRetry.
+    private <T> T execute(String operation, Duration timeout, boolean retryable,
+                          Runnable beforeRetry, Callable<T> call) throws Exception {
+        boolean shortCall = timeout.compareTo(policy.metadataTimeout()) <= 0;
+        for (int attempt = 1; ; attempt++) {
+            boolean permitted = shortCall
+                    ? circuitBreaker.tryAcquire()
+                    : circuitBreaker.tryAcquireClosed() || probe() && circuitBreaker.tryAcquireClosed();
+            if (!permitted) {
+                rejected.increment();
+                throw new StorageUnavailableException(
+                        "Хранилище недоступно, повторите запрос позже", circuitBreaker.retryAfter(), null);
+            }
+
+            try {
+                T result = callWithTimeout(operation, timeout, call);
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (Exception e) {
+                if (!isTransient(e)) {
+                    if (e instanceof ErrorResponseException) {
+                        circuitBreaker.onSuccess();
+                    } else {
+                        circuitBreaker.onIgnored();
+                    }
+                    throw e;
+                }
+
+                circuitBreaker.onFailure();
+                if (!retryable || attempt >= policy.maxAttempts() || e instanceof AbandonedAttemptException) {
+                    log.warn("Хранилище {}: операция {} не выполнена за {} попыток: {}",
+                            name, operation, attempt, e.getMessage());
+                    throw new StorageUnavailableException("Хранилище временно недоступно: " + e.getMessage(),
+                            circuitBreaker.retryAfter(), e);
+                }
+
+                long backoffMs = backoffMs(attempt);
+                log.debug("Хранилище {}: операция {}, попытка {} не удалась ({}), повтор через {} мс",
+                        name, operation, attempt, e.getMessage(), backoffMs);
+                meterRegistry.counter("storage.retries", "storage", name, "operation", operation).increment();
+                Thread.sleep(backoffMs);
+                if (beforeRetry != null) {
+                    beforeRetry.run();
+                }
+            }
+        }
+    }
+
+
+
+
+    // Пробный вызов в HALF_OPEN вместо длинной операции (передача со сроком до max-transfer-timeout):
+    // statObject служебного имени со сроком metadata-timeout. Любой ответ хранилища, в том числе
+    // отсутствие объекта, замыкает цепь. true - цепь замкнута, длинную операцию можно выполнять.
+    private boolean probe() {
+        if (!circuitBreaker.tryAcquire()) {
+            return false;
+        }
+        try {
+            callWithTimeout("probe", policy.metadataTimeout(), () -> delegate.statObject(PROBE_OBJECT));
+            circuitBreaker.onSuccess();
+            return true;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (isTransient(e)) {
+                circuitBreaker.onFailure();
+            } else if (e instanceof ErrorResponseException) {
+                circuitBreaker.onSuccess();
+                return true;
+            } else {
+                circuitBreaker.onIgnored();
+            }
+            log.debug("Хранилище {}: пробный вызов не удался: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+
+
+
+    // Прерванная по сроку попытка может еще читать файл, обновлять контрольную сумму и писать тот же
+    // объект. Повтор начинается только после ее остановки: если она не остановилась за metadata-timeout,
+    // выбрасывается AbandonedAttemptException и повтора не будет.
+    private <T> T callWithTimeout(String operation, Duration timeout, Callable<T> call) throws Exception {
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        Future<T> future = callExecutor.submit(() -> {
+            try {
+                return call.call();
+            } finally {
+                finished.complete(null);
+            }
+        });
+        try {
+            return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            String message = String.format("Операция %s не завершилась за %d мс", operation, timeout.toMillis());
+            try {
+                finished.get(policy.metadataTimeout().toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException stillRunning) {
+                throw new AbandonedAttemptException(message + " и не остановилась после отмены");
+            }
+            throw new TimeoutException(message);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+
+
+
+    // Срок передачи: базовый срок плюс время передачи size байт на минимальной скорости.
+    // Размер неизвестен (-1) - максимальный срок.
+    Duration transferTimeout(long size) {
+        if (size < 0) {
+            return policy.maxTransferTimeout();
+        }
+        long transferMs = size * 1000 / Math.max(1, policy.minThroughput().toBytes());
+        Duration timeout = policy.transferTimeout().plusMillis(transferMs);
+        return timeout.compareTo(policy.maxTransferTimeout()) > 0 ? policy.maxTransferTimeout() : timeout;
+    }
+
+
+
+
+    // Full jitter: случайная задержка от 0 до initial-backoff * 2^(attempt-1), не больше max-backoff.
+    private long backoffMs(int attempt) {
+        long ceiling = Math.min(policy.maxBackoff().toMillis(),
+                policy.initialBackoff().toMillis() << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+
+
+
+    static boolean isTransient(Throwable error) {
+        if (error instanceof CompletionException || error instanceof ExecutionException) {
+            return error.getCause() != null && isTransient(error.getCause());
+        }
+        if (error instanceof ErrorResponseException e) {
+            return e.errorResponse() != null && TRANSIENT_CODES.contains(e.errorResponse().code());
+        }
+        if (error instanceof ServerException || error instanceof TimeoutException) {
+            return true;
+        }
+        // Ошибки чтения локального файла и короткое тело запроса - не сбой хранилища
+        if (error instanceof NoSuchFileException || error instanceof FileNotFoundException
+                || error instanceof EOFException) {
+            return false;
+        }
+        return error instanceof IOException;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.dto.FileUploadResponse;
+import com.example.file_uploader.dto.UploadSessionResponse;
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.entity.UploadSession;
+import com.example.file_uploader.entity.UploadSessionPart;
+import com.example.file_uploader.entity.UploadSessionStatus;
+import com.example.file_uploader.exception.UploadConflictException;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository.StatusUpdate;
+import com.example.file_uploader.repository.FileMetadataRepository;
+import com.example.file_uploader.repository.UploadSessionPartRepository;
+import com.example.file_uploader.repository.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Возобновляемая (chunked, в стиле tus) загрузка файлов.
+ *
+ * Клиент создает сессию, отправляет части по смещениям и при обрыве связи
+ * узнает текущее смещение через HEAD, после чего продолжает с него.
+ * Каждая часть сразу становится частью S3 multipart upload, поэтому
+ * сервер ничего не хранит на диске, а повторно передается только оборванная часть.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResumableUploadService {
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadSessionPartRepository uploadSessionPartRepository;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileUploadService fileUploadService;
+    private final FileStatusUpdater fileStatusUpdater;
+    private final StorageService storageService;
+    private final IdempotencyService idempotencyService;
+    private final UploadEventBus uploadEventBus;
+    private final UploadMetrics uploadMetrics;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${minio.bucket-name}")
+    private String bucketName;
+
+    // Размер части. S3 требует не меньше 5MB для всех частей, кроме последней.
+    @Value("${upload.resumable.chunk-size:8MB}")
+    private DataSize chunkSize;
+
+    // Создает сессию загрузки. Повторный запрос с тем же ключом возвращает существующую сессию.
+    public UploadSessionResponse createSession(String idempotencyKey, String originalFileName,
+                                               String contentType, long totalSize) throws Exception {
+        Optional<UploadSession> existingSession = uploadSessionRepository.findByIdempotencyKey(idempotencyKey);
+        if (existingSession.isPresent()) {
+            log.info("ИДЕМПОТЕНТНОСТЬ: сессия для idempotencyKey='{}' уже существует", idempotencyKey);
+            return buildResponse(existingSession.get());
+        }
+
+        IdempotencyService.Claim claim = idempotencyService.claim(FileMetadata.builder()
+                .idempotencyKey(idempotencyKey)
+                .originalFileName(originalFileName)
+                .storedFileName(FileUploadService.generateStoredFileName(originalFileName))
+                .contentType(contentType)
+                .fileSize(totalSize)
+                .bucketName(bucketName)
+                .status(FileStatus.PENDING)
+                .build());
+        if (!claim.created()) {
+            // Ключ занят обычной загрузкой или параллельным запросом на создание этой же сессии
+            return uploadSessionRepository.findByIdempotencyKey(idempotencyKey)
+                    .map(this::buildResponse)
+                    .orElseThrow(() -> new UploadConflictException(
+                            "Ключ идемпотентности уже использован другой загрузкой: " + idempotencyKey));
+        }
+
+        FileMetadata metadata = claim.metadata();
+        String uploadId = null;
+        UploadSession session;
+        try {
+            uploadId = storageService.createMultipartUpload(metadata.getStoredFileName(), contentType);
+            session = uploadSessionRepository.save(UploadSession.builder()
+                    .idempotencyKey(idempotencyKey)
+                    .fileId(metadata.getId())
+                    .uploadId(uploadId)
+                    .totalSize(totalSize)
+                    .chunkSize(chunkSize.toBytes())
+                    .offset(0L)
+                    .status(UploadSessionStatus.ACTIVE)
+                    .build());
+        } catch (Exception e) {
+            // Без сессии ключ остался бы занятым навсегда: повтор запроса получал бы 409
+            releaseClaim(metadata, uploadId);
+            throw e;
+        }
+
+        log.info("Создана сессия {} для файла {} ({} байт)", session.getId(), metadata.getId(), totalSize);
+        return buildResponse(session);
+    }
+
+
+
+
+    public Optional<UploadSessionResponse> getSession(String sessionId) {
+        return uploadSessionRepository.findById(sessionId).map(this::buildResponse);
+    }
+
+
+
+
+    // Принимает часть файла по смещению. Все части, кроме последней, должны иметь размер chunkSize.
+    public UploadSessionResponse appendChunk(String sessionId, long offset, InputStream data, long length) throws Exception {
+        UploadSession session = getActiveSession(sessionId);
+
+        if (offset != session.getOffset()) {
+            throw new UploadConflictException(String.format(
+                    "Неверное смещение %d, ожидается %d", offset, session.getOffset()));
+        }
+
+        boolean lastChunk = offset + length == session.getTotalSize();
+        if (length <= 0 || length > session.getChunkSize()
+                || (!lastChunk && length != session.getChunkSize())
+                || offset + length > session.getTotalSize()) {
+            throw new IllegalArgumentException(String.format(
+                    "Размер части должен быть %d байт (последняя часть - остаток файла), получено %d",
+                    session.getChunkSize(), length));
+        }
+
+        int partNumber = (int) (offset / session.getChunkSize()) + 1;
+        FileMetadata metadata = getMetadata(session);
+
+        // Условный переход PENDING -> UPLOADING: опоздавшая первая часть не оживляет файл, который сборщик
+        // мусора или abort уже перевели в FAILED. Повтор первой части после сбоя застает файл в UPLOADING.
+        if (offset == 0 && metadata.getStatus() != FileStatus.UPLOADING && !fileStatusUpdater.apply(
+                StatusUpdate.of(metadata.getId(), FileStatus.PENDING, FileStatus.UPLOADING, null))) {
+            throw new UploadConflictException("Файл уже не ожидает загрузки");
+        }
+
+        String etag;
+        try (UploadMetrics.InFlight inFlight = uploadMetrics.inFlight(UploadMetrics.UploadPath.RESUMABLE)) {
+            etag = storageService.uploadPart(metadata.getStoredFileName(), session.getUploadId(),
+                    partNumber, data, length);
+        }
+
+        // Смещение и запись о части сохраняются вместе: смещение без части не дало бы собрать объект
+        session.setOffset(offset + length);
+        UploadSession accepted = session;
+        try {
+            session = transactionTemplate.execute(status -> {
+                UploadSession saved = uploadSessionRepository.save(accepted);
+                uploadSessionPartRepository.save(UploadSessionPart.builder()
+                        .sessionId(saved.getId())
+                        .partNumber(partNumber)
+                        .etag(etag)
+                        .size(length)
+                        .build());
+                return saved;
+            });
+        } catch (OptimisticLockingFailureException e) {
+            throw new UploadConflictException("Часть с этим смещением уже принята параллельным запросом");
+        }
+        uploadEventBus.publishProgress(metadata.getId(), session.getOffset(), session.getTotalSize());
+
+        log.debug("Сессия {}: принята часть {}, смещение {}/{}", sessionId, partNumber,
+                session.getOffset(), session.getTotalSize());
+        return buildResponse(session);
+    }
+
+
+
+
+    // Собирает объект из загруженных частей и переводит файл в COMPLETED.
+    public FileUploadResponse complete(String sessionId) throws Exception {
+        UploadSession session = getActiveSession(sessionId);
+
+        if (!session.getOffset().equals(session.getTotalSize())) {
+            throw new UploadConflictException(String.format(
+                    "Загружено %d из %d байт", session.getOffset(), session.getTotalSize()));
+        }
+
+        FileMetadata metadata = getMetadata(session);
+        SortedMap<Integer, String> partEtags = new TreeMap<>();
+        for (UploadSessionPart part : uploadSessionPartRepository.findBySessionIdOrderByPartNumber(sessionId)) {
+            partEtags.put(part.getPartNumber(), part.getEtag());
+        }
+
+        storageService.completeMultipartUpload(metadata.getStoredFileName(), session.getUploadId(), partEtags);
+
+        session.setStatus(UploadSessionStatus.COMPLETED);
+        uploadSessionRepository.save(session);
+
+        fileUploadService.updateStatusCompleted(metadata.getId(), null, null, null);
+        uploadMetrics.recordTransfer(UploadMetrics.UploadPath.RESUMABLE, session.getTotalSize(), 0);
+
+        log.info("Сессия {} завершена, файл {} в статусе COMPLETED", sessionId, metadata.getId());
+        return fileUploadService.getFileById(metadata.getId()).orElseThrow();
+    }
+
+
+
+
+    // Освобождает ключ идемпотентности, если сессию создать не удалось.
+    private void releaseClaim(FileMetadata metadata, String uploadId) {
+        try {
+            if (uploadId != null) {
+                storageService.abortMultipartUpload(metadata.getStoredFileName(), uploadId);
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось отменить multipart upload {}: {}", uploadId, e.getMessage());
+        }
+        try {
+            fileMetadataRepository.delete(metadata);
+        } catch (Exception e) {
+            log.error("Не удалось освободить ключ идемпотентности '{}': {}", metadata.getIdempotencyKey(), e.getMessage());
+        }
+    }
+
+
+
+
+    // Отменяет сессию: удаляет загруженные части из MinIO и помечает файл как FAILED.
+    public void abort(String sessionId) throws Exception {
+        UploadSession session = getActiveSession(sessionId);
+        FileMetadata metadata = getMetadata(session);
+
+        storageService.abortMultipartUpload(metadata.getStoredFileName(), session.getUploadId());
+
+        session.setStatus(UploadSessionStatus.ABORTED);
+        uploadSessionRepository.save(session);
+        uploadSessionPartRepository.deleteBySessionId(sessionId);
+        fileUploadService.updateStatus(metadata.getId(), FileStatus.FAILED, "Загрузка отменена клиентом");
+
+        log.info("Сессия {} отменена", sessionId);
+    }
+
+
+
+
+    private UploadSession getActiveSession(String sessionId) {
+        UploadSession session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new IllegalArgumentException("Сессия загрузки не найдена: " + sessionId));
+        if (session.getStatus() != UploadSessionStatus.ACTIVE) {
+            throw new UploadConflictException("Сессия загрузки уже в статусе " + session.getStatus());
+        }
+        return session;
+    }
+
+
+
+
+    private FileMetadata getMetadata(UploadSession session) {
+        return fileMetadataRepository.findById(session.getFileId())
+                .orElseThrow(() -> new RuntimeException("Файл не найден: " + session.getFileId()));
+    }
+
+
+
+
+    private UploadSessionResponse buildResponse(UploadSession session) {
+        return UploadSessionResponse.builder()
+                .sessionId(session.getId())
+                .fileId(session.getFileId())
+                .idempotencyKey(session.getIdempotencyKey())
+                .totalSize(session.getTotalSize())
+                .chunkSize(session.getChunkSize())
+                .offset(session.getOffset())
+                .status(session.getStatus())
+                .build();
+    }
+}
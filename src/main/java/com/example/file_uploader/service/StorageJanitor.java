@@ -0,0 +1,332 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.entity.UploadJobStatus;
+import com.example.file_uploader.entity.UploadSession;
+import com.example.file_uploader.entity.UploadSessionStatus;
+import com.example.file_uploader.repository.ContentObjectRepository;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository.StatusUpdate;
+import com.example.file_uploader.repository.FileMetadataRepository;
+import com.example.file_uploader.repository.UploadJobRepository;
+import com.example.file_uploader.repository.UploadSessionPartRepository;
+import com.example.file_uploader.repository.UploadSessionRepository;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Фоновая уборка за прерванными загрузками.
+ *
+ * Воркер сам удаляет staging-файл и откатывает объект при ошибке, но после падения узла остаются:
+ * - staging-директории, на которые не ссылается ни одна задача очереди;
+ * - сессии возобновляемой загрузки, в которые давно не приходили части (незавершенный multipart upload);
+ * - записи PENDING/UPLOADING, которыми не владеет ни задача очереди, ни активная сессия
+ *   (прерванная потоковая загрузка, брошенная presigned-загрузка) - они переводятся в FAILED;
+ * - объекты MinIO без записи о файле - удаляются пакетами (removeObjects).
+ * Задачи с просроченной арендой возвращает в очередь UploadJobDispatcher, здесь они не трогаются.
+ *
+ * Обход запускается по расписанию на отдельном потоке storageJanitorExecutor, а не в пути загрузки.
+ * Обращения к диску, БД и MinIO ограничены RateLimiter'ом, за один обход обрабатывается
+ * не больше batch-size записей каждого вида - остальное достанется следующим обходам.
+ */
+@Component
+@Slf4j
+public class StorageJanitor {
+
+    private static final List<UploadJobStatus> ACTIVE_JOB_STATUSES =
+            List.of(UploadJobStatus.PENDING, UploadJobStatus.RUNNING);
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final UploadJobRepository uploadJobRepository;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadSessionPartRepository uploadSessionPartRepository;
+    private final ContentObjectRepository contentObjectRepository;
+    private final StorageService storageService;
+    private final FileStatusUpdater fileStatusUpdater;
+    private final Executor storageJanitorExecutor;
+    private final RateLimiter rateLimiter;
+
+    // Позиция обхода листинга bucket'а: каждый обход проверяет следующую порцию объектов.
+    private volatile String orphanScanCursor;
+
+    @Value("${storage-janitor.enabled:true}")
+    private boolean enabled;
+
+    @Value("${upload-jobs.staging-dir:${java.io.tmpdir}/file-uploader-staging}")
+    private Path stagingDir;
+
+    @Value("${storage-janitor.staging-max-age:6h}")
+    private Duration stagingMaxAge;
+
+    @Value("${storage-janitor.session-timeout:24h}")
+    private Duration sessionTimeout;
+
+    @Value("${storage-janitor.abandoned-timeout:6h}")
+    private Duration abandonedTimeout;
+
+    @Value("${storage-janitor.orphan-grace-period:1h}")
+    private Duration orphanGracePeriod;
+
+    @Value("${storage-janitor.batch-size:500}")
+    private int batchSize;
+
+    @Value("${storage-janitor.orphan-scan-size:1000}")
+    private int orphanScanSize;
+
+    public StorageJanitor(FileMetadataRepository fileMetadataRepository,
+                          UploadJobRepository uploadJobRepository,
+                          UploadSessionRepository uploadSessionRepository,
+                          UploadSessionPartRepository uploadSessionPartRepository,
+                          ContentObjectRepository contentObjectRepository,
+                          StorageService storageService,
+                          FileStatusUpdater fileStatusUpdater,
+                          @Qualifier("storageJanitorExecutor") Executor storageJanitorExecutor,
+                          @Value("${storage-janitor.max-operations-per-second:50}") double maxOperationsPerSecond) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.uploadJobRepository = uploadJobRepository;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.uploadSessionPartRepository = uploadSessionPartRepository;
+        this.contentObjectRepository = contentObjectRepository;
+        this.storageService = storageService;
+        this.fileStatusUpdater = fileStatusUpdater;
+        this.storageJanitorExecutor = storageJanitorExecutor;
+        this.rateLimiter = RateLimiter.create(maxOperationsPerSecond);
+    }
+
+    // Запускает обход на storageJanitorExecutor. Если предыдущий обход еще идет, запуск пропускается.
+    @Scheduled(fixedDelayString = "${storage-janitor.interval-ms:300000}",
+            initialDelayString = "${storage-janitor.initial-delay-ms:60000}")
+    public void schedule() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            storageJanitorExecutor.execute(this::sweep);
+        } catch (TaskRejectedException e) {
+            log.debug("Предыдущий обход уборки еще не завершен");
+        }
+    }
+
+
+
+
+    // Один обход: шаги независимы, ошибка одного не отменяет остальные.
+    void sweep() {
+        runStep("staging-директорий удалено", this::sweepStagingDirs);
+        runStep("сессий возобновляемой загрузки истекло", this::expireSessions);
+        runStep("прерванных загрузок переведено в FAILED", this::failAbandonedUploads);
+        runStep("объектов без записи о файле удалено", this::removeOrphanObjects);
+    }
+
+
+
+
+    private void runStep(String description, Callable<Integer> step) {
+        try {
+            int count = step.call();
+            if (count > 0) {
+                log.info("Уборка: {}: {}", description, count);
+            }
+        } catch (Exception e) {
+            log.error("Уборка: ошибка шага '{}': {}", description, e.getMessage(), e);
+        }
+    }
+
+
+
+
+    // Удаляет старые staging-директории, файлы которых не нужны ни одной задаче PENDING/RUNNING.
+    private int sweepStagingDirs() throws IOException {
+        if (!Files.isDirectory(stagingDir)) {
+            return 0;
+        }
+
+        Instant deadline = Instant.now().minus(stagingMaxAge);
+        List<Path> candidates = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(stagingDir, "file-uploader-*")) {
+            for (Path dir : entries) {
+                if (candidates.size() >= batchSize) {
+                    break;
+                }
+                if (Files.isDirectory(dir) && Files.getLastModifiedTime(dir).toInstant().isBefore(deadline)) {
+                    candidates.add(dir);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        // В задаче хранится путь к файлу внутри директории (см. FileUploadService.saveTempFile)
+        Map<String, Path> dirsByFile = new HashMap<>();
+        for (Path dir : candidates) {
+            try (Stream<Path> files = Files.list(dir)) {
+                files.forEach(file -> dirsByFile.put(file.toString(), dir));
+            }
+        }
+        Set<Path> inUse = new HashSet<>();
+        if (!dirsByFile.isEmpty()) {
+            uploadJobRepository.findTempFilePathsIn(dirsByFile.keySet(), ACTIVE_JOB_STATUSES)
+                    .forEach(path -> inUse.add(dirsByFile.get(path)));
+        }
+
+        int removed = 0;
+        for (Path dir : candidates) {
+            if (inUse.contains(dir)) {
+                continue;
+            }
+            rateLimiter.acquire();
+            try {
+                if (FileSystemUtils.deleteRecursively(dir)) {
+                    removed++;
+                }
+            } catch (IOException e) {
+                log.warn("Не удалось удалить staging-директорию {}: {}", dir, e.getMessage());
+            }
+        }
+        return removed;
+    }
+
+
+
+
+    // Отменяет сессии без активности: части в MinIO удаляются, файл переводится в FAILED.
+    // Сессия помечается ABORTED до отмены multipart upload - если клиент в этот момент
+    // прислал часть, версия сессии изменилась, и сессия пропускается.
+    private int expireSessions() {
+        LocalDateTime deadline = LocalDateTime.now().minus(sessionTimeout);
+        int expired = 0;
+        for (UploadSession session : uploadSessionRepository.findExpired(deadline, batchSize)) {
+            rateLimiter.acquire();
+            try {
+                session.setStatus(UploadSessionStatus.ABORTED);
+                uploadSessionRepository.save(session);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                log.debug("Сессия {} изменена параллельно, пропускается", session.getId());
+                continue;
+            }
+
+            uploadSessionPartRepository.deleteBySessionId(session.getId());
+            expired++;
+
+            Optional<FileMetadata> metadata = fileMetadataRepository.findById(session.getFileId());
+            if (metadata.isEmpty()) {
+                continue;
+            }
+            try {
+                storageService.abortMultipartUpload(metadata.get().getStoredFileName(), session.getUploadId());
+            } catch (Exception e) {
+                log.warn("Не удалось отменить multipart upload сессии {}: {}", session.getId(), e.getMessage());
+            }
+            // До первой части файл в PENDING, после - в UPLOADING
+            fileStatusUpdater.apply(StatusUpdate.of(metadata.get().getId(), metadata.get().getStatus(),
+                    FileStatus.FAILED, "Сессия загрузки истекла: части давно не поступали"));
+        }
+        return expired;
+    }
+
+
+
+
+    // Переводит в FAILED прерванные загрузки, которые никто не продолжит, и удаляет их объекты.
+    // Смена статуса условная: если загрузка все-таки завершилась, запись не меняется.
+    private int failAbandonedUploads() throws Exception {
+        LocalDateTime deadline = LocalDateTime.now().minus(abandonedTimeout);
+        List<FileMetadata> abandoned = fileMetadataRepository.findAbandoned(deadline, batchSize);
+        if (abandoned.isEmpty()) {
+            return 0;
+        }
+
+        // Смены статуса уходят одним пакетом FileStatusUpdater
+        rateLimiter.acquire(abandoned.size());
+        String error = "Загрузка прервана и не была возобновлена";
+        List<CompletableFuture<Boolean>> results = abandoned.stream()
+                .map(metadata -> fileStatusUpdater.submit(
+                        StatusUpdate.of(metadata.getId(), metadata.getStatus(), FileStatus.FAILED, error)))
+                .toList();
+
+        List<String> objects = new ArrayList<>();
+        int failed = 0;
+        for (int i = 0; i < abandoned.size(); i++) {
+            if (!results.get(i).join()) {
+                continue;
+            }
+            failed++;
+            // Общий объект (дедупликация) освобождает сборщик мусора ContentDeduplicationService
+            if (abandoned.get(i).getContentHash() == null) {
+                objects.add(abandoned.get(i).getStoredFileName());
+            }
+        }
+        deleteObjects(objects);
+        return failed;
+    }
+
+
+
+
+    // Проверяет очередную порцию листинга bucket'а и удаляет объекты, на которые не ссылается
+    // ни запись о файле, ни общий объект. Свежие объекты пропускаются: запись о файле
+    // и регистрация общего объекта могут отставать от загрузки на время транзакции.
+    private int removeOrphanObjects() throws Exception {
+        List<StoredObjectSummary> page = storageService.listObjects(orphanScanCursor, orphanScanSize);
+        orphanScanCursor = page.size() < orphanScanSize ? null : page.get(page.size() - 1).storedFileName();
+
+        Instant deadline = Instant.now().minus(orphanGracePeriod);
+        Set<String> candidates = page.stream()
+                .filter(object -> object.lastModified().isBefore(deadline))
+                .map(StoredObjectSummary::storedFileName)
+                .collect(Collectors.toCollection(HashSet::new));
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        fileMetadataRepository.findStoredFileNamesIn(candidates).forEach(candidates::remove);
+        if (!candidates.isEmpty()) {
+            contentObjectRepository.findStoredFileNamesIn(candidates).forEach(candidates::remove);
+        }
+        if (!candidates.isEmpty()) {
+            log.warn("Найдено объектов без записи о файле: {}", candidates.size());
+        }
+        return deleteObjects(List.copyOf(candidates));
+    }
+
+
+
+
+    private int deleteObjects(List<String> storedFileNames) throws Exception {
+        int deleted = 0;
+        for (List<String> batch : Lists.partition(storedFileNames, batchSize)) {
+            rateLimiter.acquire(batch.size());
+            deleted += storageService.deleteFiles(batch);
+        }
+        return deleted;
+    }
+}
@@ -2,13 +2,68 @@ package com.example.file_uploader.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.function.LongConsumer;
+
 public interface StorageService {
 
-    String uploadFile(MultipartFile file, String storedFileName) throws Exception;
+    // Загружает локальный файл. Большие файлы загружаются параллельными частями.
+    // checksummer (может быть null) получает все байты файла по порядку. Возвращает ETag объекта.
+    // progress (может быть null) получает количество переданных байт порциями, возможно из разных потоков.
+    String uploadFile(Path source, long size, String contentType, String storedFileName,
+                      Checksummer checksummer, LongConsumer progress) throws Exception;
+
+    // Загружает поток напрямую в хранилище, без промежуточных файлов.
+    // size = -1, если размер заранее неизвестен. Возвращает ETag объекта.
+    String uploadStream(InputStream inputStream, long size, String contentType, String storedFileName) throws Exception;
+
+    // Низкоуровневый multipart API для возобновляемых загрузок: части приходят отдельными запросами.
+    String createMultipartUpload(String storedFileName, String contentType) throws Exception;
+
+    // Загружает часть длиной length из потока. Возвращает ETag части.
+    String uploadPart(String storedFileName, String uploadId, int partNumber,
+                      InputStream data, long length) throws Exception;
+
+    // Собирает объект из частей (номер части -> ETag). Возвращает ETag объекта.
+    String completeMultipartUpload(String storedFileName, String uploadId,
+                                   SortedMap<Integer, String> partEtags) throws Exception;
+
+    void abortMultipartUpload(String storedFileName, String uploadId) throws Exception;
+
+    // Открывает поток с содержимым объекта начиная с offset. length = null - до конца объекта.
+    InputStream getObject(String storedFileName, long offset, Long length) throws Exception;
+
+    // Presigned URL для загрузки объекта клиентом напрямую в хранилище (PUT).
+    String presignUpload(String storedFileName, Duration expiry) throws Exception;
+
+    // Presigned URL для скачивания объекта напрямую из хранилища (GET).
+    // downloadFileName подставляется в Content-Disposition ответа.
+    String presignDownload(String storedFileName, String downloadFileName, Duration expiry) throws Exception;
+
+    // Метаданные объекта или пусто, если объекта нет.
+    Optional<StoredObjectInfo> statObject(String storedFileName) throws Exception;
 
     void deleteFile(String storedFileName) throws Exception;
 
+    // Удаляет объекты пакетными запросами. Отсутствующий объект считается удаленным.
+    // Возвращает количество удаленных объектов; ошибки по отдельным объектам только логируются.
+    int deleteFiles(Collection<String> storedFileNames) throws Exception;
+
+    // До limit объектов в порядке имен, начиная после startAfter (null - с начала).
+    List<StoredObjectSummary> listObjects(String startAfter, int limit) throws Exception;
+
     boolean fileExists(String storedFileName);
 
+    // false, если объект пока сохранен только на локальном уровне хранилища и копии в MinIO еще нет.
+    default boolean isDurable(String storedFileName) {
+        return true;
+    }
+
     String calculateChecksum(MultipartFile file) throws Exception;
 }
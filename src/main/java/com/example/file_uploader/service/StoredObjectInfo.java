@@ -0,0 +1,5 @@
+package com.example.file_uploader.service;
+
+// Метаданные объекта в хранилище (результат statObject).
+public record StoredObjectInfo(long size, String etag, String contentType) {
+}
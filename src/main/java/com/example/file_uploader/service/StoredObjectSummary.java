@@ -0,0 +1,7 @@
+package com.example.file_uploader.service;
+
+import java.time.Instant;
+
+// Объект из листинга хранилища (результат listObjects).
+public record StoredObjectSummary(String storedFileName, long size, Instant lastModified) {
+}
@@ -0,0 +1,675 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.TierObject;
+import com.example.file_uploader.entity.TierObjectState;
+import com.example.file_uploader.exception.StorageUnavailableException;
+import com.example.file_uploader.repository.TierObjectRepository;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Двухуровневое хранилище: запись подтверждается после сохранения на локальный быстрый диск
+ * узла, копирование в MinIO идет в фоне (write-back).
+ *
+ * - Объект пишется во временный файл через FileChannel, после force() атомарно переименовывается,
+ *   директория тоже синхронизируется - подтвержденная запись переживает сбой питания.
+ * - Индекс локального уровня хранится в БД (TierObject): по нему write-back выбирает объекты для
+ *   копирования, а после перезапуска восстанавливается состояние диска.
+ * - Скопированные в MinIO объекты остаются на диске, пока хватает бюджета storage.tiered.capacity,
+ *   и вытесняются (давно скопированные первыми), когда место нужно новым записям.
+ * - Если места нет даже после вытеснения, объект записывается сразу в MinIO (write-through).
+ * - Чтение идет с локального диска, если копия есть, иначе из MinIO. Multipart, presigned URL и
+ *   листинг работают напрямую с MinIO.
+ *
+ * Объект, который есть только на локальном диске, читается только на этом узле; файл с таким
+ * объектом находится в статусе COMPLETED_LOCAL (см. isDurable и ObjectReplicatedEvent).
+ */
+@Slf4j
+public class TieredStorageService implements StorageService {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Файлы объектов без записи индекса переносятся сюда при восстановлении, а не удаляются.
+    private static final String UNINDEXED_DIR = "unindexed";
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final int EVICTION_BATCH_SIZE = 100;
+    private static final int MAX_LOCAL_NAME_LENGTH = 200;
+
+    // Параметры локального уровня и write-back (storage.tiered.*).
+    public record Settings(Path directory, String nodeId, DataSize capacity, DataSize unknownSizeReserve,
+                           int parallelism, int batchSize, Duration lease, Duration initialBackoff,
+                           Duration maxBackoff) {
+    }
+
+    // Объект на локальном диске узла (копия записи индекса).
+    private record LocalObject(String id, long size, String etag, String contentType, boolean replicated) {
+
+        LocalObject asReplicated() {
+            return new LocalObject(id, size, etag, contentType, true);
+        }
+    }
+
+    private final StorageService remote;
+    private final TierObjectRepository tierObjectRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Executor writeBackExecutor;
+    private final Settings settings;
+    private final long capacity;
+    private final long unknownSizeReserve;
+    private final Map<String, LocalObject> objects = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Semaphore writeBackSlots;
+    private final Counter writeThrough;
+    private final Counter replicated;
+    private final Counter evicted;
+
+    public TieredStorageService(StorageService remote, TierObjectRepository tierObjectRepository,
+                                ApplicationEventPublisher eventPublisher, Executor writeBackExecutor,
+                                Settings settings, MeterRegistry meterRegistry) {
+        this.remote = remote;
+        this.tierObjectRepository = tierObjectRepository;
+        this.eventPublisher = eventPublisher;
+        this.writeBackExecutor = writeBackExecutor;
+        this.settings = settings;
+        this.capacity = settings.capacity().toBytes();
+        this.unknownSizeReserve = settings.unknownSizeReserve().toBytes();
+        this.writeBackSlots = new Semaphore(settings.parallelism());
+        this.writeThrough = Counter.builder("storage.tier.write_through")
+                .description("Записи сразу в MinIO: на локальном уровне не хватило места")
+                .register(meterRegistry);
+        this.replicated = Counter.builder("storage.tier.replicated")
+                .description("Объекты, скопированные с локального уровня в MinIO")
+                .register(meterRegistry);
+        this.evicted = Counter.builder("storage.tier.evicted")
+                .description("Локальные копии, вытесненные после копирования в MinIO")
+                .register(meterRegistry);
+        Gauge.builder("storage.tier.used", usedBytes, AtomicLong::get)
+                .description("Занято на локальном уровне хранилища")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.tier.pending", objects,
+                        map -> map.values().stream().filter(object -> !object.replicated()).count())
+                .description("Объекты узла, ожидающие копирования в MinIO")
+                .register(meterRegistry);
+    }
+
+    // Восстановление после перезапуска по индексу. Временные файлы (*.tmp) - незавершенные записи,
+    // о которых вызывающий не получил подтверждения, - удаляются. Файл объекта без записи индекса
+    // мог быть подтвержден (например, индекс записан под другим node-id), поэтому он не удаляется,
+    // а переносится в подкаталог unindexed для разбора. Записи индекса без файла удаляются.
+    // Нескопированные объекты подхватит write-back: копирования, прерванные перезапуском, не ждут истечения аренды.
+    @PostConstruct
+    public void recover() throws IOException {
+        Files.createDirectories(settings.directory());
+
+        Map<Path, TierObject> indexed = new HashMap<>();
+        for (TierObject object : tierObjectRepository.findByNodeId(settings.nodeId())) {
+            indexed.put(localPath(object.getStoredFileName()), object);
+        }
+
+        List<String> pending = new ArrayList<>();
+        int removedTemp = 0;
+        int unindexed = 0;
+        try (Stream<Path> files = Files.list(settings.directory())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isDirectory(file)) {
+                    continue;
+                }
+                TierObject object = indexed.remove(file);
+                if (object == null) {
+                    if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                        Files.deleteIfExists(file);
+                        removedTemp++;
+                    } else {
+                        quarantine(file);
+                        unindexed++;
+                    }
+                    continue;
+                }
+                objects.put(object.getStoredFileName(), toLocalObject(object));
+                usedBytes.addAndGet(object.getSize());
+                if (object.getState() == TierObjectState.LOCAL) {
+                    pending.add(object.getId());
+                }
+            }
+        }
+        if (!pending.isEmpty()) {
+            tierObjectRepository.postpone(pending, LocalDateTime.now());
+        }
+
+        for (TierObject missing : indexed.values()) {
+            tierObjectRepository.delete(missing);
+            if (missing.getState() == TierObjectState.LOCAL) {
+                log.error("Объект {} отсутствует на локальном диске, а в MinIO он не скопирован",
+                        missing.getStoredFileName());
+            }
+        }
+
+        if (unindexed > 0) {
+            log.error("Файлов объектов без записи индекса узла {}: {}. Они перенесены в {} - проверьте storage.tiered.node-id",
+                    settings.nodeId(), unindexed, settings.directory().resolve(UNINDEXED_DIR));
+        }
+        log.info("Локальный уровень хранилища {} (узел {}): {} объектов, {} из {} байт; удалено временных файлов: {}, "
+                        + "записей без файла: {}", settings.directory(), settings.nodeId(), objects.size(),
+                usedBytes.get(), capacity, removedTemp, indexed.size());
+    }
+
+
+
+
+    // Переносит файл без записи индекса в подкаталог unindexed, не перезаписывая уже перенесенные.
+    private void quarantine(Path file) throws IOException {
+        Path directory = Files.createDirectories(settings.directory().resolve(UNINDEXED_DIR));
+        Path target = directory.resolve(file.getFileName());
+        if (Files.exists(target)) {
+            target = directory.resolve(file.getFileName() + "." + UUID.randomUUID());
+        }
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        log.warn("Файл {} без записи индекса перенесен в {}", file, target);
+    }
+
+
+
+
+    @Override
+    public String uploadFile(Path source, long size, String contentType, String storedFileName,
+                             Checksummer checksummer, LongConsumer progress) throws Exception {
+        try (InputStream file = Files.newInputStream(source)) {
+            if (!reserve(size)) {
+                writeThrough.increment();
+                return remote.uploadFile(source, size, contentType, storedFileName, checksummer, progress);
+            }
+            InputStream in = checksummer != null ? new ChecksumInputStream(file, checksummer) : file;
+            return store(progress != null ? new ProgressInputStream(in, progress) : in,
+                    size, size, contentType, storedFileName);
+        }
+    }
+
+
+
+
+    @Override
+    public String uploadStream(InputStream inputStream, long size, String contentType,
+                               String storedFileName) throws Exception {
+        long reserved = size >= 0 ? size : unknownSizeReserve;
+        if (!reserve(reserved)) {
+            writeThrough.increment();
+            return remote.uploadStream(inputStream, size, contentType, storedFileName);
+        }
+        return store(inputStream, size, reserved, contentType, storedFileName);
+    }
+
+
+
+
+    @Override
+    public String createMultipartUpload(String storedFileName, String contentType) throws Exception {
+        return remote.createMultipartUpload(storedFileName, contentType);
+    }
+
+    @Override
+    public String uploadPart(String storedFileName, String uploadId, int partNumber,
+                             InputStream data, long length) throws Exception {
+        return remote.uploadPart(storedFileName, uploadId, partNumber, data, length);
+    }
+
+    @Override
+    public String completeMultipartUpload(String storedFileName, String uploadId,
+                                          SortedMap<Integer, String> partEtags) throws Exception {
+        return remote.completeMultipartUpload(storedFileName, uploadId, partEtags);
+    }
+
+    @Override
+    public void abortMultipartUpload(String storedFileName, String uploadId) throws Exception {
+        remote.abortMultipartUpload(storedFileName, uploadId);
+    }
+
+
+
+
+    @Override
+    public InputStream getObject(String storedFileName, long offset, Long length) throws Exception {
+        if (objects.containsKey(storedFileName)) {
+            try {
+                FileChannel channel = FileChannel.open(localPath(storedFileName), StandardOpenOption.READ);
+                try {
+                    channel.position(offset);
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+                InputStream in = Channels.newInputStream(channel);
+                return length != null ? ByteStreams.limit(in, length) : in;
+            } catch (NoSuchFileException e) {
+                // Копия вытеснена между проверкой и открытием - объект уже в MinIO
+                log.debug("Объект {} вытеснен с локального уровня во время чтения", storedFileName);
+            }
+        }
+        return remote.getObject(storedFileName, offset, length);
+    }
+
+
+
+
+    @Override
+    public String presignUpload(String storedFileName, Duration expiry) throws Exception {
+        return remote.presignUpload(storedFileName, expiry);
+    }
+
+    @Override
+    public String presignDownload(String storedFileName, String downloadFileName, Duration expiry) throws Exception {
+        return remote.presignDownload(storedFileName, downloadFileName, expiry);
+    }
+
+
+
+
+    @Override
+    public Optional<StoredObjectInfo> statObject(String storedFileName) throws Exception {
+        LocalObject local = objects.get(storedFileName);
+        if (local != null) {
+            return Optional.of(new StoredObjectInfo(local.size(), local.etag(), local.contentType()));
+        }
+        return remote.statObject(storedFileName);
+    }
+
+
+
+
+    // Объект мог уже копироваться в MinIO: копию, появившуюся после удаления, уберет StorageJanitor.
+    @Override
+    public void deleteFile(String storedFileName) throws Exception {
+        discardLocal(storedFileName);
+        remote.deleteFile(storedFileName);
+    }
+
+    @Override
+    public int deleteFiles(Collection<String> storedFileNames) throws Exception {
+        for (String storedFileName : storedFileNames) {
+            discardLocal(storedFileName);
+        }
+        return remote.deleteFiles(storedFileNames);
+    }
+
+
+
+
+    // Уборка объектов без записи о файле (StorageJanitor) обходит только MinIO:
+    // локальные копии удаляются вместе с объектом в MinIO через deleteFiles.
+    @Override
+    public List<StoredObjectSummary> listObjects(String startAfter, int limit) throws Exception {
+        return remote.listObjects(startAfter, limit);
+    }
+
+
+
+
+    @Override
+    public boolean fileExists(String storedFileName) {
+        return objects.containsKey(storedFileName) || remote.fileExists(storedFileName);
+    }
+
+
+
+
+    // Объект может лежать только на диске другого узла (общий объект дедупликации),
+    // поэтому без локальной копии проверяется индекс всех узлов.
+    @Override
+    public boolean isDurable(String storedFileName) {
+        LocalObject local = objects.get(storedFileName);
+        if (local != null) {
+            return local.replicated();
+        }
+        return !tierObjectRepository.existsByStoredFileNameAndState(storedFileName, TierObjectState.LOCAL);
+    }
+
+
+
+
+    @Override
+    public String calculateChecksum(MultipartFile file) throws Exception {
+        return remote.calculateChecksum(file);
+    }
+
+
+
+
+    // Забирает объекты, ожидающие копирования в MinIO, на свободные слоты write-back.
+    @Scheduled(fixedDelayString = "${storage.tiered.write-back.interval-ms:200}")
+    public void writeBack() {
+        int slots = 0;
+        while (slots < settings.batchSize() && writeBackSlots.tryAcquire()) {
+            slots++;
+        }
+        if (slots == 0) {
+            return;
+        }
+
+        List<TierObject> due;
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            due = tierObjectRepository.findDueForWriteBack(settings.nodeId(), now, slots);
+            if (!due.isEmpty()) {
+                // Пока объект копируется, он не попадает в следующие выборки; после сбоя узла аренда истечет
+                tierObjectRepository.postpone(due.stream().map(TierObject::getId).toList(), now.plus(settings.lease()));
+            }
+        } catch (Exception e) {
+            writeBackSlots.release(slots);
+            log.error("Ошибка выборки объектов для копирования в MinIO: {}", e.getMessage());
+            return;
+        }
+
+        writeBackSlots.release(slots - due.size());
+        for (TierObject object : due) {
+            try {
+                writeBackExecutor.execute(() -> replicate(object));
+            } catch (RejectedExecutionException e) {
+                writeBackSlots.release();
+            }
+        }
+    }
+
+
+
+
+    // Копирует объект в MinIO и помечает его в индексе как скопированный.
+    private void replicate(TierObject object) {
+        String storedFileName = object.getStoredFileName();
+        try {
+            remote.uploadFile(localPath(storedFileName), object.getSize(), object.getContentType(),
+                    storedFileName, null, null);
+            if (tierObjectRepository.markReplicated(object.getId(), TierObjectState.REPLICATED, LocalDateTime.now()) == 0) {
+                log.debug("Объект {} удален во время копирования в MinIO", storedFileName);
+                return;
+            }
+            objects.computeIfPresent(storedFileName,
+                    (name, local) -> local.id().equals(object.getId()) ? local.asReplicated() : local);
+            replicated.increment();
+        } catch (Exception e) {
+            handleReplicationFailure(object, e);
+            return;
+        } finally {
+            writeBackSlots.release();
+        }
+
+        try {
+            eventPublisher.publishEvent(new ObjectReplicatedEvent(storedFileName));
+        } catch (Exception e) {
+            log.error("Ошибка обработки копирования объекта {} в MinIO: {}", storedFileName, e.getMessage(), e);
+        }
+    }
+
+
+
+
+    // Откладывает следующую попытку с экспоненциальной задержкой.
+    // Пока MinIO недоступно, задержка не меньше Retry-After circuit breaker.
+    private void handleReplicationFailure(TierObject object, Exception e) {
+        long delayMs = Math.min(settings.initialBackoff().toMillis() << Math.min(object.getAttempts(), 20),
+                settings.maxBackoff().toMillis());
+        if (e instanceof StorageUnavailableException unavailable) {
+            delayMs = Math.max(delayMs, unavailable.getRetryAfter().toMillis());
+        }
+        log.warn("Не удалось скопировать объект {} в MinIO (попытка {}), повтор через {} мс: {}",
+                object.getStoredFileName(), object.getAttempts() + 1, delayMs, e.getMessage());
+        try {
+            tierObjectRepository.recordFailure(object.getId(), truncate(e.getMessage()),
+                    LocalDateTime.now().plusNanos(delayMs * 1_000_000));
+        } catch (Exception recordError) {
+            log.error("Ошибка записи неудачной попытки копирования объекта {}: {}",
+                    object.getStoredFileName(), recordError.getMessage());
+        }
+    }
+
+
+
+
+    // Записывает объект на локальный диск (место под reserved байт уже зарезервировано) и добавляет в индекс.
+    // Возвращает MD5 содержимого - такой же ETag вернуло бы MinIO для загрузки одним запросом.
+    private String store(InputStream in, long size, long reserved, String contentType,
+                         String storedFileName) throws Exception {
+        Path temp = settings.directory().resolve(UUID.randomUUID() + TEMP_SUFFIX);
+        Checksummer md5 = ChecksumAlgorithm.MD5.newChecksummer();
+        byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        long written = 0;
+        int pending = 0;
+        boolean stored = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    while (written + n > reserved) {
+                        if (size >= 0) {
+                            throw new IOException("Поток длиннее заявленного размера " + size + ": " + storedFileName);
+                        }
+                        // Размер заранее неизвестен: место резервируется порциями, пока позволяет бюджет
+                        if (!reserve(unknownSizeReserve)) {
+                            pending = n;
+                            break;
+                        }
+                        reserved += unknownSizeReserve;
+                    }
+                    if (pending > 0) {
+                        break;
+                    }
+                    md5.update(buffer, 0, n);
+                    wrapped.clear().limit(n);
+                    while (wrapped.hasRemaining()) {
+                        channel.write(wrapped);
+                    }
+                    written += n;
+                }
+                if (size >= 0 && written != size) {
+                    throw new EOFException("Поток короче заявленного размера " + size + ": " + storedFileName);
+                }
+                if (pending == 0) {
+                    // Данные и размер файла на диске до подтверждения записи
+                    channel.force(true);
+                }
+            }
+
+            if (pending > 0) {
+                // Бюджет исчерпан посреди потока: записанное начало и остаток потока уходят сразу в MinIO
+                writeThrough.increment();
+                try (InputStream head = Files.newInputStream(temp)) {
+                    return remote.uploadStream(new SequenceInputStream(Collections.enumeration(List.of(
+                                    head, new ByteArrayInputStream(buffer, 0, pending), in))),
+                            -1, contentType, storedFileName);
+                }
+            }
+
+            String etag = md5.finish();
+            commit(temp, storedFileName, written, etag, contentType);
+            stored = true;
+            return etag;
+        } finally {
+            usedBytes.addAndGet(stored ? written - reserved : -reserved);
+            Files.deleteIfExists(temp);
+        }
+    }
+
+
+
+
+    // Добавляет запись в индекс и переименовывает временный файл в файл объекта.
+    // Запись индекса раньше файла: после сбоя между ними восстановление удалит запись без файла.
+    private void commit(Path temp, String storedFileName, long size, String etag, String contentType) throws IOException {
+        // Перезапись объекта с тем же именем (общий объект дедупликации, повтор загрузки)
+        discardLocal(storedFileName);
+
+        TierObject object = tierObjectRepository.save(TierObject.builder()
+                .nodeId(settings.nodeId())
+                .storedFileName(storedFileName)
+                .size(size)
+                .contentType(contentType)
+                .etag(etag)
+                .state(TierObjectState.LOCAL)
+                .build());
+        try {
+            Files.move(temp, localPath(storedFileName), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory();
+        } catch (IOException e) {
+            tierObjectRepository.deleteById(object.getId());
+            throw e;
+        }
+        objects.put(storedFileName, toLocalObject(object));
+    }
+
+
+
+
+    // Удаляет локальную копию объекта и запись индекса.
+    private void discardLocal(String storedFileName) throws IOException {
+        LocalObject local = objects.remove(storedFileName);
+        if (local == null) {
+            return;
+        }
+        tierObjectRepository.deleteById(local.id());
+        Files.deleteIfExists(localPath(storedFileName));
+        usedBytes.addAndGet(-local.size());
+    }
+
+
+
+
+    // Резервирует место под объект, при необходимости вытесняя скопированные в MinIO объекты.
+    // false - места нет даже после вытеснения.
+    private boolean reserve(long bytes) {
+        if (bytes > capacity) {
+            return false;
+        }
+        evictionLock.lock();
+        try {
+            long excess = usedBytes.get() + bytes - capacity;
+            if (excess > 0) {
+                evict(excess);
+            }
+            if (usedBytes.get() + bytes > capacity) {
+                return false;
+            }
+            usedBytes.addAndGet(bytes);
+            return true;
+        } catch (Exception e) {
+            log.error("Ошибка вытеснения объектов с локального уровня: {}", e.getMessage());
+            return false;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+
+
+
+    // Удаляет локальные копии объектов, уже скопированных в MinIO, пока не освободится needed байт.
+    private void evict(long needed) throws IOException {
+        long freed = 0;
+        while (freed < needed) {
+            List<TierObject> candidates = tierObjectRepository.findEvictable(settings.nodeId(), EVICTION_BATCH_SIZE);
+            if (candidates.isEmpty()) {
+                return;
+            }
+            for (TierObject candidate : candidates) {
+                if (freed >= needed) {
+                    return;
+                }
+                String storedFileName = candidate.getStoredFileName();
+                LocalObject local = objects.get(storedFileName);
+                boolean removed = local != null && local.id().equals(candidate.getId())
+                        && objects.remove(storedFileName, local);
+                tierObjectRepository.deleteById(candidate.getId());
+                if (removed) {
+                    // Открытые на чтение дескрипторы остаются рабочими до закрытия
+                    Files.deleteIfExists(localPath(storedFileName));
+                    usedBytes.addAndGet(-candidate.getSize());
+                    freed += candidate.getSize();
+                    evicted.increment();
+                }
+            }
+        }
+    }
+
+
+
+
+    // fsync директории: переименование файла объекта переживет сбой питания.
+    private void forceDirectory() throws IOException {
+        try (FileChannel directory = FileChannel.open(settings.directory(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+
+
+
+    // Файл объекта: имя объекта в URL-кодировке (без подкаталогов), слишком длинное - SHA-256 имени.
+    private Path localPath(String storedFileName) {
+        String encoded = URLEncoder.encode(storedFileName, StandardCharsets.UTF_8);
+        if (encoded.length() > MAX_LOCAL_NAME_LENGTH) {
+            encoded = Hashing.sha256().hashString(storedFileName, StandardCharsets.UTF_8).toString();
+        }
+        return settings.directory().resolve(encoded);
+    }
+
+
+
+
+    private static LocalObject toLocalObject(TierObject object) {
+        return new LocalObject(object.getId(), object.getSize(), object.getEtag(), object.getContentType(),
+                object.getState() == TierObjectState.REPLICATED);
+    }
+
+
+
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
@@ -0,0 +1,443 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.dto.FileUploadResponse;
+import com.example.file_uploader.dto.UploadEvent;
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.repository.FileMetadataRepository;
+import com.google.common.collect.Iterables;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Шина событий загрузки внутри узла: смены статуса файла и прогресс передачи в хранилище.
+ *
+ * Подписчики - SSE-соединения (GET /api/files/{id}/events) и long-poll запросы
+ * (GET /api/files/{id}/events/poll). Оба используют асинхронный режим сервлета,
+ * поэтому ожидающее соединение не занимает поток: поток нужен только на время отправки события.
+ * У каждого подписчика своя очередь, события отправляются на uploadEventExecutor по порядку,
+ * и медленный клиент не задерживает воркер загрузки и других подписчиков.
+ *
+ * События публикуются на том узле, где меняется статус. Подписчики на других узлах
+ * узнают о смене статуса при сверке с БД раз в reconcile-interval-ms.
+ */
+@Component
+@Slf4j
+public class UploadEventBus {
+
+    // Размер пакета ID при сверке статусов с БД.
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    // Маркер heartbeat в очереди подписчика (сравнивается по ссылке).
+    private static final UploadEvent HEARTBEAT = new UploadEvent();
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final Executor uploadEventExecutor;
+    private final long sseTimeoutMs;
+    private final long maxPollTimeoutMs;
+    private final long progressStep;
+    private final int maxPendingEvents;
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    public UploadEventBus(FileMetadataRepository fileMetadataRepository,
+                          @Qualifier("uploadEventExecutor") Executor uploadEventExecutor,
+                          @Value("${upload-events.sse-timeout:30m}") Duration sseTimeout,
+                          @Value("${upload-events.max-poll-timeout:60s}") Duration maxPollTimeout,
+                          @Value("${upload-events.progress-step:1MB}") DataSize progressStep,
+                          @Value("${upload-events.max-pending-events:64}") int maxPendingEvents) {
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.uploadEventExecutor = uploadEventExecutor;
+        this.sseTimeoutMs = sseTimeout.toMillis();
+        this.maxPollTimeoutMs = maxPollTimeout.toMillis();
+        this.progressStep = progressStep.toBytes();
+        this.maxPendingEvents = maxPendingEvents;
+    }
+
+    // Публикует смену статуса файла. Вызывается после записи статуса в БД.
+    public void publishStatus(String fileId, FileStatus status, String errorMessage, Long fileSize) {
+        Set<Subscriber> fileSubscribers = subscribers.get(fileId);
+        if (fileSubscribers == null) {
+            return;
+        }
+        UploadEvent event = UploadEvent.builder()
+                .fileId(fileId)
+                .type(UploadEvent.Type.STATUS)
+                .status(status)
+                .errorMessage(errorMessage)
+                .bytesTransferred(status.isCompleted() ? fileSize : null)
+                .totalBytes(fileSize)
+                .timestamp(LocalDateTime.now())
+                .build();
+        fileSubscribers.forEach(subscriber -> subscriber.offer(event));
+    }
+
+
+
+
+    // Публикует прогресс передачи файла (сколько байт из totalBytes уже передано).
+    public void publishProgress(String fileId, long bytesTransferred, Long totalBytes) {
+        Set<Subscriber> fileSubscribers = subscribers.get(fileId);
+        if (fileSubscribers == null) {
+            return;
+        }
+        UploadEvent event = UploadEvent.builder()
+                .fileId(fileId)
+                .type(UploadEvent.Type.PROGRESS)
+                .bytesTransferred(bytesTransferred)
+                .totalBytes(totalBytes)
+                .timestamp(LocalDateTime.now())
+                .build();
+        fileSubscribers.forEach(subscriber -> subscriber.offer(event));
+    }
+
+
+
+
+    // Счетчик прогресса для одной загрузки: принимает порции переданных байт (из любого потока)
+    // и публикует событие не чаще, чем раз в progress-step байт или 1% файла.
+    public LongConsumer progressReporter(String fileId, Long totalBytes) {
+        long step = totalBytes != null ? Math.max(progressStep, totalBytes / 100) : progressStep;
+        AtomicLong transferred = new AtomicLong();
+        AtomicLong published = new AtomicLong();
+        return bytes -> {
+            long total = transferred.addAndGet(bytes);
+            long last = published.get();
+            if (total - last >= step && published.compareAndSet(last, total)) {
+                publishProgress(fileId, total, totalBytes);
+            }
+        };
+    }
+
+
+
+
+    // Открывает SSE-поток событий файла. Первое событие - текущий статус из currentState;
+    // поток закрывается после события с конечным статусом (COMPLETED/FAILED).
+    // Пусто, если файл не найден.
+    public Optional<SseEmitter> openStream(String fileId, Supplier<Optional<FileUploadResponse>> currentState) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        SseSubscriber subscriber = new SseSubscriber(fileId, emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> subscriber.close());
+
+        // Подписка до чтения статуса: смена статуса между чтением и подпиской не потеряется
+        subscribe(subscriber);
+        Optional<FileUploadResponse> current = currentState.get();
+        if (current.isEmpty()) {
+            subscriber.close();
+            return Optional.empty();
+        }
+        subscriber.start(current.get().getStatus(), statusEvent(current.get()));
+        return Optional.of(emitter);
+    }
+
+
+
+
+    // Long-polling: отвечает сразу, если статус файла отличается от lastStatus (или lastStatus не передан),
+    // иначе ждет следующего события не дольше timeout. По истечении ожидания - 204 No Content.
+    public DeferredResult<ResponseEntity<UploadEvent>> awaitEvent(String fileId, FileStatus lastStatus, Duration timeout,
+                                                                  Supplier<Optional<FileUploadResponse>> currentState) {
+        // Тайм-аут 0 у DeferredResult означает бесконечное ожидание, поэтому не меньше секунды
+        long timeoutMs = Math.min(Math.max(timeout.toMillis(), 1000), maxPollTimeoutMs);
+        DeferredResult<ResponseEntity<UploadEvent>> result =
+                new DeferredResult<>(timeoutMs, ResponseEntity.noContent().build());
+        PollSubscriber subscriber = new PollSubscriber(fileId, result);
+        result.onCompletion(subscriber::close);
+
+        subscribe(subscriber);
+        Optional<FileUploadResponse> current = currentState.get();
+        if (current.isEmpty()) {
+            result.setResult(ResponseEntity.notFound().build());
+            subscriber.close();
+            return result;
+        }
+        FileStatus status = current.get().getStatus();
+        if (lastStatus == null || status != lastStatus || FileStatusCache.isTerminal(status)) {
+            subscriber.start(status, statusEvent(current.get()));
+        } else {
+            subscriber.start(status, null);
+        }
+        return result;
+    }
+
+
+
+
+    // Количество ожидающих подписчиков на узле.
+    public int subscriberCount() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+
+
+
+    // Комментарий SSE в открытые потоки: прокси не закрывают соединение по простою,
+    // а оборванные клиентом соединения обнаруживаются при записи и освобождаются.
+    @Scheduled(fixedDelayString = "${upload-events.heartbeat-interval-ms:20000}")
+    public void sendHeartbeats() {
+        subscribers.values().forEach(fileSubscribers -> fileSubscribers.forEach(subscriber -> {
+            if (subscriber instanceof SseSubscriber) {
+                subscriber.offer(HEARTBEAT);
+            }
+        }));
+    }
+
+
+
+
+    // Сверяет статусы файлов, на которые есть подписчики, с БД. Нужна для смен статуса,
+    // сделанных другими узлами (например, воркером, забравшим задачу из очереди).
+    @Scheduled(fixedDelayString = "${upload-events.reconcile-interval-ms:5000}")
+    public void reconcile() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        for (List<String> ids : Iterables.partition(new ArrayList<>(subscribers.keySet()), RECONCILE_BATCH_SIZE)) {
+            try {
+                for (FileMetadata metadata : fileMetadataRepository.findAllById(ids)) {
+                    Set<Subscriber> fileSubscribers = subscribers.get(metadata.getId());
+                    if (fileSubscribers == null) {
+                        continue;
+                    }
+                    for (Subscriber subscriber : fileSubscribers) {
+                        if (subscriber.lastStatus != metadata.getStatus()) {
+                            subscriber.offer(statusEvent(metadata));
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Не удалось сверить статусы {} файлов с подписчиками: {}", ids.size(), e.getMessage());
+            }
+        }
+    }
+
+
+
+
+    private void subscribe(Subscriber subscriber) {
+        subscribers.computeIfAbsent(subscriber.fileId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+    }
+
+
+
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.fileId, (id, fileSubscribers) -> {
+            fileSubscribers.remove(subscriber);
+            return fileSubscribers.isEmpty() ? null : fileSubscribers;
+        });
+    }
+
+
+
+
+    private static UploadEvent statusEvent(FileUploadResponse response) {
+        return UploadEvent.builder()
+                .fileId(response.getId())
+                .type(UploadEvent.Type.STATUS)
+                .status(response.getStatus())
+                .errorMessage(response.getErrorMessage())
+                .bytesTransferred(response.getStatus().isCompleted() ? response.getFileSize() : null)
+                .totalBytes(response.getFileSize())
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+
+
+
+    private static UploadEvent statusEvent(FileMetadata metadata) {
+        return UploadEvent.builder()
+                .fileId(metadata.getId())
+                .type(UploadEvent.Type.STATUS)
+                .status(metadata.getStatus())
+                .errorMessage(metadata.getErrorMessage())
+                .bytesTransferred(metadata.getStatus().isCompleted() ? metadata.getFileSize() : null)
+                .totalBytes(metadata.getFileSize())
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+
+
+
+    // Подписчик с собственной очередью событий. Очередь разбирается одной задачей на
+    // uploadEventExecutor за раз, поэтому события доходят до клиента в порядке публикации.
+    private abstract class Subscriber {
+
+        private final String fileId;
+        private final Deque<UploadEvent> pending = new ConcurrentLinkedDeque<>();
+        // true, пока очередь разбирается (или подписчик еще не запущен)
+        private final AtomicBoolean draining = new AtomicBoolean(true);
+        private volatile FileStatus lastStatus;
+        private volatile boolean closed;
+
+        Subscriber(String fileId) {
+            this.fileId = fileId;
+        }
+
+        // Запоминает прочитанный статус, ставит первое событие (может быть null) перед пришедшими
+        // во время подписки и начинает доставку.
+        void start(FileStatus currentStatus, UploadEvent initial) {
+            if (lastStatus == null) {
+                lastStatus = currentStatus;
+            }
+            if (initial != null) {
+                pending.addFirst(initial);
+            }
+            draining.set(false);
+            schedule();
+        }
+
+        void offer(UploadEvent event) {
+            if (closed) {
+                return;
+            }
+            if (event.getType() == UploadEvent.Type.STATUS) {
+                lastStatus = event.getStatus();
+            } else if (pending.size() >= maxPendingEvents) {
+                // Клиент не успевает читать: прогресс и heartbeat можно пропустить, статус - нет
+                return;
+            }
+            pending.add(event);
+            schedule();
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+            unsubscribe(this);
+        }
+
+        private void schedule() {
+            if (closed || pending.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                uploadEventExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                log.warn("Очередь отправки событий переполнена, подписка на файл {} закрыта", fileId);
+                draining.set(false);
+                abort();
+            }
+        }
+
+        private void drain() {
+            try {
+                UploadEvent event;
+                while (!closed && (event = pending.poll()) != null) {
+                    if (!deliver(event)) {
+                        close();
+                    }
+                }
+            } catch (Exception e) {
+                log.debug("Ошибка отправки события файла {}: {}", fileId, e.getMessage());
+                abort();
+            } finally {
+                draining.set(false);
+            }
+            // События, добавленные после выхода из цикла
+            schedule();
+        }
+
+        // Отправляет событие клиенту. false - подписка завершена.
+        abstract boolean deliver(UploadEvent event) throws IOException;
+
+        // Закрывает подписку без отправки события.
+        abstract void abort();
+    }
+
+
+
+
+    private class SseSubscriber extends Subscriber {
+
+        private final SseEmitter emitter;
+
+        SseSubscriber(String fileId, SseEmitter emitter) {
+            super(fileId);
+            this.emitter = emitter;
+        }
+
+        @Override
+        boolean deliver(UploadEvent event) throws IOException {
+            if (event == HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+                return true;
+            }
+            emitter.send(SseEmitter.event()
+                    .name(event.getType().name().toLowerCase())
+                    .data(event, MediaType.APPLICATION_JSON));
+            if (event.getType() == UploadEvent.Type.STATUS && FileStatusCache.isTerminal(event.getStatus())) {
+                emitter.complete();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        void abort() {
+            close();
+            emitter.complete();
+        }
+    }
+
+
+
+
+    private class PollSubscriber extends Subscriber {
+
+        private final DeferredResult<ResponseEntity<UploadEvent>> result;
+
+        PollSubscriber(String fileId, DeferredResult<ResponseEntity<UploadEvent>> result) {
+            super(fileId);
+            this.result = result;
+        }
+
+        @Override
+        boolean deliver(UploadEvent event) {
+            if (event == HEARTBEAT) {
+                return true;
+            }
+            result.setResult(ResponseEntity.ok(event));
+            return false;
+        }
+
+        @Override
+        void abort() {
+            close();
+            result.setResult(ResponseEntity.noContent().build());
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.UploadJob;
+import com.example.file_uploader.entity.UploadJobStatus;
+import com.example.file_uploader.exception.StorageUnavailableException;
+import com.example.file_uploader.repository.UploadJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Диспетчер очереди загрузок.
+ *
+ * Периодически забирает готовые задачи из таблицы upload_job
+ * (SELECT ... FOR UPDATE SKIP LOCKED) и запускает их на пуле fileUploadExecutor.
+ * Количество одновременно выполняемых задач ограничено семафором, поэтому
+ * узел никогда не берет больше работы, чем может выполнить.
+ *
+ * Задачи переживают перезапуск: узел продлевает аренду своих задач,
+ * а задачи с просроченной арендой возвращаются в очередь и достаются любому узлу.
+ */
+@Component
+@Slf4j
+public class UploadJobDispatcher {
+
+    private final UploadJobRepository uploadJobRepository;
+    private final FileUploadService fileUploadService;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor fileUploadExecutor;
+    private final Semaphore workerSlots;
+    private final Set<String> runningJobIds = ConcurrentHashMap.newKeySet();
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    @Value("${upload-jobs.batch-size:10}")
+    private int batchSize;
+
+    @Value("${upload-jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${upload-jobs.retry-backoff-ms:5000}")
+    private long retryBackoffMs;
+
+    @Value("${upload-jobs.lease-timeout-ms:60000}")
+    private long leaseTimeoutMs;
+
+    public UploadJobDispatcher(UploadJobRepository uploadJobRepository,
+                               FileUploadService fileUploadService,
+                               TransactionTemplate transactionTemplate,
+                               @Qualifier("fileUploadExecutor") Executor fileUploadExecutor,
+                               @Value("${upload-jobs.max-in-flight:10}") int maxInFlight) {
+        this.uploadJobRepository = uploadJobRepository;
+        this.fileUploadService = fileUploadService;
+        this.transactionTemplate = transactionTemplate;
+        this.fileUploadExecutor = fileUploadExecutor;
+        this.workerSlots = new Semaphore(maxInFlight);
+    }
+
+    // Забирает из очереди столько задач, сколько есть свободных воркеров.
+    @Scheduled(fixedDelayString = "${upload-jobs.poll-interval-ms:500}")
+    public void dispatch() {
+        int slots = 0;
+        while (slots < batchSize && workerSlots.tryAcquire()) {
+            slots++;
+        }
+        if (slots == 0) {
+            return;
+        }
+
+        int limit = slots;
+        List<UploadJob> jobs;
+        try {
+            jobs = transactionTemplate.execute(status -> claimJobs(limit));
+        } catch (Exception e) {
+            workerSlots.release(slots);
+            log.error("Ошибка захвата задач из очереди: {}", e.getMessage());
+            return;
+        }
+
+        workerSlots.release(slots - jobs.size());
+        for (UploadJob job : jobs) {
+            submit(job);
+        }
+    }
+
+
+
+
+    // Продлевает аренду задач, выполняющихся на этом узле.
+    @Scheduled(fixedDelayString = "${upload-jobs.lease-renew-interval-ms:15000}")
+    public void renewLeases() {
+        if (runningJobIds.isEmpty()) {
+            return;
+        }
+        uploadJobRepository.renewLeases(Set.copyOf(runningJobIds), nodeId,
+                LocalDateTime.now(), UploadJobStatus.RUNNING);
+    }
+
+
+
+
+    // Возвращает в очередь задачи с просроченной арендой.
+    @Scheduled(fixedDelayString = "${upload-jobs.lease-renew-interval-ms:15000}")
+    public void releaseExpiredLeases() {
+        LocalDateTime deadline = LocalDateTime.now().minusNanos(leaseTimeoutMs * 1_000_000);
+        int released = uploadJobRepository.releaseExpiredLeases(
+                deadline, UploadJobStatus.RUNNING, UploadJobStatus.PENDING);
+        if (released > 0) {
+            log.warn("Возвращено в очередь задач с просроченной арендой: {}", released);
+        }
+    }
+
+
+
+
+    private List<UploadJob> claimJobs(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<UploadJob> jobs = uploadJobRepository.lockNextPending(now, limit);
+        for (UploadJob job : jobs) {
+            job.setStatus(UploadJobStatus.RUNNING);
+            job.setLockedBy(nodeId);
+            job.setLockedAt(now);
+            job.setAttempts(job.getAttempts() + 1);
+        }
+        return jobs;
+    }
+
+
+
+
+    private void submit(UploadJob job) {
+        runningJobIds.add(job.getId());
+        try {
+            fileUploadExecutor.execute(() -> {
+                try {
+                    runJob(job);
+                } finally {
+                    runningJobIds.remove(job.getId());
+                    workerSlots.release();
+                }
+            });
+        } catch (TaskRejectedException e) {
+            log.warn("Пул воркеров переполнен, задача {} возвращается в очередь", job.getId());
+            runningJobIds.remove(job.getId());
+            workerSlots.release();
+            uploadJobRepository.releaseOwned(job.getId(), nodeId, UploadJobStatus.PENDING,
+                    LocalDateTime.now(), job.getLastError());
+        }
+    }
+
+
+
+
+    private void runJob(UploadJob job) {
+        log.info("Задача {} (файл {}), попытка {}", job.getId(), job.getFileId(), job.getAttempts());
+        Path tempFile = Path.of(job.getTempFilePath());
+
+        try {
+            fileUploadService.processUpload(job.getFileId(), tempFile);
+            uploadJobRepository.deleteOwned(job.getId(), nodeId);
+        } catch (Exception e) {
+            handleFailure(job, tempFile, e);
+        }
+    }
+
+
+
+
+    // Планирует повторную попытку с экспоненциальной задержкой или помечает загрузку как FAILED.
+    // Пока хранилище недоступно, задача откладывается без траты попытки, а файл остается в PENDING.
+    private void handleFailure(UploadJob job, Path tempFile, Exception e) {
+        String error = truncate(e.getMessage());
+
+        StorageUnavailableException unavailable = findStorageUnavailable(e);
+        if (unavailable != null) {
+            long delayMs = Math.max(retryBackoffMs, unavailable.getRetryAfter().toMillis());
+            log.warn("Задача {}: хранилище недоступно, отложена на {} мс без траты попытки", job.getId(), delayMs);
+            uploadJobRepository.deferOwned(job.getId(), nodeId, UploadJobStatus.PENDING,
+                    LocalDateTime.now().plusNanos(delayMs * 1_000_000), error);
+            fileUploadService.scheduleRetry(job.getFileId(), error);
+            return;
+        }
+
+        if (job.getAttempts() >= maxAttempts) {
+            log.error("Задача {} провалена после {} попыток: {}", job.getId(), job.getAttempts(), error, e);
+            uploadJobRepository.releaseOwned(job.getId(), nodeId, UploadJobStatus.FAILED,
+                    LocalDateTime.now(), error);
+            fileUploadService.failUpload(job.getFileId(), tempFile, error);
+            return;
+        }
+
+        long delayMs = retryBackoffMs << Math.min(job.getAttempts() - 1, 10);
+        log.warn("Задача {} завершилась ошибкой, повтор через {} мс: {}", job.getId(), delayMs, error);
+        uploadJobRepository.releaseOwned(job.getId(), nodeId, UploadJobStatus.PENDING,
+                LocalDateTime.now().plusNanos(delayMs * 1_000_000), error);
+        fileUploadService.scheduleRetry(job.getFileId(), error);
+    }
+
+
+
+
+    private static StorageUnavailableException findStorageUnavailable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StorageUnavailableException unavailable) {
+                return unavailable;
+            }
+        }
+        return null;
+    }
+
+
+
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.entity.UploadJobStatus;
+import com.example.file_uploader.repository.FileMetadataRepository;
+import com.example.file_uploader.repository.UploadJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.minio.errors.ErrorResponseException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.function.ThrowingSupplier;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Метрики конвейера загрузки (Micrometer, отдаются на /actuator/prometheus).
+ *
+ * - upload.stage - время этапов: checksum, temp_write, storage_put, status_update
+ * - upload.throughput, upload.size - скорость передачи в хранилище и размер файлов (гистограммы)
+ * - upload.in_flight - загрузки, выполняемые узлом сейчас
+ * - upload.files - файлы в статусах PENDING/UPLOADING (по всей БД)
+ * - storage.requests, storage.errors - обращения к MinIO и ошибки по коду S3
+ *
+ * Очереди и активные потоки пулов (executor.*) Spring Boot публикует сам для всех
+ * ThreadPoolTaskExecutor, включая fileUploadExecutor.
+ */
+@Component
+@Slf4j
+public class UploadMetrics {
+
+    // Способ загрузки - тег path метрик.
+    public enum UploadPath {
+        STAGED,
+        STREAM,
+        RESUMABLE,
+        PRESIGNED
+    }
+
+    public enum Stage {
+        CHECKSUM,
+        TEMP_WRITE,
+        STORAGE_PUT,
+        STATUS_UPDATE
+    }
+
+    // Выполняемая загрузка; close() не бросает проверяемых исключений.
+    public interface InFlight extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Статусы, которые считаются по БД: конечных файлов слишком много для частого COUNT.
+    private static final List<FileStatus> ACTIVE_STATUSES = List.of(FileStatus.PENDING, FileStatus.UPLOADING);
+
+    private final MeterRegistry registry;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final UploadJobRepository uploadJobRepository;
+    private final Map<UploadPath, AtomicInteger> inFlight = new EnumMap<>(UploadPath.class);
+    private final Map<FileStatus, AtomicLong> filesByStatus = new EnumMap<>(FileStatus.class);
+    private final AtomicLong queuedJobs = new AtomicLong();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public UploadMetrics(MeterRegistry registry,
+                         FileMetadataRepository fileMetadataRepository,
+                         UploadJobRepository uploadJobRepository,
+                         DownstreamLimiter downstreamLimiter) {
+        this.registry = registry;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.uploadJobRepository = uploadJobRepository;
+
+        for (UploadPath path : UploadPath.values()) {
+            AtomicInteger counter = new AtomicInteger();
+            inFlight.put(path, counter);
+            Gauge.builder("upload.in_flight", counter, AtomicInteger::get)
+                    .description("Загрузки, выполняемые узлом")
+                    .tag("path", tagValue(path))
+                    .register(registry);
+        }
+        for (FileStatus status : ACTIVE_STATUSES) {
+            AtomicLong count = new AtomicLong();
+            filesByStatus.put(status, count);
+            Gauge.builder("upload.files", count, AtomicLong::get)
+                    .description("Файлы в статусе (по всем узлам)")
+                    .tag("status", status.name())
+                    .register(registry);
+        }
+        Gauge.builder("upload.jobs.queued", queuedJobs, AtomicLong::get)
+                .description("Задачи upload_job, ожидающие воркера")
+                .register(registry);
+        for (DownstreamLimiter.Downstream downstream : DownstreamLimiter.Downstream.values()) {
+            Gauge.builder("downstream.permits.available", downstreamLimiter,
+                            limiter -> limiter.availablePermits(downstream))
+                    .description("Свободные слоты обращения к зависимости")
+                    .tag("downstream", tagValue(downstream))
+                    .register(registry);
+        }
+    }
+
+    // Выполняет этап загрузки и записывает его время с исходом success/error.
+    public <T> T time(Stage stage, ThrowingSupplier<T> action) throws Exception {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = action.getWithException();
+            success = true;
+            return result;
+        } finally {
+            recordStage(stage, System.nanoTime() - start, success);
+        }
+    }
+
+
+
+
+    // Для этапов, которые удобнее измерить вручную (без проверяемых исключений).
+    public void recordStage(Stage stage, long nanos, boolean success) {
+        timer("upload.stage", "stage", tagValue(stage), success).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+
+
+
+    // Обращение к MinIO: время по операции, ошибки - по коду ответа S3 (или классу исключения).
+    public <T> T storageCall(String operation, ThrowingSupplier<T> action) throws Exception {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = action.getWithException();
+            success = true;
+            return result;
+        } catch (Exception e) {
+            storageError(operation, e);
+            throw e;
+        } finally {
+            timer("storage.requests", "operation", operation, success)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+
+
+
+    public void storageError(String operation, Throwable error) {
+        Counter.builder("storage.errors")
+                .description("Ошибки обращений к MinIO")
+                .tag("operation", operation)
+                .tag("code", errorCode(error))
+                .register(registry)
+                .increment();
+    }
+
+
+
+
+    // Загрузка выполняется узлом: счетчик upload.in_flight уменьшается вызовом close().
+    public InFlight inFlight(UploadPath path) {
+        AtomicInteger counter = inFlight.get(path);
+        counter.incrementAndGet();
+        return counter::decrementAndGet;
+    }
+
+
+
+
+    // Размер загруженного файла и скорость его передачи в хранилище (nanos = 0 - скорость неизвестна).
+    public void recordTransfer(UploadPath path, long bytes, long nanos) {
+        String tag = tagValue(path);
+        DistributionSummary.builder("upload.size")
+                .description("Размер загруженных файлов")
+                .baseUnit("bytes")
+                .tag("path", tag)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+        if (nanos > 0) {
+            DistributionSummary.builder("upload.throughput")
+                    .description("Скорость передачи файла в хранилище")
+                    .baseUnit("bytes_per_second")
+                    .tag("path", tag)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(bytes * 1_000_000_000.0 / nanos);
+        }
+    }
+
+
+
+
+    // Обновляет значения gauge'ей, которые считаются по БД.
+    @Scheduled(fixedDelayString = "${upload-metrics.db-refresh-interval-ms:15000}")
+    public void refreshDatabaseGauges() {
+        try {
+            for (FileStatus status : ACTIVE_STATUSES) {
+                filesByStatus.get(status).set(fileMetadataRepository.countByStatus(status));
+            }
+            queuedJobs.set(uploadJobRepository.countByStatus(UploadJobStatus.PENDING));
+        } catch (Exception e) {
+            log.warn("Не удалось обновить метрики статусов: {}", e.getMessage());
+        }
+    }
+
+
+
+
+    private Timer timer(String name, String tagKey, String tagValue, boolean success) {
+        String outcome = success ? "success" : "error";
+        return timers.computeIfAbsent(name + '|' + tagValue + '|' + outcome, key -> Timer.builder(name)
+                .tag(tagKey, tagValue)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+
+
+
+    static String errorCode(Throwable error) {
+        if (error instanceof ErrorResponseException e && e.errorResponse() != null) {
+            return e.errorResponse().code();
+        }
+        return error.getClass().getSimpleName();
+    }
+
+
+
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase();
+    }
+}
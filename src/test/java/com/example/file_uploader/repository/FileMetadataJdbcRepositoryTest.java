@@ -0,0 +1,120 @@
+package com.example.file_uploader.repository;
+
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository.StatusUpdate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Вставка с ON CONFLICT DO NOTHING и условная смена статуса на H2 в режиме PostgreSQL.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(FileMetadataJdbcRepository.class)
+@ActiveProfiles("test")
+class FileMetadataJdbcRepositoryTest {
+
+	@Autowired
+	private FileMetadataJdbcRepository jdbcRepository;
+
+	@Autowired
+	private FileMetadataRepository fileMetadataRepository;
+
+	@Test
+	void insertIfAbsentKeepsExistingRowForTakenKey() {
+		String key = UUID.randomUUID().toString();
+		FileMetadata first = metadata(key);
+		FileMetadata second = metadata(key);
+
+		assertThat(jdbcRepository.insertIfAbsent(first)).isTrue();
+		assertThat(jdbcRepository.insertIfAbsent(second)).isFalse();
+
+		assertThat(fileMetadataRepository.findByIdempotencyKey(key))
+				.get()
+				.extracting(FileMetadata::getId)
+				.isEqualTo(first.getId());
+		assertThat(fileMetadataRepository.findById(second.getId())).isEmpty();
+	}
+
+	@Test
+	void insertAllIfAbsentInsertsOnlyFirstOfDuplicateKeysInBatch() {
+		String existingKey = UUID.randomUUID().toString();
+		jdbcRepository.insertIfAbsent(metadata(existingKey));
+		String duplicateKey = UUID.randomUUID().toString();
+
+		boolean[] inserted = jdbcRepository.insertAllIfAbsent(List.of(
+				metadata(duplicateKey), metadata(duplicateKey), metadata(existingKey),
+				metadata(UUID.randomUUID().toString())));
+
+		assertThat(inserted).containsExactly(true, false, false, true);
+		assertThat(fileMetadataRepository.findByIdempotencyKeyIn(List.of(duplicateKey, existingKey))).hasSize(2);
+	}
+
+	@Test
+	void updateStatusesSkipsRowsInOtherStatus() {
+		FileMetadata pending = metadata(UUID.randomUUID().toString());
+		FileMetadata claimed = metadata(UUID.randomUUID().toString());
+		jdbcRepository.insertIfAbsent(pending);
+		jdbcRepository.insertIfAbsent(claimed);
+
+		boolean[] updated = jdbcRepository.updateStatuses(List.of(
+				StatusUpdate.of(pending.getId(), FileStatus.UPLOADING, FileStatus.COMPLETED, null),
+				StatusUpdate.of(claimed.getId(), FileStatus.PENDING, FileStatus.UPLOADING, null),
+				StatusUpdate.of(UUID.randomUUID().toString(), FileStatus.PENDING, FileStatus.UPLOADING, null)));
+
+		assertThat(updated).containsExactly(false, true, false);
+		assertThat(fileMetadataRepository.findById(pending.getId()))
+				.get()
+				.extracting(FileMetadata::getStatus)
+				.isEqualTo(FileStatus.PENDING);
+		assertThat(fileMetadataRepository.findById(claimed.getId()))
+				.get()
+				.extracting(FileMetadata::getStatus)
+				.isEqualTo(FileStatus.UPLOADING);
+	}
+
+	@Test
+	void updateStatusesWithoutExpectedStatusUpdatesAnyStatus() {
+		FileMetadata file = metadata(UUID.randomUUID().toString());
+		jdbcRepository.insertIfAbsent(file);
+
+		boolean[] updated = jdbcRepository.updateStatuses(List.of(
+				StatusUpdate.of(file.getId(), null, FileStatus.FAILED, "ошибка")));
+
+		assertThat(updated).containsExactly(true);
+		assertThat(fileMetadataRepository.findById(file.getId()))
+				.get()
+				.satisfies(row -> {
+					assertThat(row.getStatus()).isEqualTo(FileStatus.FAILED);
+					assertThat(row.getErrorMessage()).isEqualTo("ошибка");
+				});
+	}
+
+	// Новая запись в статусе PENDING с заданным id - так ее готовит IdempotencyService.
+	private static FileMetadata metadata(String idempotencyKey) {
+		LocalDateTime now = LocalDateTime.now();
+		return FileMetadata.builder()
+				.id(UUID.randomUUID().toString())
+				.idempotencyKey(idempotencyKey)
+				.originalFileName("file.bin")
+				.storedFileName(UUID.randomUUID() + ".bin")
+				.contentType("application/octet-stream")
+				.fileSize(1024L)
+				.bucketName("test-bucket")
+				.status(FileStatus.PENDING)
+				.createdAt(now)
+				.updatedAt(now)
+				.build();
+	}
+}
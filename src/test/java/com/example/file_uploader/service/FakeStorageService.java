@@ -0,0 +1,206 @@
+package com.example.file_uploader.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Хранилище в памяти вместо MinIO для нагрузочных тестов и бенчмарков (модуль benchmarks
+ * получает класс через test-jar), с имитацией задержки и сбоев.
+ *
+ * Каждая запись (uploadFile, uploadStream, uploadPart, completeMultipartUpload) ждет
+ * latency + случайную добавку до jitter и с вероятностью failureRate завершается IOException
+ * (для ResilientStorageService это временная ошибка, как обрыв соединения с MinIO).
+ * Содержимое объектов не хранится - только размер. ETag записи одним запросом - MD5 прочитанных
+ * байт, как у MinIO, поэтому проверка контрольной суммы после загрузки проходит.
+ */
+public class FakeStorageService implements StorageService {
+
+	private volatile Duration latency;
+	private volatile Duration jitter;
+	private volatile double failureRate;
+
+	private final ConcurrentSkipListMap<String, StoredObjectInfo> objects = new ConcurrentSkipListMap<>();
+	private final Map<String, Long> multipartSizes = new ConcurrentHashMap<>();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong injectedFailures = new AtomicLong();
+
+	public FakeStorageService(Duration latency, Duration jitter, double failureRate) {
+		this.latency = latency;
+		this.jitter = jitter;
+		this.failureRate = failureRate;
+	}
+
+	@Override
+	public String uploadFile(Path source, long size, String contentType, String storedFileName,
+							 Checksummer checksummer, LongConsumer progress) throws Exception {
+		try (InputStream in = Files.newInputStream(source)) {
+			String etag = uploadStream(checksummer != null ? new ChecksumInputStream(in, checksummer) : in,
+					size, contentType, storedFileName);
+			if (progress != null) {
+				progress.accept(size);
+			}
+			return etag;
+		}
+	}
+
+	@Override
+	public String uploadStream(InputStream inputStream, long size, String contentType,
+							   String storedFileName) throws Exception {
+		ChecksumInputStream md5 = new ChecksumInputStream(inputStream, ChecksumAlgorithm.MD5.newChecksummer());
+		long read = md5.transferTo(OutputStream.nullOutputStream());
+		simulateWrite("putObject");
+		String etag = md5.getChecksum();
+		objects.put(storedFileName, new StoredObjectInfo(read, etag, contentType));
+		return etag;
+	}
+
+	@Override
+	public String createMultipartUpload(String storedFileName, String contentType) {
+		String uploadId = UUID.randomUUID().toString();
+		multipartSizes.put(uploadId, 0L);
+		return uploadId;
+	}
+
+	@Override
+	public String uploadPart(String storedFileName, String uploadId, int partNumber,
+							 InputStream data, long length) throws Exception {
+		long read = data.transferTo(OutputStream.nullOutputStream());
+		simulateWrite("uploadPart");
+		multipartSizes.merge(uploadId, read, Long::sum);
+		return newEtag();
+	}
+
+	@Override
+	public String completeMultipartUpload(String storedFileName, String uploadId,
+										  SortedMap<Integer, String> partEtags) throws Exception {
+		simulateWrite("completeMultipartUpload");
+		String etag = newEtag() + "-" + partEtags.size();
+		objects.put(storedFileName, new StoredObjectInfo(multipartSizes.remove(uploadId), etag, null));
+		return etag;
+	}
+
+	@Override
+	public void abortMultipartUpload(String storedFileName, String uploadId) {
+		multipartSizes.remove(uploadId);
+	}
+
+	@Override
+	public InputStream getObject(String storedFileName, long offset, Long length) throws Exception {
+		StoredObjectInfo info = objects.get(storedFileName);
+		if (info == null) {
+			throw new FileNotFoundException(storedFileName);
+		}
+		long available = Math.max(0, info.size() - offset);
+		return new ByteArrayInputStream(new byte[(int) Math.min(available, length != null ? length : available)]);
+	}
+
+	@Override
+	public String presignUpload(String storedFileName, Duration expiry) {
+		return "http://localhost/" + storedFileName;
+	}
+
+	@Override
+	public String presignDownload(String storedFileName, String downloadFileName, Duration expiry) {
+		return "http://localhost/" + storedFileName;
+	}
+
+	@Override
+	public Optional<StoredObjectInfo> statObject(String storedFileName) {
+		return Optional.ofNullable(objects.get(storedFileName));
+	}
+
+	@Override
+	public void deleteFile(String storedFileName) {
+		objects.remove(storedFileName);
+	}
+
+	@Override
+	public int deleteFiles(Collection<String> storedFileNames) {
+		storedFileNames.forEach(objects::remove);
+		return storedFileNames.size();
+	}
+
+	// Время изменения не хранится: объекты всегда выглядят только что записанными
+	// и не попадают под уборку объектов без записи о файле.
+	@Override
+	public List<StoredObjectSummary> listObjects(String startAfter, int limit) {
+		var tail = startAfter != null ? objects.tailMap(startAfter, false) : objects;
+		return tail.entrySet().stream()
+				.limit(limit)
+				.map(entry -> new StoredObjectSummary(entry.getKey(), entry.getValue().size(), Instant.now()))
+				.toList();
+	}
+
+	@Override
+	public boolean fileExists(String storedFileName) {
+		return objects.containsKey(storedFileName);
+	}
+
+	@Override
+	public String calculateChecksum(MultipartFile file) throws Exception {
+		try (ChecksumInputStream in = new ChecksumInputStream(file.getInputStream(), ChecksumAlgorithm.MD5.newChecksummer())) {
+			in.transferTo(OutputStream.nullOutputStream());
+			return in.getChecksum();
+		}
+	}
+
+	// Меняет поведение на ходу: например, «восстановление» хранилища после серии сбоев.
+	public void setFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+	}
+
+	public void setLatency(Duration latency, Duration jitter) {
+		this.latency = latency;
+		this.jitter = jitter;
+	}
+
+	public long writeCount() {
+		return writes.get();
+	}
+
+	public long injectedFailureCount() {
+		return injectedFailures.get();
+	}
+
+	public int objectCount() {
+		return objects.size();
+	}
+
+	private void simulateWrite(String operation) throws IOException, InterruptedException {
+		writes.incrementAndGet();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long delayMs = latency.toMillis() + (jitter.isZero() ? 0 : random.nextLong(jitter.toMillis() + 1));
+		if (delayMs > 0) {
+			Thread.sleep(delayMs);
+		}
+		if (failureRate > 0 && random.nextDouble() < failureRate) {
+			injectedFailures.incrementAndGet();
+			throw new IOException("Имитация сбоя хранилища: " + operation);
+		}
+	}
+
+	private static String newEtag() {
+		return HexFormat.of().formatHex(UUID.randomUUID().toString().getBytes(), 0, 16);
+	}
+}
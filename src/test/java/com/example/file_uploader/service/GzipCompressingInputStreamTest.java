@@ -0,0 +1,50 @@
+package com.example.file_uploader.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GzipCompressingInputStream: результат читается стандартным GZIPInputStream.
+ */
+class GzipCompressingInputStreamTest {
+
+	@Test
+	void roundTripsCompressibleData() throws Exception {
+		byte[] original = "timestamp,level,message\n2024-01-15T10:30:00,INFO,upload completed\n"
+				.repeat(20_000).getBytes(StandardCharsets.UTF_8);
+
+		byte[] compressed = compress(original);
+
+		assertThat(compressed.length).isLessThan(original.length / 5);
+		assertThat(decompress(compressed)).isEqualTo(original);
+	}
+
+	@Test
+	void roundTripsIncompressibleAndEmptyData() throws Exception {
+		byte[] random = new byte[300_000];
+		new Random(42).nextBytes(random);
+
+		assertThat(decompress(compress(random))).isEqualTo(random);
+		assertThat(decompress(compress(new byte[0]))).isEmpty();
+	}
+
+	private static byte[] compress(byte[] data) throws Exception {
+		try (InputStream in = new GzipCompressingInputStream(new ByteArrayInputStream(data), Deflater.DEFAULT_COMPRESSION)) {
+			return in.readAllBytes();
+		}
+	}
+
+	private static byte[] decompress(byte[] data) throws Exception {
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			return in.readAllBytes();
+		}
+	}
+}
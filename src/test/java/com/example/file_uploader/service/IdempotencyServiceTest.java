@@ -0,0 +1,76 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Создание записей по ключу идемпотентности на H2 в режиме PostgreSQL.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({IdempotencyService.class, FileMetadataJdbcRepository.class})
+@ActiveProfiles("test")
+class IdempotencyServiceTest {
+
+	@Autowired
+	private IdempotencyService idempotencyService;
+
+	@Test
+	void claimReturnsExistingRecordForTakenKey() {
+		String key = UUID.randomUUID().toString();
+
+		IdempotencyService.Claim first = idempotencyService.claim(candidate(key));
+		IdempotencyService.Claim second = idempotencyService.claim(candidate(key));
+
+		assertThat(first.created()).isTrue();
+		assertThat(second.created()).isFalse();
+		assertThat(second.metadata().getId()).isEqualTo(first.metadata().getId());
+		assertThat(idempotencyService.findExisting(key))
+				.get()
+				.extracting(FileMetadata::getId)
+				.isEqualTo(first.metadata().getId());
+	}
+
+	@Test
+	void claimAllResolvesDuplicateAndTakenKeys() {
+		String existingKey = UUID.randomUUID().toString();
+		IdempotencyService.Claim existing = idempotencyService.claim(candidate(existingKey));
+		String duplicateKey = UUID.randomUUID().toString();
+		String newKey = UUID.randomUUID().toString();
+
+		List<IdempotencyService.Claim> claims = idempotencyService.claimAll(List.of(
+				candidate(duplicateKey), candidate(duplicateKey), candidate(existingKey), candidate(newKey)));
+
+		assertThat(claims).extracting(IdempotencyService.Claim::created)
+				.containsExactly(true, false, false, true);
+		// Повтор ключа внутри пакета получает запись, созданную первым вхождением
+		assertThat(claims.get(1).metadata().getId()).isEqualTo(claims.get(0).metadata().getId());
+		assertThat(claims.get(2).metadata().getId()).isEqualTo(existing.metadata().getId());
+		assertThat(claims).extracting(claim -> claim.metadata().getIdempotencyKey())
+				.containsExactly(duplicateKey, duplicateKey, existingKey, newKey);
+	}
+
+	private static FileMetadata candidate(String idempotencyKey) {
+		return FileMetadata.builder()
+				.idempotencyKey(idempotencyKey)
+				.originalFileName("file.bin")
+				.storedFileName(UUID.randomUUID() + ".bin")
+				.contentType("application/octet-stream")
+				.fileSize(1024L)
+				.bucketName("test-bucket")
+				.status(FileStatus.PENDING)
+				.build();
+	}
+}
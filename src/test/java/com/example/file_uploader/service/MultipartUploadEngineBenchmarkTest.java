@@ -0,0 +1,112 @@
+package com.example.file_uploader.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.BucketExistsArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioAsyncClient;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Сравнение пропускной способности putObject (один поток) и MultipartUploadEngine.
+ *
+ * Запускается только против локального MinIO (например, из docker-compose):
+ * ./mvnw test -Dtest=MultipartUploadEngineBenchmarkTest -Dbenchmark.minio.endpoint=http://localhost:9000
+ */
+@EnabledIfSystemProperty(named = "benchmark.minio.endpoint", matches = ".+")
+class MultipartUploadEngineBenchmarkTest {
+
+	private static final String BUCKET = "benchmark";
+	private static final long FILE_SIZE = DataSize.parse(System.getProperty("benchmark.file-size", "512MB")).toBytes();
+
+	private static MinioClient minioClient;
+	private static MultipartMinioClient multipartClient;
+	private static Path sourceFile;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		String endpoint = System.getProperty("benchmark.minio.endpoint");
+		String accessKey = System.getProperty("benchmark.minio.access-key", "minioadmin");
+		String secretKey = System.getProperty("benchmark.minio.secret-key", "minioadmin");
+
+		minioClient = MinioClient.builder().endpoint(endpoint).credentials(accessKey, secretKey).build();
+		multipartClient = new MultipartMinioClient(
+				MinioAsyncClient.builder().endpoint(endpoint).credentials(accessKey, secretKey).build());
+
+		if (!minioClient.bucketExists(BucketExistsArgs.builder().bucket(BUCKET).build())) {
+			minioClient.makeBucket(MakeBucketArgs.builder().bucket(BUCKET).build());
+		}
+
+		sourceFile = Files.createTempFile("multipart-benchmark-", ".bin");
+		byte[] chunk = new byte[1024 * 1024];
+		new Random(42).nextBytes(chunk);
+		try (OutputStream out = Files.newOutputStream(sourceFile)) {
+			for (long written = 0; written < FILE_SIZE; written += chunk.length) {
+				out.write(chunk, 0, (int) Math.min(chunk.length, FILE_SIZE - written));
+			}
+		}
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		Files.deleteIfExists(sourceFile);
+	}
+
+	@Test
+	void compareSingleStreamAndParallelParts() throws Exception {
+		report("putObject (1 поток)", measure(() -> {
+			try (InputStream in = Files.newInputStream(sourceFile)) {
+				minioClient.putObject(PutObjectArgs.builder()
+						.bucket(BUCKET).object("single").stream(in, FILE_SIZE, -1).build());
+			}
+		}));
+
+		for (int parallelism : new int[]{1, 4, 8, 16}) {
+			ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+			executor.setCorePoolSize(parallelism);
+			executor.setMaxPoolSize(parallelism);
+			executor.initialize();
+			try {
+				MultipartUploadEngine engine = new MultipartUploadEngine(
+						multipartClient, executor, DataSize.ofMegabytes(16), parallelism, 3, 200,
+						new DownstreamLimiter(64, 60_000), new SimpleMeterRegistry());
+				report("MultipartUploadEngine, parallelism=" + parallelism, measure(() ->
+						engine.upload(sourceFile, FILE_SIZE, BUCKET, "parallel-" + parallelism,
+								"application/octet-stream", ChecksumAlgorithm.MD5.newChecksummer(), null)));
+			} finally {
+				executor.shutdown();
+			}
+			minioClient.removeObject(RemoveObjectArgs.builder().bucket(BUCKET).object("parallel-" + parallelism).build());
+		}
+		minioClient.removeObject(RemoveObjectArgs.builder().bucket(BUCKET).object("single").build());
+	}
+
+	private static long measure(Upload upload) throws Exception {
+		long start = System.nanoTime();
+		upload.run();
+		return System.nanoTime() - start;
+	}
+
+	private static void report(String name, long nanos) {
+		double seconds = nanos / 1e9;
+		System.out.printf("%-45s %8.2f с %10.1f MB/s%n", name, seconds, FILE_SIZE / 1024.0 / 1024.0 / seconds);
+	}
+
+	@FunctionalInterface
+	private interface Upload {
+		void run() throws Exception;
+	}
+}
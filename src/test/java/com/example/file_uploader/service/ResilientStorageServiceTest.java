@@ -0,0 +1,111 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.exception.StorageUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ResilientStorageService поверх FakeStorageService: повторы, срок операции и circuit breaker.
+ */
+class ResilientStorageServiceTest {
+
+	private static final ResilientStorageService.Policy POLICY = new ResilientStorageService.Policy(
+			Duration.ofMillis(200), Duration.ofMillis(200), DataSize.ofMegabytes(100), Duration.ofSeconds(5),
+			3, Duration.ofMillis(1), Duration.ofMillis(5), 3, Duration.ofMillis(300));
+
+	@TempDir
+	Path tempDir;
+
+	private Path file;
+	private FakeStorageService fake;
+	private ResilientStorageService storage;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		file = Files.write(tempDir.resolve("file.bin"), new byte[1024]);
+		fake = new FakeStorageService(Duration.ZERO, Duration.ZERO, 0);
+		storage = new ResilientStorageService(fake, "fake", POLICY, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void retriesTransientFailures() {
+		fake.setFailureRate(1);
+
+		assertThatThrownBy(() -> upload("a"))
+				.isInstanceOf(StorageUnavailableException.class);
+		assertThat(fake.writeCount()).isEqualTo(POLICY.maxAttempts());
+	}
+
+	@Test
+	void opensCircuitAndFailsFast() throws Exception {
+		fake.setFailureRate(1);
+		assertThatThrownBy(() -> upload("a")).isInstanceOf(StorageUnavailableException.class);
+		assertThat(storage.getCircuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+		// Пока цепь разомкнута, хранилище не вызывается
+		long writes = fake.writeCount();
+		assertThatThrownBy(() -> upload("b"))
+				.isInstanceOf(StorageUnavailableException.class)
+				.satisfies(e -> assertThat(((StorageUnavailableException) e).getRetryAfter()).isPositive());
+		assertThat(fake.writeCount()).isEqualTo(writes);
+
+		// После open-duration пробный вызов проходит и замыкает цепь
+		fake.setFailureRate(0);
+		Thread.sleep(POLICY.openDuration().toMillis() + 50);
+		upload("c");
+		assertThat(storage.getCircuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+		assertThat(fake.fileExists("c")).isTrue();
+	}
+
+	@Test
+	void probesWithShortCallBeforeLongTransfer() throws Exception {
+		fake.setFailureRate(1);
+		assertThatThrownBy(() -> upload("a")).isInstanceOf(StorageUnavailableException.class);
+		fake.setFailureRate(0);
+		Thread.sleep(POLICY.openDuration().toMillis() + 50);
+		assertThat(storage.getCircuitState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+		// Срок передачи 100 МБ больше metadata-timeout: цепь замыкает пробный statObject, а не сама передача
+		long writes = fake.writeCount();
+		long size = DataSize.ofMegabytes(100).toBytes();
+		assertThat(storage.transferTimeout(size)).isGreaterThan(POLICY.metadataTimeout());
+		storage.uploadFile(file, size, "application/octet-stream", "large", null, null);
+
+		assertThat(storage.getCircuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+		assertThat(fake.writeCount()).isEqualTo(writes + 1);
+	}
+
+	@Test
+	void enforcesDeadline() {
+		fake.setLatency(Duration.ofSeconds(2), Duration.ZERO);
+
+		long start = System.nanoTime();
+		assertThatThrownBy(() -> storage.uploadStream(Files.newInputStream(file), 1024, null, "slow"))
+				.isInstanceOf(StorageUnavailableException.class)
+				.hasCauseInstanceOf(TimeoutException.class);
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+	}
+
+	@Test
+	void passesThroughNonTransientErrors() {
+		assertThatThrownBy(() -> storage.getObject("missing", 0, null))
+				.isInstanceOf(FileNotFoundException.class);
+		assertThat(storage.getCircuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+
+	private void upload(String name) throws Exception {
+		storage.uploadFile(file, 1024, "application/octet-stream", name, null, null);
+	}
+}
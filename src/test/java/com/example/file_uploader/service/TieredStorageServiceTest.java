@@ -0,0 +1,312 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.FileMetadata;
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.entity.TierObject;
+import com.example.file_uploader.entity.TierObjectState;
+import com.example.file_uploader.repository.FileMetadataJdbcRepository;
+import com.example.file_uploader.repository.FileMetadataRepository;
+import com.example.file_uploader.repository.TierObjectRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * TieredStorageService на временном каталоге поверх FakeStorageService и индекса в H2:
+ * восстановление, вытеснение, запись сразу в MinIO и write-back с повторами.
+ * События копирования доходят до FileUploadService, который переводит файлы из COMPLETED_LOCAL в COMPLETED.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({FileUploadService.class, FileStatusUpdater.class, FileStatusCache.class, UploadEventBus.class,
+		UploadMetrics.class, DownstreamLimiter.class, ContentDeduplicationService.class, IdempotencyService.class,
+		CompressionStage.class, FileMetadataJdbcRepository.class, TieredStorageServiceTest.Config.class})
+@ActiveProfiles("test")
+// Сервис работает с индексом вне транзакции теста, как в приложении: каждый вызов репозитория - своя транзакция
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TieredStorageServiceTest {
+
+	private static final Duration INITIAL_BACKOFF = Duration.ofMinutes(1);
+
+	// Зависимости FileUploadService, которых нет в срезе @DataJpaTest. Хранилище контекста в тестах не используется:
+	// у каждого теста свой FakeStorageService под TieredStorageService.
+	@TestConfiguration
+	static class Config {
+
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+		@Bean
+		Executor uploadEventExecutor() {
+			return Runnable::run;
+		}
+
+		@Bean
+		StorageService storageService() {
+			return new FakeStorageService(Duration.ZERO, Duration.ZERO, 0);
+		}
+	}
+
+	@Autowired
+	private TierObjectRepository tierObjectRepository;
+
+	@Autowired
+	private FileMetadataRepository fileMetadataRepository;
+
+	@Autowired
+	private ApplicationEventPublisher applicationEventPublisher;
+
+	@TempDir
+	Path tempDir;
+
+	private String nodeId;
+	private FakeStorageService remote;
+	private List<Object> events;
+
+	@BeforeEach
+	void setUp() {
+		nodeId = UUID.randomUUID().toString();
+		remote = new FakeStorageService(Duration.ZERO, Duration.ZERO, 0);
+		events = new CopyOnWriteArrayList<>();
+	}
+
+	@AfterEach
+	void tearDown() {
+		tierObjectRepository.deleteAll(tierObjectRepository.findByNodeId(nodeId));
+	}
+
+	@Test
+	void recoversStateFromIndex() throws Exception {
+		TieredStorageService before = tier(DataSize.ofKilobytes(10), DataSize.ofKilobytes(1));
+		byte[] kept = bytes(1024);
+		before.uploadStream(new ByteArrayInputStream(kept), kept.length, "application/octet-stream", "kept.bin");
+		Files.write(tempDir.resolve("stray.bin"), bytes(10));
+		Files.write(tempDir.resolve(UUID.randomUUID() + ".tmp"), bytes(10));
+		tierObjectRepository.save(TierObject.builder()
+				.nodeId(nodeId)
+				.storedFileName("lost.bin")
+				.size(10)
+				.state(TierObjectState.LOCAL)
+				.build());
+
+		TieredStorageService after = tier(DataSize.ofKilobytes(10), DataSize.ofKilobytes(1));
+
+		// Подтвержденный объект читается с диска, в MinIO его еще нет
+		assertThat(remote.fileExists("kept.bin")).isFalse();
+		try (InputStream in = after.getObject("kept.bin", 0, null)) {
+			assertThat(in.readAllBytes()).isEqualTo(kept);
+		}
+		assertThat(after.isDurable("kept.bin")).isFalse();
+		// Файл без записи индекса сохранен для разбора, незавершенная запись и запись без файла удалены
+		assertThat(tempDir.resolve("unindexed").resolve("stray.bin")).exists();
+		assertThat(tempDir.resolve("stray.bin")).doesNotExist();
+		try (var files = Files.list(tempDir)) {
+			assertThat(files.map(file -> file.getFileName().toString()))
+					.containsExactlyInAnyOrder("kept.bin", "unindexed");
+		}
+		assertThat(tierObjectRepository.findByNodeId(nodeId))
+				.extracting(TierObject::getStoredFileName)
+				.containsExactly("kept.bin");
+	}
+
+	@Test
+	void writesThroughAndEvictsReplicatedObjectsUnderCapacity() throws Exception {
+		TieredStorageService tier = tier(DataSize.ofKilobytes(3), DataSize.ofKilobytes(1));
+		for (String name : List.of("a.bin", "b.bin", "c.bin")) {
+			upload(tier, name, 1024);
+		}
+
+		// Бюджет занят нескопированными объектами: вытеснять нечего, запись идет сразу в MinIO
+		upload(tier, "d.bin", 1024);
+		assertThat(remote.fileExists("d.bin")).isTrue();
+		assertThat(tempDir.resolve("d.bin")).doesNotExist();
+
+		tier.writeBack();
+		assertThat(remote.objectCount()).isEqualTo(4);
+
+		// После копирования место освобождается за счет скопированных объектов
+		upload(tier, "e.bin", 1024);
+		assertThat(tempDir.resolve("e.bin")).exists();
+		List<TierObject> indexed = tierObjectRepository.findByNodeId(nodeId);
+		assertThat(indexed).hasSize(3);
+		String evicted = List.of("a.bin", "b.bin", "c.bin").stream()
+				.filter(name -> indexed.stream().noneMatch(object -> object.getStoredFileName().equals(name)))
+				.findFirst()
+				.orElseThrow();
+		assertThat(tempDir.resolve(evicted)).doesNotExist();
+		try (InputStream in = tier.getObject(evicted, 0, null)) {
+			assertThat(in.readAllBytes()).hasSize(1024);
+		}
+	}
+
+	@Test
+	void spillsToRemoteWhenUnknownSizeStreamOutgrowsCapacity() throws Exception {
+		TieredStorageService tier = tier(DataSize.ofKilobytes(2), DataSize.ofKilobytes(1));
+		byte[] content = bytes(5 * 1024);
+
+		String etag = tier.uploadStream(new ByteArrayInputStream(content), -1, "application/octet-stream", "large.bin");
+
+		// FakeStorageService хранит размер и MD5 полученного потока: начало с диска и остаток дошли целиком
+		StoredObjectInfo stored = remote.statObject("large.bin").orElseThrow();
+		assertThat(stored.size()).isEqualTo(content.length);
+		assertThat(stored.etag()).isEqualTo(md5(content)).isEqualTo(etag);
+		assertThat(tierObjectRepository.findByNodeId(nodeId)).isEmpty();
+		try (var files = Files.list(tempDir)) {
+			assertThat(files).isEmpty();
+		}
+		// Зарезервированное под поток место возвращено в бюджет
+		upload(tier, "small.bin", 2048);
+		assertThat(tempDir.resolve("small.bin")).exists();
+	}
+
+	@Test
+	void writeBackRetriesWithBackoffAndReportsReplication() throws Exception {
+		TieredStorageService tier = tier(DataSize.ofKilobytes(10), DataSize.ofKilobytes(1));
+		byte[] content = bytes(1024);
+		String storedFileName = UUID.randomUUID() + ".bin";
+		String etag = tier.uploadStream(new ByteArrayInputStream(content), content.length,
+				"application/octet-stream", storedFileName);
+		assertThat(tier.isDurable(storedFileName)).isFalse();
+		FileMetadata file = fileMetadataRepository.save(FileMetadata.builder()
+				.idempotencyKey(UUID.randomUUID().toString())
+				.originalFileName("file.bin")
+				.storedFileName(storedFileName)
+				.contentType("application/octet-stream")
+				.fileSize((long) content.length)
+				.bucketName("test-bucket")
+				.status(FileStatus.COMPLETED_LOCAL)
+				.build());
+
+		remote.setFailureRate(1);
+		tier.writeBack();
+		TierObject failed = indexed(storedFileName);
+		assertThat(failed.getAttempts()).isEqualTo(1);
+		assertThat(failed.getLastError()).isNotBlank();
+		assertThat(failed.getNextAttemptAt()).isAfter(LocalDateTime.now().plus(INITIAL_BACKOFF).minusSeconds(5));
+
+		// До истечения задержки объект не берется в копирование
+		long writes = remote.writeCount();
+		tier.writeBack();
+		assertThat(remote.writeCount()).isEqualTo(writes);
+
+		// Задержка удваивается с каждой неудачной попыткой
+		tierObjectRepository.postpone(List.of(failed.getId()), LocalDateTime.now());
+		tier.writeBack();
+		TierObject retried = indexed(storedFileName);
+		assertThat(retried.getAttempts()).isEqualTo(2);
+		assertThat(retried.getNextAttemptAt()).isAfter(LocalDateTime.now().plus(INITIAL_BACKOFF.multipliedBy(2)).minusSeconds(5));
+		assertThat(tier.isDurable(storedFileName)).isFalse();
+		assertThat(events).isEmpty();
+		assertThat(fileMetadataRepository.findById(file.getId()))
+				.get()
+				.extracting(FileMetadata::getStatus)
+				.isEqualTo(FileStatus.COMPLETED_LOCAL);
+
+		remote.setFailureRate(0);
+		tierObjectRepository.postpone(List.of(failed.getId()), LocalDateTime.now());
+		tier.writeBack();
+
+		assertThat(indexed(storedFileName).getState()).isEqualTo(TierObjectState.REPLICATED);
+		assertThat(tier.isDurable(storedFileName)).isTrue();
+		// По событию FileUploadService переводит ссылающиеся на объект файлы в COMPLETED
+		assertThat(events).containsExactly(new ObjectReplicatedEvent(storedFileName));
+		assertThat(fileMetadataRepository.findById(file.getId()))
+				.get()
+				.extracting(FileMetadata::getStatus)
+				.isEqualTo(FileStatus.COMPLETED);
+		assertThat(remote.statObject(storedFileName).orElseThrow().etag()).isEqualTo(md5(content)).isEqualTo(etag);
+	}
+
+	@Test
+	void isDurableChecksIndexOfOtherNodes() throws Exception {
+		TieredStorageService other = tier(DataSize.ofKilobytes(10), DataSize.ofKilobytes(1));
+		upload(other, "shared.bin", 1024);
+		String otherNode = nodeId;
+
+		nodeId = UUID.randomUUID().toString();
+		Files.createDirectories(tempDir.resolve("node"));
+		TieredStorageService tier = new TieredStorageService(remote, tierObjectRepository, this::publish, Runnable::run,
+				settings(tempDir.resolve("node"), DataSize.ofKilobytes(10), DataSize.ofKilobytes(1)),
+				new SimpleMeterRegistry());
+		tier.recover();
+
+		// Общий объект пока только на диске другого узла
+		assertThat(tier.isDurable("shared.bin")).isFalse();
+		assertThat(tier.isDurable("missing.bin")).isTrue();
+
+		tierObjectRepository.deleteAll(tierObjectRepository.findByNodeId(otherNode));
+	}
+
+	// Сервис узла nodeId на tempDir; write-back выполняется в вызывающем потоке.
+	private TieredStorageService tier(DataSize capacity, DataSize unknownSizeReserve) throws Exception {
+		TieredStorageService tier = new TieredStorageService(remote, tierObjectRepository, this::publish, Runnable::run,
+				settings(tempDir, capacity, unknownSizeReserve), new SimpleMeterRegistry());
+		tier.recover();
+		return tier;
+	}
+
+	// Событие запоминается и публикуется в контекст - его получает FileUploadService.
+	private void publish(Object event) {
+		events.add(event);
+		applicationEventPublisher.publishEvent(event);
+	}
+
+	private TieredStorageService.Settings settings(Path directory, DataSize capacity, DataSize unknownSizeReserve) {
+		return new TieredStorageService.Settings(directory, nodeId, capacity, unknownSizeReserve,
+				4, 20, Duration.ofMinutes(10), INITIAL_BACKOFF, Duration.ofMinutes(10));
+	}
+
+	private TierObject indexed(String storedFileName) {
+		return tierObjectRepository.findByNodeId(nodeId).stream()
+				.filter(object -> object.getStoredFileName().equals(storedFileName))
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private static void upload(TieredStorageService tier, String name, int size) throws Exception {
+		tier.uploadStream(new ByteArrayInputStream(bytes(size)), size, "application/octet-stream", name);
+	}
+
+	private static String md5(byte[] content) {
+		Checksummer md5 = ChecksumAlgorithm.MD5.newChecksummer();
+		md5.update(content, 0, content.length);
+		return md5.finish();
+	}
+
+	private static byte[] bytes(int size) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) i;
+		}
+		return bytes;
+	}
+}
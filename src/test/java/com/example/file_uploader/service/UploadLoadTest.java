@@ -0,0 +1,255 @@
+package com.example.file_uploader.service;
+
+import com.example.file_uploader.entity.FileStatus;
+import com.example.file_uploader.repository.FileMetadataRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Сквозной нагрузочный тест POST /api/files/upload: приложение целиком на H2 (профиль test)
+ * и FakeStorageService вместо MinIO с заданной задержкой и долей сбоев.
+ *
+ * Закрытая модель нагрузки: concurrency клиентов на виртуальных потоках отправляют запросы
+ * один за другим, пока не будет отправлено requests запросов. Размер файла выбирается по
+ * распределению sizes (размер:вес), доля duplicate-ratio запросов повторяет уже использованный
+ * ключ идемпотентности. После отправки тест ждет, пока очередь загрузок опустеет, и печатает
+ * p50/p90/p99 задержки ответа, пропускную способность и разбивку ошибок. Затем проверяет, что
+ * очередь разобрана, каждый принятый ключ дал ровно один файл в конечном статусе, а без сбоев
+ * хранилища ни одна загрузка не завершилась FAILED. Запуск:
+ * ./mvnw test -Dtest=UploadLoadTest -Dloadtest=true -Dloadtest.requests=5000 -Dloadtest.concurrency=64 \
+ *     -Dloadtest.sizes=4KB:60,256KB:30,8MB:10 -Dloadtest.duplicate-ratio=0.1 \
+ *     -Dloadtest.storage-latency-ms=50 -Dloadtest.storage-failure-rate=0.02
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		// Все запросы идут от одного клиента: лимит на клиента снят, остальной контроль допуска работает
+		"upload-admission.client.rate-per-second=1000000",
+		"upload-admission.client.burst=1000000",
+		"logging.level.com.example.file_uploader=WARN"
+})
+@ActiveProfiles("test")
+class UploadLoadTest {
+
+	private static final int REQUESTS = Integer.getInteger("loadtest.requests", 2000);
+	private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 32);
+	private static final String SIZES = System.getProperty("loadtest.sizes", "4KB:60,256KB:30,4MB:10");
+	private static final double DUPLICATE_RATIO = Double.parseDouble(System.getProperty("loadtest.duplicate-ratio", "0.1"));
+	private static final long STORAGE_LATENCY_MS = Long.getLong("loadtest.storage-latency-ms", 20);
+	private static final long STORAGE_JITTER_MS = Long.getLong("loadtest.storage-jitter-ms", 30);
+	private static final double STORAGE_FAILURE_RATE = Double.parseDouble(System.getProperty("loadtest.storage-failure-rate", "0.01"));
+	private static final long DRAIN_TIMEOUT_SECONDS = Long.getLong("loadtest.drain-timeout-seconds", 300);
+
+	private static final String BOUNDARY = "loadtest-boundary-7d1f3c";
+
+	// Бин оборачивается в ResilientStorageService, поэтому счетчики заглушки читаются отсюда
+	private static final FakeStorageService STORAGE = new FakeStorageService(Duration.ofMillis(STORAGE_LATENCY_MS),
+			Duration.ofMillis(STORAGE_JITTER_MS), STORAGE_FAILURE_RATE);
+
+	@TestConfiguration
+	static class StorageConfig {
+
+		@Bean
+		@Primary
+		StorageService fakeStorageService() {
+			return STORAGE;
+		}
+	}
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private FileMetadataRepository fileMetadataRepository;
+
+	@Test
+	void uploadUnderLoad() throws Exception {
+		List<SizeClass> sizes = parseSizes(SIZES);
+		int totalWeight = sizes.stream().mapToInt(SizeClass::weight).sum();
+		URI uri = URI.create("http://localhost:" + port + "/api/files/upload");
+
+		long[] latencies = new long[REQUESTS];
+		Map<String, AtomicInteger> outcomes = new ConcurrentHashMap<>();
+		List<String> usedKeys = new ArrayList<>();
+		// Ключи, на которые сервер ответил 2xx: по каждому должна существовать запись о файле
+		Set<String> acceptedKeys = ConcurrentHashMap.newKeySet();
+		AtomicInteger nextRequest = new AtomicInteger();
+		AtomicInteger duplicates = new AtomicInteger();
+		AtomicLong bytesSent = new AtomicLong();
+
+		long start = System.nanoTime();
+		try (HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+			 ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int c = 0; c < CONCURRENCY; c++) {
+				clients.execute(() -> {
+					int i;
+					while ((i = nextRequest.getAndIncrement()) < REQUESTS) {
+						ThreadLocalRandom random = ThreadLocalRandom.current();
+						String key = null;
+						if (random.nextDouble() < DUPLICATE_RATIO) {
+							synchronized (usedKeys) {
+								if (!usedKeys.isEmpty()) {
+									key = usedKeys.get(random.nextInt(usedKeys.size()));
+								}
+							}
+						}
+						if (key != null) {
+							duplicates.incrementAndGet();
+						} else {
+							key = "loadtest-" + i;
+							synchronized (usedKeys) {
+								usedKeys.add(key);
+							}
+						}
+
+						SizeClass size = pick(sizes, random.nextInt(totalWeight));
+						byte[] body = multipartBody(size.content(), i);
+						HttpRequest request = HttpRequest.newBuilder(uri)
+								.timeout(Duration.ofMinutes(2))
+								.header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+								.header("X-Idempotency-Key", key)
+								.POST(HttpRequest.BodyPublishers.ofByteArray(body))
+								.build();
+
+						long requestStart = System.nanoTime();
+						String outcome;
+						try {
+							HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+							outcome = "HTTP " + response.statusCode();
+							if (response.statusCode() / 100 == 2) {
+								acceptedKeys.add(key);
+							}
+							bytesSent.addAndGet(size.content().length);
+						} catch (Exception e) {
+							outcome = e.getClass().getSimpleName();
+						}
+						latencies[i] = System.nanoTime() - requestStart;
+						outcomes.computeIfAbsent(outcome, k -> new AtomicInteger()).incrementAndGet();
+					}
+				});
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long drainStart = System.nanoTime();
+		long deadline = drainStart + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+		long inProgress;
+		while ((inProgress = countInProgress()) > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(200);
+		}
+		double drainSeconds = (System.nanoTime() - drainStart) / 1e9;
+
+		Arrays.sort(latencies);
+		System.out.println("========================================");
+		System.out.printf("Запросов: %d, клиентов: %d, размеры: %s, повторов ключа: %d%n",
+				REQUESTS, CONCURRENCY, SIZES, duplicates.get());
+		System.out.printf("Хранилище: задержка %d мс + до %d мс, доля сбоев %.3f%n",
+				STORAGE_LATENCY_MS, STORAGE_JITTER_MS, STORAGE_FAILURE_RATE);
+		System.out.printf("Время: %.2f с, %.1f запросов/с, %.1f МБ/с%n",
+				seconds, REQUESTS / seconds, bytesSent.get() / seconds / (1024 * 1024));
+		System.out.printf("Задержка ответа, мс: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n",
+				percentile(latencies, 0.50), percentile(latencies, 0.90),
+				percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+		System.out.println("Ответы: " + new TreeMap<>(outcomes));
+		System.out.printf("Фоновая загрузка: %.2f с после последнего ответа, не завершено: %d%n", drainSeconds, inProgress);
+		long completed = fileMetadataRepository.countByStatus(FileStatus.COMPLETED);
+		long failed = fileMetadataRepository.countByStatus(FileStatus.FAILED);
+		System.out.printf("Файлы: COMPLETED %d, FAILED %d; записей в хранилище: %d, имитированных сбоев: %d%n",
+				completed, failed, STORAGE.writeCount(), STORAGE.injectedFailureCount());
+		System.out.println("========================================");
+
+		assertThat(inProgress).as("файлы PENDING/UPLOADING после разбора очереди").isZero();
+		assertThat(completed + failed).as("файлы в конечном статусе")
+				.isGreaterThanOrEqualTo(acceptedKeys.size())
+				.isLessThanOrEqualTo(usedKeys.size());
+		if (STORAGE_FAILURE_RATE == 0) {
+			assertThat(failed).as("FAILED без сбоев хранилища").isZero();
+		}
+	}
+
+	private long countInProgress() {
+		return fileMetadataRepository.countByStatus(FileStatus.PENDING)
+				+ fileMetadataRepository.countByStatus(FileStatus.UPLOADING);
+	}
+
+	private static double percentile(long[] sorted, double quantile) {
+		int index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+	}
+
+	// Тело multipart/form-data с одним полем file. Первые 4 байта содержимого - номер запроса,
+	// чтобы дедупликация по содержимому не схлопывала разные загрузки в один объект.
+	private static byte[] multipartBody(byte[] content, int requestNumber) {
+		String head = "--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"loadtest-" + requestNumber + ".bin\"\r\n"
+				+ "Content-Type: application/octet-stream\r\n\r\n";
+		String tail = "\r\n--" + BOUNDARY + "--\r\n";
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 256);
+		body.writeBytes(head.getBytes(StandardCharsets.UTF_8));
+		byte[] prefix = ByteBuffer.allocate(4).putInt(requestNumber).array();
+		int prefixLength = Math.min(prefix.length, content.length);
+		body.write(prefix, 0, prefixLength);
+		body.write(content, prefixLength, content.length - prefixLength);
+		body.writeBytes(tail.getBytes(StandardCharsets.UTF_8));
+		return body.toByteArray();
+	}
+
+	private static SizeClass pick(List<SizeClass> sizes, int roll) {
+		for (SizeClass size : sizes) {
+			roll -= size.weight();
+			if (roll < 0) {
+				return size;
+			}
+		}
+		return sizes.get(sizes.size() - 1);
+	}
+
+	// Формат: "4KB:60,256KB:30,4MB:10" - размер и относительный вес.
+	private static List<SizeClass> parseSizes(String spec) {
+		Random random = new Random(42);
+		List<SizeClass> sizes = new ArrayList<>();
+		for (String entry : spec.split(",")) {
+			String[] parts = entry.trim().split(":");
+			byte[] content = new byte[Math.toIntExact(DataSize.parse(parts[0].trim()).toBytes())];
+			random.nextBytes(content);
+			sizes.add(new SizeClass(content, parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1));
+		}
+		return sizes;
+	}
+
+	private record SizeClass(byte[] content, int weight) {
+	}
+}
@@ -0,0 +1,113 @@
+package com.example.file_uploader.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сравнение пулов платформенных потоков и виртуальных потоков на загрузках,
+ * которые почти целиком состоят из блокирующего ожидания MinIO и БД.
+ *
+ * Задержки зависимостей имитируются сном, параллелизм MinIO ограничен DownstreamLimiter,
+ * БД - пулом соединений, как в приложении. Запуск:
+ * ./mvnw test -Dtest=VirtualThreadBenchmarkTest -Dbenchmark.threads=true -Dbenchmark.uploads=5000
+ */
+@EnabledIfSystemProperty(named = "benchmark.threads", matches = "true")
+class VirtualThreadBenchmarkTest {
+
+	private static final int UPLOADS = Integer.getInteger("benchmark.uploads", 5000);
+	private static final long MINIO_LATENCY_MS = Long.getLong("benchmark.minio-latency-ms", 50);
+	private static final long DB_LATENCY_MS = Long.getLong("benchmark.db-latency-ms", 2);
+	private static final int DB_POOL_SIZE = 20;
+
+	@Test
+	void comparePlatformAndVirtualThreads() throws Exception {
+		ThreadPoolTaskExecutor defaultPool = threadPool(5, 10, 100);
+		ThreadPoolTaskExecutor largePool = threadPool(200, 200, Integer.MAX_VALUE);
+		SimpleAsyncTaskExecutor virtual = new SimpleAsyncTaskExecutor("benchmark-virtual-");
+		virtual.setVirtualThreads(true);
+
+		try {
+			run("Пул 5-10 потоков, очередь 100 (по умолчанию)", defaultPool);
+			run("Пул 200 потоков", largePool);
+			run("Виртуальные потоки", virtual);
+		} finally {
+			defaultPool.shutdown();
+			largePool.shutdown();
+			virtual.close();
+		}
+	}
+
+	private static void run(String name, AsyncTaskExecutor executor) throws Exception {
+		DownstreamLimiter limiter = new DownstreamLimiter(64, 60_000);
+		Semaphore connectionPool = new Semaphore(DB_POOL_SIZE, true);
+		CountDownLatch done = new CountDownLatch(UPLOADS);
+		AtomicInteger rejected = new AtomicInteger();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < UPLOADS; i++) {
+			try {
+				executor.execute(() -> {
+					try {
+						simulateUpload(limiter, connectionPool);
+					} finally {
+						done.countDown();
+					}
+				});
+			} catch (TaskRejectedException e) {
+				rejected.incrementAndGet();
+				done.countDown();
+			}
+		}
+		done.await(10, TimeUnit.MINUTES);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		int completed = UPLOADS - rejected.get();
+		System.out.printf("%-45s %8.2f с %10.1f загрузок/с, отклонено: %d%n",
+				name, seconds, completed / seconds, rejected.get());
+	}
+
+	// Загрузка: статус в БД, передача в MinIO, статус в БД.
+	private static void simulateUpload(DownstreamLimiter limiter, Semaphore connectionPool) {
+		try {
+			database(connectionPool);
+			limiter.call(DownstreamLimiter.Downstream.MINIO, () -> sleep(MINIO_LATENCY_MS));
+			database(connectionPool);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Запрос к БД через пул соединений (как Hikari: ждет свободное соединение).
+	private static void database(Semaphore connectionPool) throws InterruptedException {
+		connectionPool.acquire();
+		try {
+			sleep(DB_LATENCY_MS);
+		} finally {
+			connectionPool.release();
+		}
+	}
+
+	private static Void sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+		return null;
+	}
+
+	private static ThreadPoolTaskExecutor threadPool(int core, int max, int queueCapacity) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(core);
+		executor.setMaxPoolSize(max);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix("benchmark-pool-");
+		executor.initialize();
+		return executor;
+	}
+}